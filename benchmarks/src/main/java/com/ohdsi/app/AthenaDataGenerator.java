@@ -0,0 +1,155 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Writes a synthetic vocabulary folder shaped like an Athena download: the four metadata tables plus CONCEPT,
+    CONCEPT_ANCESTOR, CONCEPT_RELATIONSHIP and CONCEPT_SYNONYM for a given number of concepts. The proportions follow
+    the real files closely enough for the filters to matter - about a third of the concepts are outside the target
+    vocabularies, most ancestor rows are not direct parents, a quarter of the relationships are 'Maps to' and some
+    synonyms are not English. Seeded, so every run of a benchmark sees the same data.
+
+        java -cp benchmarks.jar com.ohdsi.app.AthenaDataGenerator [folder] [concepts]
+ */
+public class AthenaDataGenerator {
+
+    static final List<String> TARGET_VOCABS = List.of("SNOMED", "HemOnc", "ICDO3", "Cancer Modifier", "NCIt", "LOINC", "ICD10CM", "RxNorm");
+    private static final List<String> OTHER_VOCABS = List.of("MeSH", "ATC", "Read", "OPCS4");
+    private static final List<String> DOMAINS = List.of("Condition", "Measurement", "Drug", "Procedure", "Observation", "Spec Anatomic Site");
+    private static final List<String> CLASSES = List.of("Clinical Finding", "Lab Test", "Ingredient", "Procedure", "Body Structure", "5-char billing code");
+    private static final List<String> RELATIONSHIPS = List.of("Is a", "Subsumes", "Maps to", "Mapped from", "Has finding site");
+    private static final String[] WORDS = {"fracture", "of", "left", "right", "hand", "bone", "acute", "chronic", "disease",
+            "carcinoma", "serum", "measurement", "structure", "tablet", "oral", "stage", "primary", "hemoglobin"};
+    private static final int ENGLISH = 4180186;
+    private static final int SPANISH = 4182511;
+    private static final int METADATA_IDS = 900_000_000;
+
+    private final Random random = new Random(42);
+
+    public static void main(String[] args) throws IOException {
+        File folder = new File(args.length > 0 ? args[0] : "synthetic_vocab");
+        int concepts = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        new AthenaDataGenerator().write(folder, concepts);
+        System.out.println("Wrote " + concepts + " concepts to " + folder);
+    }
+
+    public void write(File folder, int concepts) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        writeMetadata(folder);
+        try (PrintWriter out = open(folder, "CONCEPT")) {
+            out.print("concept_id\tconcept_name\tdomain_id\tvocabulary_id\tconcept_class_id\tstandard_concept\tconcept_code\tvalid_start_date\tvalid_end_date\tinvalid_reason\n");
+            for (int id = 1; id <= concepts; id++) {
+                String vocab = random.nextInt(3) == 0 ? pick(OTHER_VOCABS) : pick(TARGET_VOCABS);
+                out.print(id + "\t" + name() + "\t" + pick(DOMAINS) + "\t" + vocab + "\t" + pick(CLASSES) + "\t"
+                        + (random.nextInt(4) == 0 ? "" : "S") + "\t" + code(vocab) + "\t19700101\t20991231\t"
+                        + (random.nextInt(50) == 0 ? "D" : "") + "\n");
+            }
+        }
+        try (PrintWriter out = open(folder, "CONCEPT_ANCESTOR")) {
+            out.print("ancestor_concept_id\tdescendant_concept_id\tmin_levels_of_separation\tmax_levels_of_separation\n");
+            for (int id = 1; id <= concepts; id++) {
+                out.print(id + "\t" + id + "\t0\t0\n");
+                int ancestor = id;
+                // the direct parent and then a few more distant ancestors, as in the real transitive closure
+                for (int level = 1; level <= 5 && ancestor > 1; level++) {
+                    ancestor = 1 + random.nextInt(ancestor - 1);
+                    out.print(ancestor + "\t" + id + "\t" + level + "\t" + (level + random.nextInt(2)) + "\n");
+                }
+            }
+        }
+        try (PrintWriter out = open(folder, "CONCEPT_RELATIONSHIP")) {
+            out.print("concept_id_1\tconcept_id_2\trelationship_id\tvalid_start_date\tvalid_end_date\tinvalid_reason\n");
+            for (int id = 1; id <= concepts; id++) {
+                for (int i = 0; i < 3; i++) {
+                    String relationship = random.nextInt(4) == 0 ? "Maps to" : pick(RELATIONSHIPS);
+                    out.print(id + "\t" + (1 + random.nextInt(concepts)) + "\t" + relationship + "\t19700101\t20991231\t\n");
+                }
+            }
+        }
+        try (PrintWriter out = open(folder, "CONCEPT_SYNONYM")) {
+            out.print("concept_id\tconcept_synonym_name\tlanguage_concept_id\n");
+            for (int id = 1; id <= concepts; id++) {
+                if (random.nextBoolean()) {
+                    out.print(id + "\t" + name() + "\t" + (random.nextInt(10) < 7 ? ENGLISH : SPANISH) + "\n");
+                }
+            }
+        }
+    }
+
+    private void writeMetadata(File folder) throws IOException {
+        int id = METADATA_IDS;
+        try (PrintWriter out = open(folder, "VOCABULARY")) {
+            out.print("vocabulary_id\tvocabulary_name\tvocabulary_reference\tvocabulary_version\tvocabulary_concept_id\n");
+            for (String vocab : TARGET_VOCABS) {
+                out.print(vocab + "\t" + vocab + "\tsynthetic\tv1\t" + (id++) + "\n");
+            }
+            for (String vocab : OTHER_VOCABS) {
+                out.print(vocab + "\t" + vocab + "\tsynthetic\tv1\t" + (id++) + "\n");
+            }
+        }
+        try (PrintWriter out = open(folder, "DOMAIN")) {
+            out.print("domain_id\tdomain_name\tdomain_concept_id\n");
+            for (String domain : DOMAINS) {
+                out.print(domain + "\t" + domain + "\t" + (id++) + "\n");
+            }
+        }
+        try (PrintWriter out = open(folder, "CONCEPT_CLASS")) {
+            out.print("concept_class_id\tconcept_class_name\tconcept_class_concept_id\n");
+            for (String conceptClass : CLASSES) {
+                out.print(conceptClass + "\t" + conceptClass + "\t" + (id++) + "\n");
+            }
+        }
+        try (PrintWriter out = open(folder, "RELATIONSHIP")) {
+            out.print("relationship_id\trelationship_name\tis_hierarchical\tdefines_ancestry\treverse_relationship_id\trelationship_concept_id\n");
+            for (String relationship : RELATIONSHIPS) {
+                out.print(relationship + "\t" + relationship + "\t0\t0\t" + relationship + "\t" + (id++) + "\n");
+            }
+        }
+    }
+
+    private String name() {
+        StringBuilder sb = new StringBuilder(pick(WORDS));
+        for (int i = random.nextInt(5); i >= 0; i--) {
+            sb.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    // vocabulary-like codes, with the occasional one that needs sanitising
+    String code(String vocab) {
+        if (random.nextInt(20) == 0) {
+            return " odd code/" + random.nextInt(1000) + " ";
+        }
+        switch (vocab) {
+            case "SNOMED":
+                return Long.toString(100000 + (random.nextLong() & 0xFFFFFFFFL));
+            case "ICD10CM":
+            case "ICDO3":
+                return (char) ('A' + random.nextInt(26)) + Integer.toString(10 + random.nextInt(90)) + "." + random.nextInt(1000);
+            case "LOINC":
+                return random.nextInt(100000) + "-" + random.nextInt(10);
+            case "NCIt":
+                return "C" + random.nextInt(200000);
+            default:
+                return Integer.toString(random.nextInt(10_000_000));
+        }
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static PrintWriter open(File folder, String table) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(folder, table + ".csv")), StandardCharsets.UTF_8), 1 << 16));
+    }
+}
@@ -0,0 +1,23 @@
+package com.ohdsi.app;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// entry point of benchmarks.jar - the usual JMH command line, with the gc profiler always on for allocation rates
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        Runner runner = new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build());
+        // -l and -lp only list, as with JMH's own main
+        if (cmd.shouldList() || cmd.shouldListWithParams()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
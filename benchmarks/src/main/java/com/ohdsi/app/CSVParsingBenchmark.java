@@ -0,0 +1,58 @@
+package com.ohdsi.app;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// one full pass over CONCEPT_ANCESTOR (the largest file relative to its use) with each of the readers
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CSVParsingBenchmark {
+
+    @Benchmark
+    public void chunkIterable(LoaderFixture fixture, Blackhole bh) throws IOException {
+        for (List<Map<String, String>> chunk : new CSVChunkIterable(fixture.file("CONCEPT_ANCESTOR"), 10_000)) {
+            for (Map<String, String> row : chunk) {
+                bh.consume(row.get("descendant_concept_id"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void rowCursor(LoaderFixture fixture, Blackhole bh) throws IOException {
+        try (CSVRowCursor rows = new CSVRowCursor(fixture.file("CONCEPT_ANCESTOR"))) {
+            int descendant = rows.column("descendant_concept_id");
+            while (rows.next()) {
+                bh.consume(rows.getInt(descendant));
+            }
+        }
+    }
+
+    @Benchmark
+    public void rowCursorPushdown(LoaderFixture fixture, Blackhole bh) throws IOException {
+        try (CSVRowCursor rows = new CSVRowCursor(fixture.file("CONCEPT_ANCESTOR"))) {
+            int descendant = rows.column("descendant_concept_id");
+            rows.forEach(rows.column("min_levels_of_separation"), FieldPredicate.isInt(1), row -> bh.consume(row.getInt(descendant)));
+        }
+    }
+
+    @Benchmark
+    public long mappedScanner(LoaderFixture fixture) throws IOException {
+        LongAdder sum = new LongAdder();
+        // small splits so the generated file is actually cut up at the default row count
+        try (MappedCSVScanner scan = new MappedCSVScanner(fixture.file("CONCEPT_ANCESTOR"), ForkJoinPool.commonPool(), 1 << 20)) {
+            int descendant = scan.column("descendant_concept_id");
+            scan.forEach(row -> sum.add(row.getInt(descendant)));
+        }
+        return sum.sum();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ohdsi.app;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// OMOPConcepts.getByID as the downstream loaders call it - about a third of the ids are not in the target vocabularies
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ConceptLookupBenchmark {
+
+    private static final int LOOKUPS = 1 << 16;
+
+    private int[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp(LoaderFixture fixture) {
+        Random random = new Random(7);
+        ids = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            ids[i] = 1 + random.nextInt(fixture.rows);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getByID(LoaderFixture fixture, Blackhole bh) {
+        OMOPConcepts concepts = fixture.concepts;
+        for (int id : ids) {
+            bh.consume(concepts.getByID(id));
+        }
+    }
+}
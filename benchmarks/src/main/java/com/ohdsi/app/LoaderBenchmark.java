@@ -0,0 +1,41 @@
+package com.ohdsi.app;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Each loader's full pass - scan, filter, build the axioms for every row - into a sink that drops them. Divide by
+    the row count of the table for the per-row cost; with -prof gc the allocation per operation is per pass as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoaderBenchmark {
+
+    @Benchmark
+    public OMOPConcepts concepts(LoaderFixture fixture) throws IOException {
+        OMOPConcepts concepts = fixture.newConcepts();
+        concepts.load();
+        return concepts;
+    }
+
+    @Benchmark
+    public void ancestry(LoaderFixture fixture) throws IOException {
+        new OMOPAncestry(ShardedSink.DISCARD, fixture.dataFactory, fixture.source).load(fixture.concepts);
+    }
+
+    @Benchmark
+    public void relationships(LoaderFixture fixture) throws IOException {
+        new OMOPRelationships(ShardedSink.DISCARD, fixture.dataFactory, fixture.source, fixture.format)
+                .load(fixture.concepts, fixture.metadata);
+    }
+
+    @Benchmark
+    public void synonyms(LoaderFixture fixture) throws IOException {
+        new OMOPSynonyms(ShardedSink.DISCARD, fixture.dataFactory, fixture.source, fixture.format).load(fixture.concepts);
+    }
+}
@@ -0,0 +1,72 @@
+package com.ohdsi.app;
+
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+    A generated vocabulary folder plus the loader objects OWLLoader would set up for it, with the metadata and the
+    concepts already loaded so that the downstream loaders have a concept index to resolve against. Axioms go to a
+    sink that drops them, so the benchmarks measure parsing and axiom building rather than the ontology or writer.
+ */
+@State(Scope.Benchmark)
+public class LoaderFixture {
+
+    @Param({"100000"})
+    public int rows;
+
+    File folder;
+    CSVSource source;
+    OWLDataFactory dataFactory;
+    PrefixDocumentFormat format;
+    Map<String, IRI> vocabBaseIRIs;
+    OMOPMetadataClasses metadata;
+    OMOPConcepts concepts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("omop-bench").toFile();
+        new AthenaDataGenerator().write(folder, rows);
+        source = new CSVSource(folder.getPath());
+        dataFactory = OWLManager.getOWLDataFactory();
+        format = new RDFXMLDocumentFormat();
+        format.setPrefix("skos", "http://www.w3.org/2004/02/skos/core#");
+        vocabBaseIRIs = new HashMap<>();
+        for (String vocab : AthenaDataGenerator.TARGET_VOCABS) {
+            String key = vocab.replace(" ", "_").toLowerCase();
+            format.setPrefix(key, "http://www.example.org/" + key + "/");
+            vocabBaseIRIs.put(key, IRI.create("http://www.example.org/" + key + "/"));
+        }
+        metadata = new OMOPMetadataClasses(ShardedSink.DISCARD, dataFactory, source, OWLLoader.omop_iri);
+        metadata.load();
+        concepts = newConcepts();
+        concepts.load();
+    }
+
+    OMOPConcepts newConcepts() {
+        return new OMOPConcepts(ShardedSink.DISCARD, dataFactory, source, format, metadata, OWLLoader.omop_iri,
+                vocabBaseIRIs, AthenaDataGenerator.TARGET_VOCABS, new ConceptIndex(rows));
+    }
+
+    File file(String table) {
+        return source.getFile(table);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<java.nio.file.Path> files = Files.walk(folder.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+}
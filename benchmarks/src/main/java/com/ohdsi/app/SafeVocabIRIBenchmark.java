@@ -0,0 +1,43 @@
+package com.ohdsi.app;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// building the vocabulary code IRI of a concept, for a mix of codes that are already safe and ones that need sanitising
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SafeVocabIRIBenchmark {
+
+    private static final int CODES = 1 << 12;
+
+    private int[] vocabs;
+    private String[] codes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AthenaDataGenerator generator = new AthenaDataGenerator();
+        Random random = new Random(11);
+        vocabs = new int[CODES];
+        codes = new String[CODES];
+        for (int i = 0; i < CODES; i++) {
+            vocabs[i] = random.nextInt(AthenaDataGenerator.TARGET_VOCABS.size());
+            codes[i] = generator.code(AthenaDataGenerator.TARGET_VOCABS.get(vocabs[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODES)
+    public void safeVocabIRI(LoaderFixture fixture, Blackhole bh) {
+        OMOPConcepts concepts = fixture.concepts;
+        for (int i = 0; i < CODES; i++) {
+            bh.consume(concepts.safeVocabIRI(vocabs[i], codes[i]));
+        }
+    }
+}
@@ -8,12 +8,12 @@ public class AnnotationConfig {
     public String annotation_source;
     public OWLAnnotationProperty annotation;
     public AnnotationConfig(String annotation_name, String annotation_source,
-                            OWLDataFactory dataFactory, OWLOntology ontology,
-                            IRI omop_iri, OWLOntologyManager manager) {
+                            OWLDataFactory dataFactory, AxiomSink sink,
+                            IRI omop_iri) {
         this.annotation_name = annotation_name;
         this.annotation_source = annotation_source;
         this.annotation = dataFactory.getOWLAnnotationProperty(omop_iri + annotation_name);
-        manager.addAxiom(ontology, dataFactory.getOWLDeclarationAxiom(annotation));
+        sink.add(dataFactory.getOWLDeclarationAxiom(annotation));
     }
 }
 
@@ -0,0 +1,37 @@
+package com.ohdsi.app;
+
+import uk.ac.manchester.cs.owl.owlapi.OWLLiteralImplPlain;
+
+/*
+    A string literal (optionally language tagged) whose text is a StringArena handle - it is only decoded when
+    something calls getLiteral(), e.g. an OWLAPI saver, while the streaming writers copy the arena bytes directly.
+
+    Everything else is OWLLiteralImplPlain's, which works out hashCode / equals from getLiteral(), so these compare
+    equal to the literals OWLDataFactory makes for the same text.
+ */
+// Serializable through the OWLAPI, but the arena isn't - these only live for the run that made them
+@SuppressWarnings("serial")
+public class ArenaLiteral extends OWLLiteralImplPlain {
+
+    private final StringArena arena;
+    private final int handle;
+
+    public ArenaLiteral(StringArena arena, int handle, String lang) {
+        super("", lang);
+        this.arena = arena;
+        this.handle = handle;
+    }
+
+    public StringArena getArena() {
+        return arena;
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    @Override
+    public String getLiteral() {
+        return arena.decode(handle);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.*;
+
+/*
+    Works out which OMOP concept(s) an axiom is about, from the IRIs alone, so that sinks can route or filter axioms
+    without the loaders having to pass anything extra along. Concept IRIs are omop_iri + concept_id; anything else
+    (metadata classes, properties, the ontology itself) has no concept and yields -1.
+ */
+public class AxiomRouting {
+
+    public static final int NO_CONCEPT = -1;
+
+    private AxiomRouting() {
+    }
+
+    // the concept the axiom describes: the declared entity, the subclass, or the annotation subject
+    public static int subjectConceptId(OWLAxiom axiom) {
+        if (axiom instanceof OWLDeclarationAxiom) {
+            return conceptId(((OWLDeclarationAxiom) axiom).getEntity().getIRI());
+        }
+        if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLClassExpression sub = ((OWLSubClassOfAxiom) axiom).getSubClass();
+            return sub.isAnonymous() ? NO_CONCEPT : conceptId(sub.asOWLClass().getIRI());
+        }
+        if (axiom instanceof OWLAnnotationAssertionAxiom) {
+            OWLAnnotationSubject subject = ((OWLAnnotationAssertionAxiom) axiom).getSubject();
+            return subject.isIRI() ? conceptId((IRI) subject) : NO_CONCEPT;
+        }
+        return NO_CONCEPT;
+    }
+
+    // the concept on the other end of a concept-to-concept axiom (ancestry, Maps to), NO_CONCEPT otherwise
+    public static int objectConceptId(OWLAxiom axiom) {
+        if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLClassExpression sup = ((OWLSubClassOfAxiom) axiom).getSuperClass();
+            if (sup instanceof OWLObjectSomeValuesFrom) {
+                sup = ((OWLObjectSomeValuesFrom) sup).getFiller();
+            }
+            return sup.isAnonymous() ? NO_CONCEPT : conceptId(sup.asOWLClass().getIRI());
+        }
+        if (axiom instanceof OWLAnnotationAssertionAxiom) {
+            OWLAnnotationValue value = ((OWLAnnotationAssertionAxiom) axiom).getValue();
+            return value.isIRI() ? conceptId((IRI) value) : NO_CONCEPT;
+        }
+        return NO_CONCEPT;
+    }
+
+    public static int conceptId(IRI iri) {
+        String s = iri.toString();
+        String base = OWLLoader.omop_iri.toString();
+        int length = s.length() - base.length();
+        if (length <= 0 || length > 10 || !s.startsWith(base)) {
+            return NO_CONCEPT;
+        }
+        long id = 0;
+        for (int i = base.length(); i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_CONCEPT;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id > Integer.MAX_VALUE ? NO_CONCEPT : (int) id;
+    }
+}
@@ -0,0 +1,27 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/*
+    Destination for the axioms produced by the OMOP* loaders. The loaders only ever hand axioms over one at a time, so
+    the same loader code can fill an in-memory OWLOntology (OntologySink) or write straight to disk as the rows are read
+    (StreamingOntologyWriter) without holding the whole ontology in the heap.
+ */
+public interface AxiomSink extends Closeable {
+
+    void add(OWLAxiom axiom);
+
+    default void addAll(Collection<? extends OWLAxiom> axioms) {
+        for (OWLAxiom axiom : axioms) {
+            add(axiom);
+        }
+    }
+
+    // flushes / saves whatever has been collected - no axioms may be added afterwards
+    @Override
+    void close() throws IOException;
+}
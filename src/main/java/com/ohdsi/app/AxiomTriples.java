@@ -0,0 +1,118 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.*;
+
+/*
+    Minimal OWL -> RDF mapping for the axiom shapes the OMOP* loaders actually produce:
+        - declarations
+        - SubClassOf(A B) and SubClassOf(A ObjectSomeValuesFrom(p B))
+        - annotation assertions on IRIs with an IRI or literal value
+    anything else is rejected rather than silently dropped, so that a new loader can't lose axioms without noticing.
+    This is what lets the streaming writers work without ever building an OWLOntology.
+ */
+public class AxiomTriples {
+
+    public static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    public static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    public static final String OWL = "http://www.w3.org/2002/07/owl#";
+    public static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    public static final String RDF_TYPE = RDF + "type";
+    public static final String RDFS_SUBCLASS_OF = RDFS + "subClassOf";
+    public static final String OWL_RESTRICTION = OWL + "Restriction";
+    public static final String OWL_ON_PROPERTY = OWL + "onProperty";
+    public static final String OWL_SOME_VALUES_FROM = OWL + "someValuesFrom";
+
+    private final TripleHandler handler;
+    private final String blankNodePrefix;
+    private long blankNodes = 0;
+
+    public AxiomTriples(TripleHandler handler) {
+        this(handler, "b");
+    }
+
+    // files that may later be concatenated (shards) need distinct blank node labels
+    public AxiomTriples(TripleHandler handler, String blankNodePrefix) {
+        this.handler = handler;
+        this.blankNodePrefix = "_:" + blankNodePrefix;
+    }
+
+    public void translate(OWLAxiom axiom) {
+        if (axiom instanceof OWLDeclarationAxiom) {
+            OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+            handler.triple(entity.getIRI().toString(), RDF_TYPE, entity.getEntityType().getIRI().toString());
+        } else if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom) axiom;
+            String sub = namedClass(ax.getSubClass(), axiom);
+            String sup = classExpression(ax.getSuperClass(), axiom);
+            handler.triple(sub, RDFS_SUBCLASS_OF, sup);
+            restriction(sup, ax.getSuperClass(), axiom);
+        } else if (axiom instanceof OWLAnnotationAssertionAxiom) {
+            OWLAnnotationAssertionAxiom ax = (OWLAnnotationAssertionAxiom) axiom;
+            if (!ax.getSubject().isIRI()) {
+                throw unsupported(axiom);
+            }
+            String subject = ax.getSubject().toString();
+            String predicate = ax.getProperty().getIRI().toString();
+            OWLAnnotationValue value = ax.getValue();
+            if (value.isIRI()) {
+                handler.triple(subject, predicate, value.toString());
+            } else if (value instanceof ArenaLiteral) {
+                ArenaLiteral literal = (ArenaLiteral) value;
+                handler.literal(subject, predicate, literal.getArena(), literal.getHandle(), language(literal), datatype(literal));
+            } else if (value.isLiteral()) {
+                OWLLiteral literal = value.asLiteral().get();
+                handler.literal(subject, predicate, literal.getLiteral(), language(literal), datatype(literal));
+            } else {
+                throw unsupported(axiom);
+            }
+        } else {
+            throw unsupported(axiom);
+        }
+    }
+
+    // the referencing triple is written before the restriction itself so that a concept's own triples stay together
+    private String classExpression(OWLClassExpression ce, OWLAxiom axiom) {
+        if (!ce.isAnonymous()) {
+            return ce.asOWLClass().getIRI().toString();
+        }
+        if (ce instanceof OWLObjectSomeValuesFrom && !((OWLObjectSomeValuesFrom) ce).getProperty().isAnonymous()) {
+            return blankNodePrefix + (blankNodes++);
+        }
+        throw unsupported(axiom);
+    }
+
+    private void restriction(String node, OWLClassExpression ce, OWLAxiom axiom) {
+        if (!ce.isAnonymous()) {
+            return;
+        }
+        OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ce;
+        String filler = classExpression(some.getFiller(), axiom);
+        handler.triple(node, RDF_TYPE, OWL_RESTRICTION);
+        handler.triple(node, OWL_ON_PROPERTY, some.getProperty().asOWLObjectProperty().getIRI().toString());
+        handler.triple(node, OWL_SOME_VALUES_FROM, filler);
+        restriction(filler, some.getFiller(), axiom);
+    }
+
+    private String namedClass(OWLClassExpression ce, OWLAxiom axiom) {
+        if (ce.isAnonymous()) {
+            throw unsupported(axiom);
+        }
+        return ce.asOWLClass().getIRI().toString();
+    }
+
+    private static String language(OWLLiteral literal) {
+        return literal.hasLang() ? literal.getLang() : null;
+    }
+
+    private static String datatype(OWLLiteral literal) {
+        if (literal.hasLang() || literal.isRDFPlainLiteral() || literal.getDatatype().isString()) {
+            return null;
+        }
+        return literal.getDatatype().getIRI().toString();
+    }
+
+    private static UnsupportedOperationException unsupported(OWLAxiom axiom) {
+        return new UnsupportedOperationException("Axiom type not supported by the streaming writer: " + axiom);
+    }
+}
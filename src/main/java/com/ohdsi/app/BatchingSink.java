@@ -0,0 +1,85 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Collects axioms in a buffer per producing thread and hands them to the target sink batchSize at a time, so that
+    parallel loader stages only contend on the shared ontology / writer once per batch instead of once per axiom.
+    close() flushes what is left but does not close the target, which is shared between stages.
+ */
+public class BatchingSink implements AxiomSink {
+
+    private final AxiomSink target;
+    private final int batchSize;
+    private final ThreadLocal<List<OWLAxiom>> buffers;
+    private final List<List<OWLAxiom>> allBuffers = new CopyOnWriteArrayList<>();
+    private final LongAdder committed = new LongAdder();
+
+    public BatchingSink(AxiomSink target, int batchSize) {
+        this.target = target;
+        this.batchSize = Math.max(1, batchSize);
+        this.buffers = ThreadLocal.withInitial(() -> {
+            List<OWLAxiom> buffer = new ArrayList<>(this.batchSize);
+            allBuffers.add(buffer);
+            return buffer;
+        });
+    }
+
+    @Override
+    public void add(OWLAxiom axiom) {
+        List<OWLAxiom> buffer = buffers.get();
+        buffer.add(axiom);
+        if (buffer.size() >= batchSize) {
+            commit(buffer);
+        }
+    }
+
+    @Override
+    public void addAll(Collection<? extends OWLAxiom> axioms) {
+        List<OWLAxiom> buffer = buffers.get();
+        buffer.addAll(axioms);
+        if (buffer.size() >= batchSize) {
+            commit(buffer);
+        }
+    }
+
+    // only safe once the producing threads are done with this sink, i.e. at the end of a stage
+    public void flush() {
+        for (List<OWLAxiom> buffer : allBuffers) {
+            if (!buffer.isEmpty()) {
+                commit(buffer);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    // number of axioms handed to the target so far
+    public long getCommitted() {
+        return committed.sum();
+    }
+
+    // number of axioms waiting in the per-thread buffers
+    long getBuffered() {
+        long buffered = 0;
+        for (List<OWLAxiom> buffer : allBuffers) {
+            buffered += buffer.size();
+        }
+        return buffered;
+    }
+
+    private void commit(List<OWLAxiom> buffer) {
+        target.addAll(buffer);
+        committed.add(buffer.size());
+        buffer.clear();
+    }
+}
@@ -0,0 +1,156 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+    Several outputs from one pass over the vocabulary. A profile file names the outputs and what each one differs in
+    from the command line options, as java properties:
+
+        profiles = oncology, snomed_loinc, full
+        oncology.vocabs = HemOnc, ICDO3, Cancer Modifier, NCIt
+        oncology.stream = turtle
+        snomed_loinc.vocabs = SNOMED, LOINC
+        snomed_loinc.sharded = true
+        full.outfile = omop.owl.gz
+
+    Every profile is written into a folder of its own under the output directory, named after it, so shards, metrics
+    and lexicons never collide. The keys a profile may set are PROFILE_KEYS, spelled as the command line options.
+
+    The profiles are loaded side by side, each by an OWLLoader of its own, reading through a SharedScanSource - so
+    CONCEPT, CONCEPT_ANCESTOR, CONCEPT_RELATIONSHIP and CONCEPT_SYNONYM are each read once, whatever the number of
+    profiles, and every row goes to the profiles whose filters it passes. Each loader still holds its own concepts,
+    so profiles built in memory need the heap of all of them at once - stream the large ones.
+ */
+public class BuildProfiles {
+
+    static final List<String> PROFILE_KEYS = List.of("outfile", "vocabs", "relationships", "stream", "sharded", "shards",
+            "merge", "closure", "semsql", "lexical-index", "memory-budget");
+
+    // the options of each profile, starting from base
+    public static Map<String, LoaderOptions> read(File file, LoaderOptions base) throws IOException {
+        if (base.incremental != null || base.servePort != null) {
+            throw new IllegalArgumentException("Build profiles can't be combined with incremental builds or --serve");
+        }
+        Properties properties = new Properties();
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(in);
+        }
+        String names = properties.getProperty("profiles");
+        if (names == null || names.isBlank()) {
+            throw new IOException("No profiles listed in " + file);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (!key.equals("profiles") && (dot < 0 || !PROFILE_KEYS.contains(key.substring(dot + 1)))) {
+                throw new IOException("Unknown key " + key + " in " + file + ", profiles may set " + PROFILE_KEYS);
+            }
+        }
+        Map<String, LoaderOptions> profiles = new LinkedHashMap<>();
+        for (String name : names.trim().split("\\s*,\\s*")) {
+            profiles.put(name, profile(name, properties, base));
+        }
+        return profiles;
+    }
+
+    private static LoaderOptions profile(String name, Properties properties, LoaderOptions base) {
+        LoaderOptions options = base.copy();
+        options.outdir = new File(base.outdir, name).getPath();
+        options.outfile = properties.getProperty(name + ".outfile", base.outfile);
+        String vocabs = properties.getProperty(name + ".vocabs");
+        if (vocabs != null) {
+            options.vocabs = List.of(vocabs.trim().split("\\s*,\\s*"));
+        }
+        String relationships = properties.getProperty(name + ".relationships");
+        if (relationships != null) {
+            options.relationships = List.of(relationships.trim().split("\\s*,\\s*"));
+        }
+        String stream = properties.getProperty(name + ".stream");
+        if (stream != null) {
+            options.streamFormat = StreamingOntologyWriter.Format.fromName(stream.trim());
+        }
+        options.sharded = flag(properties, name + ".sharded", base.sharded);
+        options.merge = flag(properties, name + ".merge", base.merge);
+        options.semsql = flag(properties, name + ".semsql", base.semsql);
+        String shards = properties.getProperty(name + ".shards");
+        if (shards != null) {
+            options.shards = new HashSet<>(Arrays.asList(shards.trim().toLowerCase().split("\\s*,\\s*")));
+        }
+        String closure = properties.getProperty(name + ".closure");
+        if (closure != null) {
+            options.closureDepth = closure.trim().equalsIgnoreCase("all") ? OMOPAncestry.FULL_CLOSURE : Integer.parseInt(closure.trim());
+        }
+        String budget = properties.getProperty(name + ".memory-budget");
+        if (budget != null) {
+            options.memoryBudgetMB = Integer.parseInt(budget.trim());
+        }
+        if (flag(properties, name + ".lexical-index", base.lexicalIndex != null)) {
+            options.lexicalIndex = new File(options.outdir, options.outfile + ".lexicon");
+        }
+        if (base.metricsReport != null) {
+            options.metricsReport = new File(options.outdir, options.outfile + ".metrics.json");
+        }
+        return options;
+    }
+
+    private static boolean flag(Properties properties, String key, boolean otherwise) {
+        String value = properties.getProperty(key);
+        return value == null ? otherwise : Boolean.parseBoolean(value.trim());
+    }
+
+    // loads every profile from the one source, each on a thread of its own. The first failure is rethrown once all
+    // of them are done, the others added to it as suppressed
+    public static void run(Map<String, LoaderOptions> profiles, VocabularySource source) throws IOException {
+        SharedScanSource shared = new SharedScanSource(source);
+        // every participant has to exist before the first scan starts
+        Map<String, SharedScanSource.Participant> participants = new LinkedHashMap<>();
+        for (String name : profiles.keySet()) {
+            participants.put(name, shared.participant());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(profiles.size(), r -> {
+            Thread t = new Thread(r, "profile");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<?>> loads = new ArrayList<>();
+        for (Map.Entry<String, LoaderOptions> profile : profiles.entrySet()) {
+            SharedScanSource.Participant participant = participants.get(profile.getKey());
+            loads.add(executor.submit(() -> {
+                try (participant) {
+                    System.out.println("Building profile " + profile.getKey() + " into " + profile.getValue().outdir);
+                    new OWLLoader(profile.getValue(), participant).createOHDSIOntology();
+                }
+                return null;
+            }));
+        }
+        IOException failure = null;
+        try {
+            int i = 0;
+            for (String name : profiles.keySet()) {
+                try {
+                    loads.get(i++).get();
+                } catch (ExecutionException e) {
+                    IOException failed = new IOException("Profile " + name + " failed: " + e.getCause().getMessage(), e.getCause());
+                    if (failure == null) {
+                        failure = failed;
+                    } else {
+                        failure.addSuppressed(failed);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while building the profiles", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
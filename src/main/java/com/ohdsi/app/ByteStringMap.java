@@ -0,0 +1,113 @@
+package com.ohdsi.app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+    Small string-keyed lookup that can be probed straight from the UTF-8 bytes of a CSV field, so that checks like
+    "is this vocabulary_id one of the targets" or "which domain class is this" don't need a String per row.
+    Meant for the short, fixed key sets that come from the metadata tables - not a general purpose map.
+ */
+public class ByteStringMap<V> {
+
+    private byte[][] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    public ByteStringMap() {
+        this(16);
+    }
+
+    public ByteStringMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        this.keys = new byte[capacity][];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void put(String key, V value) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int pos = hash(ByteBuffer.wrap(bytes), 0, bytes.length) & mask;
+        while (keys[pos] != null) {
+            if (Arrays.equals(keys[pos], bytes)) {
+                values[pos] = value;
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = bytes;
+        values[pos] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    public V get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return get(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    // looks up the bytes buffer[start, end) - absolute indexes, the buffer position is not touched
+    @SuppressWarnings("unchecked")
+    public V get(ByteBuffer buffer, int start, int end) {
+        int pos = hash(buffer, start, end) & mask;
+        byte[] key;
+        while ((key = keys[pos]) != null) {
+            if (matches(key, buffer, start, end)) {
+                return (V) values[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(ByteBuffer buffer, int start, int end) {
+        return get(buffer, start, end) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new Object[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int pos = hash(ByteBuffer.wrap(oldKeys[i]), 0, oldKeys[i].length) & mask;
+                while (keys[pos] != null) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = oldKeys[i];
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a
+    static int hash(ByteBuffer buffer, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -2,6 +2,7 @@ package com.ohdsi.app;
 
 import org.apache.commons.csv.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 
 import java.util.List;
 import java.util.Map;
@@ -17,10 +18,12 @@ public class CSVChunkIterable implements Iterable<List<Map<String, String>>> {
 
     public CSVChunkIterable(File csvFile, int chunkSize) throws FileNotFoundException, IOException {
 
-        BufferedReader br = new BufferedReader(new FileReader(csvFile));
-        String headerLine = br.readLine();
+        String headerLine;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
+            headerLine = br.readLine();
+        }
 
-        this.reader = new FileReader(csvFile);
+        this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8), 1 << 16);
         this.chunkSize = chunkSize;
         this.delimiter = detectDelimiter(headerLine);
     }
@@ -0,0 +1,52 @@
+package com.ohdsi.app;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// column names of an Athena file plus its delimiter - resolved once so rows can be read by index
+public class CSVHeader {
+
+    private final String[] names;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final byte delimiter;
+
+    public CSVHeader(String headerLine) {
+        this.delimiter = (byte) detectDelimiter(headerLine);
+        this.names = headerLine.split(delimiter == '\t' ? "\t" : ",", -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+            index.putIfAbsent(names[i], i);
+        }
+    }
+
+    // same rule CSVChunkIterable has always used
+    static char detectDelimiter(String line) {
+        int commaCount = line.split(",", -1).length;
+        int tabCount = line.split("\t", -1).length;
+        return (tabCount > commaCount) ? '\t' : ',';
+    }
+
+    public int column(String name) {
+        Integer i = index.get(name);
+        if (i == null) {
+            throw new IllegalArgumentException("Column " + name + " not found in header " + String.join(", ", names));
+        }
+        return i;
+    }
+
+    public boolean hasColumn(String name) {
+        return index.containsKey(name);
+    }
+
+    public String name(int column) {
+        return names[column];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public byte getDelimiter() {
+        return delimiter;
+    }
+}
@@ -0,0 +1,215 @@
+package com.ohdsi.app;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/*
+    One record of an Athena file, read in place from the raw UTF-8 bytes. Only the field boundaries are found when a
+    line is read - nothing is decoded until an accessor asks for it, and only getString() allocates, so a row that is
+    filtered out or only used for its ids costs no garbage.
+
+    getCharSequence() hands back a reused buffer that is only valid until the next call on the same row.
+ */
+public class CSVRow {
+
+    protected final CSVHeader header;
+    protected ByteBuffer buffer;
+    private final int[] starts;
+    private final int[] ends;
+    private int fieldCount = 0;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    private ByteBuffer decodeView;
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    public CSVRow(CSVHeader header, ByteBuffer buffer) {
+        this.header = header;
+        this.buffer = buffer;
+        this.decodeView = buffer.duplicate();
+        this.starts = new int[header.size()];
+        this.ends = new int[header.size()];
+    }
+
+    protected void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.decodeView = buffer.duplicate();
+    }
+
+    public CSVHeader getHeader() {
+        return header;
+    }
+
+    public int column(String name) {
+        return header.column(name);
+    }
+
+    // splits buffer[lineStart, lineEnd) into fields - fields past the end of the header are ignored and missing ones
+    // read as empty
+    protected void split(int lineStart, int lineEnd) {
+        byte delimiter = header.getDelimiter();
+        int field = 0;
+        int start = lineStart;
+        for (int i = lineStart; i < lineEnd && field < starts.length; i++) {
+            if (buffer.get(i) == delimiter) {
+                starts[field] = start;
+                ends[field] = i;
+                field++;
+                start = i + 1;
+            }
+        }
+        if (field < starts.length) {
+            starts[field] = start;
+            ends[field] = lineEnd;
+            field++;
+        }
+        fieldCount = field;
+        for (; field < starts.length; field++) {
+            starts[field] = lineEnd;
+            ends[field] = lineEnd;
+        }
+    }
+
+    // pushdown: finds only field col of the line and tests it, the line is split only if it passes
+    protected boolean splitIf(int lineStart, int lineEnd, int col, FieldPredicate filter) {
+        byte delimiter = header.getDelimiter();
+        int field = 0;
+        int start = lineStart;
+        int i = lineStart;
+        for (; i < lineEnd; i++) {
+            if (buffer.get(i) == delimiter) {
+                if (field == col) {
+                    break;
+                }
+                field++;
+                start = i + 1;
+            }
+        }
+        boolean passes = field == col ? filter.test(buffer, start, i) : filter.test(buffer, lineEnd, lineEnd);
+        if (passes) {
+            split(lineStart, lineEnd);
+        }
+        return passes;
+    }
+
+    // for rows that are not read from delimited text (see SnapshotSource) - the field is buffer[start, end)
+    protected void setField(int col, int start, int end) {
+        starts[col] = start;
+        ends[col] = end;
+        fieldCount = Math.max(fieldCount, col + 1);
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public int start(int col) {
+        return starts[col];
+    }
+
+    public int end(int col) {
+        return ends[col];
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int getInt(int col) {
+        int i = starts[col];
+        int end = ends[col];
+        if (i == end) {
+            throw new NumberFormatException("Empty value in column " + header.name(col));
+        }
+        boolean negative = buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw badNumber(col);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw badNumber(col);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw badNumber(col);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw badNumber(col);
+        }
+        return (int) value;
+    }
+
+    public boolean isEmpty(int col) {
+        return starts[col] == ends[col];
+    }
+
+    // same as trim().isEmpty() on the decoded value
+    public boolean isBlank(int col) {
+        for (int i = starts[col]; i < ends[col]; i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean fieldEquals(int col, byte[] value) {
+        int start = starts[col];
+        if (ends[col] - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public <V> V lookup(int col, ByteStringMap<V> map) {
+        return map.get(buffer, starts[col], ends[col]);
+    }
+
+    public CharSequence getCharSequence(int col) {
+        int length = ends[col] - starts[col];
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+        chars.clear();
+        decodeView.limit(ends[col]).position(starts[col]);
+        decoder.reset();
+        CoderResult result = decoder.decode(decodeView, chars, true);
+        if (!result.isError()) {
+            result = decoder.flush(chars);
+        }
+        if (result.isError()) {
+            // malformed input - fall back to the replacing decoder rather than failing the whole load
+            return getString(col);
+        }
+        chars.flip();
+        return chars;
+    }
+
+    public String getString(int col) {
+        int length = ends[col] - starts[col];
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + starts[col], length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(starts[col], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private NumberFormatException badNumber(int col) {
+        return new NumberFormatException("Not an int in column " + header.name(col) + ": " + getString(col));
+    }
+}
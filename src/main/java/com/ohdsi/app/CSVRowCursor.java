@@ -0,0 +1,215 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+    Sequential reader over an Athena file that reuses a single CSVRow for every record:
+
+        try (CSVRowCursor rows = new CSVRowCursor(file)) {
+            int id = rows.column("concept_id");
+            while (rows.next()) {
+                int conceptId = rows.getInt(id);
+                ...
+            }
+        }
+
+    Same dialect as CSVChunkIterable - comma or tab delimited (detected from the header), no quoting, empty lines
+    skipped - but decoded as UTF-8 regardless of the platform charset.
+ */
+public class CSVRowCursor extends CSVRow implements TableScan {
+
+    private static final int DEFAULT_BUFFER = 1 << 20;
+
+    private final InputStream in;
+    // for ScanChunkEvent
+    private final String name;
+    private byte[] bytes;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private long rowNumber = 0;
+    private long bytesRead;
+
+    public CSVRowCursor(File file) throws IOException {
+        this(new FileInputStream(file), file.getName());
+    }
+
+    public CSVRowCursor(InputStream in) throws IOException {
+        this(in, "stream");
+    }
+
+    // name is what the scan is called in ScanChunkEvents
+    public CSVRowCursor(InputStream in, String name) throws IOException {
+        this(in, name, new byte[DEFAULT_BUFFER]);
+    }
+
+    private CSVRowCursor(InputStream in, String name, byte[] bytes) throws IOException {
+        this(in, name, bytes, readHeader(in, bytes));
+    }
+
+    private CSVRowCursor(InputStream in, String name, byte[] bytes, HeaderRead header) {
+        super(header.header, ByteBuffer.wrap(bytes));
+        this.name = name;
+        this.in = in;
+        this.bytes = bytes;
+        this.pos = header.pos;
+        this.limit = header.limit;
+        this.eof = header.eof;
+        this.bytesRead = header.limit;
+    }
+
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    // advances to the next non-empty record, false once the file is exhausted
+    public boolean next() throws IOException {
+        return next(-1, null);
+    }
+
+    // advances to the next record whose column col passes filter, skipping the others without splitting them
+    public boolean next(int col, FieldPredicate filter) throws IOException {
+        while (true) {
+            int newline = indexOfNewline(pos, limit);
+            if (newline < 0) {
+                if (!eof) {
+                    fill();
+                    continue;
+                }
+                if (pos == limit) {
+                    return false;
+                }
+                newline = limit; // last line without a trailing newline
+            }
+            int lineStart = pos;
+            int lineEnd = newline;
+            pos = Math.min(newline + 1, limit);
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                rowNumber++;
+                if (filter == null) {
+                    split(lineStart, lineEnd);
+                    return true;
+                }
+                if (splitIf(lineStart, lineEnd, col, filter)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEach(RowHandler handler) throws IOException {
+        forEach(-1, null, handler);
+    }
+
+    // the whole pass is one ScanChunkEvent
+    @Override
+    public void forEach(int col, FieldPredicate filter, RowHandler handler) throws IOException {
+        ScanChunkEvent event = new ScanChunkEvent();
+        event.begin();
+        long offset = bytesRead - (limit - pos);
+        long rows = 0;
+        while (next(col, filter)) {
+            handler.accept(this);
+            rows++;
+        }
+        if (event.shouldCommit()) {
+            event.source = name;
+            event.offset = offset;
+            event.bytes = bytesRead - offset;
+            event.rows = rows;
+            event.commit();
+        }
+    }
+
+    @Override
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int indexOfNewline(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // keeps the unread tail, growing the buffer if a single line doesn't fit
+    private void fill() throws IOException {
+        int remaining = limit - pos;
+        if (pos == 0 && remaining == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            setBuffer(ByteBuffer.wrap(bytes));
+        } else {
+            System.arraycopy(bytes, pos, bytes, 0, remaining);
+        }
+        pos = 0;
+        limit = remaining;
+        int n = in.read(bytes, limit, bytes.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+            bytesRead += n;
+        }
+    }
+
+    private static class HeaderRead {
+        CSVHeader header;
+        int pos;
+        int limit;
+        boolean eof;
+    }
+
+    private static HeaderRead readHeader(InputStream in, byte[] bytes) throws IOException {
+        HeaderRead read = new HeaderRead();
+        int limit = 0;
+        int newline = -1;
+        while (newline < 0) {
+            int n = in.read(bytes, limit, bytes.length - limit);
+            if (n < 0) {
+                read.eof = true;
+                break;
+            }
+            for (int i = limit; i < limit + n; i++) {
+                if (bytes[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            limit += n;
+            if (limit == bytes.length && newline < 0) {
+                throw new IOException("Header line longer than " + bytes.length + " bytes");
+            }
+        }
+        int headerEnd = newline < 0 ? limit : newline;
+        int start = 0;
+        if (headerEnd >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            start = 3; // utf-8 byte order mark
+        }
+        String line = new String(bytes, start, headerEnd - start, StandardCharsets.UTF_8);
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        if (line.isEmpty()) {
+            throw new IOException("Missing header line");
+        }
+        read.header = new CSVHeader(line);
+        read.pos = newline < 0 ? limit : newline + 1;
+        read.limit = limit;
+        return read;
+    }
+}
@@ -0,0 +1,71 @@
+package com.ohdsi.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+    The Athena download as extracted into vocab_folder. With a pool the large files are memory mapped and parsed in
+    parallel (MappedCSVScanner), without one they are read front to back on the calling thread (CSVRowCursor).
+
+    A table may also be kept compressed, as CONCEPT.csv.gz or CONCEPT.csv.zst - it is then inflated on a thread of
+    its own (ReadAheadInputStream) while the cursor parses what has already been inflated.
+ */
+public class CSVSource implements VocabularySource {
+
+    private final File folder;
+    private final ForkJoinPool pool;
+
+    public CSVSource(String vocab_folder) {
+        this(vocab_folder, null);
+    }
+
+    public CSVSource(String vocab_folder, ForkJoinPool pool) {
+        this.folder = new File(vocab_folder);
+        this.pool = pool;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    // the table's csv file, or its compressed copy if only that is there
+    public File getFile(String table) {
+        File csv = new File(folder, table + ".csv");
+        if (!csv.exists()) {
+            for (Compression compression : new Compression[]{Compression.GZIP, Compression.ZSTD}) {
+                File compressed = new File(folder, csv.getName() + compression.suffix);
+                if (compressed.exists()) {
+                    return compressed;
+                }
+            }
+        }
+        return csv;
+    }
+
+    @Override
+    public TableScan open(String table) throws IOException {
+        File file = getFile(table);
+        Compression compression = Compression.of(file);
+        if (compression != Compression.NONE) {
+            return readAhead(compression.input(file), file.getName());
+        }
+        // anything that fits in one split would only be scanned by one thread anyway
+        if (pool != null && pool.getParallelism() > 1 && file.length() > MappedCSVScanner.SPLIT_SIZE) {
+            return new MappedCSVScanner(file, pool);
+        }
+        return new CSVRowCursor(file);
+    }
+
+    // a cursor parsing in while its next blocks are read (and inflated) on another thread
+    static TableScan readAhead(InputStream in, String name) throws IOException {
+        InputStream ahead = new ReadAheadInputStream(in, name);
+        try {
+            return new CSVRowCursor(ahead, name);
+        } catch (IOException e) {
+            ahead.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ohdsi.app;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Output compression, chosen by the suffix of the file name: omop.owl.gz is gzip, omop.ttl.zst zstd, anything else
+    is written as it is. Compressed files are written block by block on several threads (ParallelCompressingOutputStream),
+    each block as a gzip member / zstd frame of its own. A stream of concatenated members or frames is still one
+    valid .gz / .zst file, read as a whole by zcat / zstd -d, GZIPInputStream, Python's gzip and ROBOT (which opens
+    .gz inputs itself) - nothing needs to know it was written in parallel. The OWLAPI doesn't look at the suffix, so
+    files read back here (ShardMerger, ShardPatcher) go through input().
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    public final String suffix;
+    // zstd's own default level
+    static final int ZSTD_LEVEL = 3;
+
+    Compression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public static Compression of(String fileName) {
+        if (fileName.endsWith(GZIP.suffix)) {
+            return GZIP;
+        }
+        if (fileName.endsWith(ZSTD.suffix)) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    public static Compression of(File file) {
+        return of(file.getName());
+    }
+
+    public OutputStream output(File file) throws IOException {
+        return output(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    // threads compress while the caller goes on writing, so even one thread overlaps compression with serialization
+    public OutputStream output(File file, int threads) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return this == NONE ? out : new ParallelCompressingOutputStream(out, this, threads);
+    }
+
+    // compressed on the threads of a pool shared with the other files the run writes
+    public OutputStream output(File file, CompressionPool pool) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return this == NONE ? out : new ParallelCompressingOutputStream(out, this, pool);
+    }
+
+    public InputStream input(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, 1 << 16);
+            case ZSTD:
+                return new ZstdInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    // data[0, length) as one complete gzip member / zstd frame
+    byte[] compress(byte[] data, int length) throws IOException {
+        if (this == ZSTD) {
+            byte[] compressed = new byte[(int) Zstd.compressBound(length)];
+            long size = Zstd.compressByteArray(compressed, 0, compressed.length, data, 0, length, ZSTD_LEVEL);
+            if (Zstd.isError(size)) {
+                throw new IOException("zstd compression failed: " + Zstd.getErrorName(size));
+            }
+            return Arrays.copyOf(compressed, (int) size);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + 64);
+        try (OutputStream out = new GZIPOutputStream(bytes, 1 << 16)) {
+            out.write(data, 0, length);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,49 @@
+package com.ohdsi.app;
+
+import java.io.Closeable;
+import java.util.concurrent.*;
+
+/*
+    The compression threads of one run, shared by every ParallelCompressingOutputStream it opens - a sharded run
+    writes dozens of compressed files at once, and a pool per file would start threads * shards threads and keep two
+    blocks a thread in flight for each of them.
+
+    At most 2 * threads blocks are in flight across all the streams, counted from the moment a block is handed over
+    until its compressed bytes are written out. A stream that finds no block free writes out its own oldest one,
+    and one that has none in flight compresses the block itself on the writing thread, so several streams fed by the
+    same thread can't end up waiting on each other.
+ */
+public class CompressionPool implements Closeable {
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    final int threads;
+
+    public CompressionPool(int threads) {
+        this.threads = Math.max(1, threads);
+        this.inFlight = new Semaphore(2 * this.threads);
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "compress");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // true if the caller may submit one more block, which it has to give back with release once it is written
+    boolean tryAcquire() {
+        return inFlight.tryAcquire();
+    }
+
+    void release() {
+        inFlight.release();
+    }
+
+    Future<byte[]> submit(Compression compression, byte[] data, int length) {
+        return executor.submit(() -> compression.compress(data, length));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ohdsi.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    concept_code of every loaded concept, by ConceptIndex ordinal, plus the reverse lookup (vocab, code) -> concept_id
+    with one map per target vocabulary. Only kept when something will query it (ConceptQueries), the ontology itself
+    doesn't need the codes once they are written.
+ */
+public class ConceptCodes {
+
+    private final List<String> vocabs;
+    private final List<Map<String, Integer>> byCode;
+    private String[] codes = new String[1 << 16];
+
+    public ConceptCodes(List<String> vocabs) {
+        this.vocabs = vocabs;
+        this.byCode = new ArrayList<>(vocabs.size());
+        for (int i = 0; i < vocabs.size(); i++) {
+            byCode.add(new HashMap<>());
+        }
+    }
+
+    public synchronized void put(int ordinal, int vocab, int id, String code) {
+        if (ordinal >= codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(ordinal + 1, codes.length * 2));
+        }
+        codes[ordinal] = code;
+        byCode.get(vocab).put(code, id);
+    }
+
+    public synchronized String codeAt(int ordinal) {
+        return ordinal < codes.length ? codes[ordinal] : null;
+    }
+
+    // vocab is a vocabulary_id as in target_vocabs, matched case insensitively - -1 if there is no such concept
+    public synchronized int resolve(String vocab, String code) {
+        for (int i = 0; i < vocabs.size(); i++) {
+            if (vocabs.get(i).equalsIgnoreCase(vocab)) {
+                Integer id = byCode.get(i).get(code);
+                return id == null ? -1 : id;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,224 @@
+package com.ohdsi.app;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+    The concept hierarchy as the direct (min_levels_of_separation = 1) edges of CONCEPT_ANCESTOR, held in compressed
+    sparse row form: the sorted concept ids give each concept a node number, and the parents (children) of node n are
+    parents[parentStarts[n] .. parentStarts[n + 1]). A few million edges come to a few tens of MB of int arrays, with
+    no object per concept or edge.
+
+    Ancestors / descendants are walked breadth first, so the depth a concept is first reached at is its
+    min_levels_of_separation - the same closure CONCEPT_ANCESTOR holds, without anything being reasoned over. The DAG
+    covers every concept with an edge, not only the loaded ones, so that paths through other vocabularies are kept.
+
+    Immutable once built, and safe to query from several threads - each thread walks with its own marks and queue,
+    reused from one walk to the next so that a walk costs nothing in proportion to the size of the whole DAG.
+ */
+public class ConceptDAG {
+
+    private final int[] ids;
+    private final int[] parentStarts;
+    private final int[] parents;
+    private final int[] childStarts;
+    private final int[] children;
+    private final ThreadLocal<Walk> walks;
+
+    // depth is the number of levels between the concept walked from and id, 1 for its direct parents / children
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(int id, int depth);
+    }
+
+    // visited marks by node, valid for the current generation only, so they never have to be cleared
+    private static class Walk {
+        final int[] marks;
+        int generation = 0;
+        int[] queue = new int[64];
+
+        Walk(int size) {
+            this.marks = new int[size];
+        }
+
+        int start() {
+            if (++generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+    }
+
+    private ConceptDAG(int[] ids, int[] parentStarts, int[] parents, int[] childStarts, int[] children) {
+        this.ids = ids;
+        this.parentStarts = parentStarts;
+        this.parents = parents;
+        this.childStarts = childStarts;
+        this.children = children;
+        this.walks = ThreadLocal.withInitial(() -> new Walk(ids.length));
+    }
+
+    // collects the edges as they are read - add may be called from the threads of a parallel scan
+    public static class Builder {
+        private int[] childIds = new int[1 << 16];
+        private int[] parentIds = new int[1 << 16];
+        private int edges = 0;
+
+        public synchronized void add(int child, int parent) {
+            if (edges == childIds.length) {
+                childIds = Arrays.copyOf(childIds, edges * 2);
+                parentIds = Arrays.copyOf(parentIds, edges * 2);
+            }
+            childIds[edges] = child;
+            parentIds[edges] = parent;
+            edges++;
+        }
+
+        public synchronized ConceptDAG build() {
+            int[] all = Arrays.copyOf(childIds, edges * 2);
+            System.arraycopy(parentIds, 0, all, edges, edges);
+            Arrays.sort(all);
+            int distinct = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (i == 0 || all[i] != all[i - 1]) {
+                    all[distinct++] = all[i];
+                }
+            }
+            int[] ids = Arrays.copyOf(all, distinct);
+
+            int[] childNodes = new int[edges];
+            int[] parentNodes = new int[edges];
+            for (int e = 0; e < edges; e++) {
+                childNodes[e] = Arrays.binarySearch(ids, childIds[e]);
+                parentNodes[e] = Arrays.binarySearch(ids, parentIds[e]);
+            }
+            int[] parentStarts = new int[distinct + 1];
+            int[] parents = new int[edges];
+            fill(childNodes, parentNodes, parentStarts, parents);
+            int[] childStarts = new int[distinct + 1];
+            int[] children = new int[edges];
+            fill(parentNodes, childNodes, childStarts, children);
+            return new ConceptDAG(ids, parentStarts, parents, childStarts, children);
+        }
+
+        // counting sort of the edges on from, so the targets of each node end up next to each other
+        private void fill(int[] from, int[] to, int[] starts, int[] targets) {
+            for (int e = 0; e < edges; e++) {
+                starts[from[e] + 1]++;
+            }
+            for (int n = 0; n < starts.length - 1; n++) {
+                starts[n + 1] += starts[n];
+            }
+            int[] next = Arrays.copyOf(starts, starts.length - 1);
+            for (int e = 0; e < edges; e++) {
+                targets[next[from[e]]++] = to[e];
+            }
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int edgeCount() {
+        return parents.length;
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    // node number of the concept, negative if it has no edges
+    public int node(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    public int idAt(int node) {
+        return ids[node];
+    }
+
+    // the node numbers of all descendants of id, for repeated membership tests against the same subtree
+    public BitSet descendantNodes(int id) {
+        BitSet nodes = new BitSet(ids.length);
+        walk(id, Integer.MAX_VALUE, childStarts, children, (node, depth) -> nodes.set(node));
+        return nodes;
+    }
+
+    // every ancestor of id up to maxDepth levels up (Integer.MAX_VALUE for all of them), each once, nearest first.
+    // the visitor must not walk this DAG again on the same thread
+    public void ancestors(int id, int maxDepth, Visitor visitor) {
+        walk(id, maxDepth, parentStarts, parents, (node, depth) -> visitor.visit(ids[node], depth));
+    }
+
+    public void descendants(int id, int maxDepth, Visitor visitor) {
+        walk(id, maxDepth, childStarts, children, (node, depth) -> visitor.visit(ids[node], depth));
+    }
+
+    // true if ancestor is reachable from descendant through one or more parent edges
+    public boolean isDescendantOf(int descendant, int ancestor) {
+        int from = Arrays.binarySearch(ids, descendant);
+        int to = Arrays.binarySearch(ids, ancestor);
+        if (from < 0 || to < 0 || from == to) {
+            return false;
+        }
+        Walk walk = walks.get();
+        int generation = walk.start();
+        int[] queue = walk.queue;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int e = parentStarts[node]; e < parentStarts[node + 1]; e++) {
+                int parent = parents[e];
+                if (parent == to) {
+                    walk.queue = queue;
+                    return true;
+                }
+                if (walk.marks[parent] != generation) {
+                    walk.marks[parent] = generation;
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = parent;
+                }
+            }
+        }
+        walk.queue = queue;
+        return false;
+    }
+
+    // level by level, so that the depth limit is the min_levels_of_separation - the visitor gets node numbers
+    private void walk(int id, int maxDepth, int[] starts, int[] targets, Visitor visitor) {
+        int start = Arrays.binarySearch(ids, id);
+        if (start < 0) {
+            return;
+        }
+        Walk walk = walks.get();
+        int generation = walk.start();
+        walk.marks[start] = generation;
+        int[] queue = walk.queue;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        for (int depth = 0; depth < maxDepth && head < tail; depth++) {
+            int levelEnd = tail;
+            for (; head < levelEnd; head++) {
+                int node = queue[head];
+                for (int e = starts[node]; e < starts[node + 1]; e++) {
+                    int next = targets[e];
+                    if (walk.marks[next] != generation) {
+                        walk.marks[next] = generation;
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, tail * 2);
+                        }
+                        queue[tail++] = next;
+                        visitor.visit(next, depth + 1);
+                    }
+                }
+            }
+        }
+        walk.queue = queue;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ohdsi.app;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+    Difference between the fingerprints of the last run and this one. A concept whose fingerprint changed is both
+    retracted and re-emitted as a whole - the store only knows that something about it changed, not what - which keeps
+    the store compact and still touches only a small fraction of the output for a typical monthly release.
+ */
+public class ConceptDelta {
+
+    private final FingerprintStore previous;
+    private final FingerprintStore current;
+    private int added = 0;
+    private int changed = 0;
+    private int removed = 0;
+    // shards (vocab index, -1 for metadata) holding at least one retracted concept
+    private final Set<Integer> retractedVocabs = new HashSet<>();
+
+    public ConceptDelta(FingerprintStore previous, FingerprintStore current) {
+        this.previous = previous;
+        this.current = current;
+        for (int id : current.ids()) {
+            if (!previous.contains(id)) {
+                added++;
+            } else if (previous.fingerprint(id) != current.fingerprint(id)) {
+                changed++;
+            }
+        }
+        for (int id : previous.ids()) {
+            if (!current.contains(id)) {
+                removed++;
+            }
+            if (retracts(id)) {
+                retractedVocabs.add(previous.vocab(id));
+            }
+        }
+    }
+
+    // the axioms of this concept have to be written out again
+    public boolean emits(int id) {
+        return current.contains(id) && (!previous.contains(id) || previous.fingerprint(id) != current.fingerprint(id));
+    }
+
+    // the previously written axioms of this concept have to go
+    public boolean retracts(int id) {
+        return previous.contains(id) && (!current.contains(id) || previous.fingerprint(id) != current.fingerprint(id));
+    }
+
+    // ids to retract, sorted
+    public int[] retracted() {
+        return Arrays.stream(previous.ids()).filter(this::retracts).toArray();
+    }
+
+    // true if any concept previously written to the shard of this vocab (-1 for metadata) has to be retracted
+    public boolean retractsFrom(int vocab) {
+        return retractedVocabs.contains(vocab);
+    }
+
+    public boolean isEmpty() {
+        return added == 0 && changed == 0 && removed == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d concepts added, %d changed, %d removed", added, changed, removed);
+    }
+}
@@ -0,0 +1,279 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/*
+    concept_id -> OWLClass lookup keyed on the primitive id. Replaces the HashMap<String, OWLClass> that every downstream
+    loader was probing with freshly parsed strings.
+
+    open-addressing (linear probing) table of int keys pointing at a dense ordinal, with the ids and classes held in
+    parallel arrays by ordinal. Ordinals are handed out in insertion order and are stable, so other per-concept data can
+    be kept in plain arrays alongside this index. Each concept also carries the position of its vocabulary in
+    target_vocabs, which is what sharded output is routed on.
+
+    With spillAfter the index stays within a memory budget: the classes are no longer kept (they are made again from
+    the id when asked for), and every time the hash table reaches the threshold its entries are merged into a sorted
+    file of (id, ordinal) pairs, memory mapped and searched by binary search, and the table starts again empty. Only
+    the ids and vocabs by ordinal (6 bytes a concept) and one id in every SPILL_BLOCK of the file stay on the heap.
+
+    Not thread safe. put() replaces the table arrays one field at a time when it rehashes or spills, so anything that
+    reads the index while concepts are still being added has to hold the index's own lock, as OMOPConcepts does when
+    it puts and ShardedSink when it routes. Once the concept stage is over the index is only read and needs no lock.
+ */
+public class ConceptIndex {
+
+    private static final int EMPTY = -1;
+    // rough heap cost of a concept in the hash table, for turning a budget in bytes into a spill threshold
+    public static final int HASHED_BYTES_PER_CONCEPT = 32;
+    static final int SPILL_BLOCK = 512;
+
+    private int[] keys;
+    private int[] slots;
+    private int mask;
+    private int[] ids;
+    private OWLClass[] classes;
+    private short[] vocabs;
+    private int size = 0;
+    // concepts in the hash table, the others are in spilled
+    private int hashed = 0;
+    private int spillThreshold = Integer.MAX_VALUE;
+    private IntFunction<OWLClass> classFactory;
+    private Spill spilled;
+
+    public ConceptIndex() {
+        this(1 << 16);
+    }
+
+    public ConceptIndex(int expectedSize) {
+        int capacity = tableSize(expectedSize);
+        this.keys = new int[capacity];
+        this.slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        this.mask = capacity - 1;
+        this.ids = new int[Math.max(16, expectedSize)];
+        this.classes = new OWLClass[ids.length];
+        this.vocabs = new short[ids.length];
+    }
+
+    // from now on only keep up to threshold concepts in the hash table, and make the classes with classFactory instead
+    // of keeping them
+    public void spillAfter(int threshold, IntFunction<OWLClass> classFactory) {
+        this.spillThreshold = Math.max(1, threshold);
+        this.classFactory = classFactory;
+        this.classes = null;
+        if (hashed >= spillThreshold) {
+            spill();
+        }
+    }
+
+    // number of times the hash table went to disk
+    public int getSpills() {
+        return spilled == null ? 0 : spilled.generation;
+    }
+
+    // returns the ordinal of the concept - re-adding an existing id keeps its original ordinal and class
+    public int put(int id, OWLClass concept) {
+        return put(id, concept, 0);
+    }
+
+    public int put(int id, OWLClass concept, int vocab) {
+        int pos = find(id);
+        if (slots[pos] != EMPTY) {
+            return slots[pos];
+        }
+        if (spilled != null) {
+            int ordinal = spilled.ordinal(id);
+            if (ordinal != EMPTY) {
+                return ordinal;
+            }
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            vocabs = Arrays.copyOf(vocabs, vocabs.length * 2);
+            if (classes != null) {
+                classes = Arrays.copyOf(classes, classes.length * 2);
+            }
+        }
+        ids[size] = id;
+        if (classes != null) {
+            classes[size] = concept;
+        }
+        vocabs[size] = (short) vocab;
+        keys[pos] = id;
+        slots[pos] = size;
+        size++;
+        hashed++;
+        if (hashed >= spillThreshold) {
+            spill();
+        } else if (hashed * 3L > keys.length * 2L) {
+            rehash(keys.length * 2);
+        }
+        return size - 1;
+    }
+
+    // ordinal of the concept, or -1 if it was not loaded
+    public int ordinal(int id) {
+        int ordinal = slots[find(id)];
+        return ordinal == EMPTY && spilled != null ? spilled.ordinal(id) : ordinal;
+    }
+
+    public boolean contains(int id) {
+        return ordinal(id) != EMPTY;
+    }
+
+    public OWLClass getByID(int id) {
+        int ordinal = ordinal(id);
+        return ordinal == EMPTY ? null : classAt(ordinal);
+    }
+
+    public int idAt(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public OWLClass classAt(int ordinal) {
+        return classes != null ? classes[ordinal] : classFactory.apply(ids[ordinal]);
+    }
+
+    public int vocabAt(int ordinal) {
+        return vocabs[ordinal];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(int id) {
+        int pos = hash(id) & mask;
+        while (slots[pos] != EMPTY && keys[pos] != id) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        // the hashed concepts are the ones added since the last spill, i.e. the last ordinals
+        for (int ordinal = size - hashed; ordinal < size; ordinal++) {
+            int pos = find(ids[ordinal]);
+            keys[pos] = ids[ordinal];
+            slots[pos] = ordinal;
+        }
+    }
+
+    // merges the hash table into the spill file and empties it
+    private void spill() {
+        long[] entries = new long[hashed];
+        for (int i = 0; i < hashed; i++) {
+            int ordinal = size - hashed + i;
+            entries[i] = ((long) ids[ordinal] << 32) | ordinal;
+        }
+        Arrays.sort(entries);
+        try {
+            spilled = Spill.merge(spilled, entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill the concept index", e);
+        }
+        hashed = 0;
+        int capacity = tableSize(Math.min(spillThreshold, 1 << 16));
+        keys = new int[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+    }
+
+    // (id, ordinal) pairs sorted by id in a memory mapped temporary file, with the first id of every SPILL_BLOCK
+    // pairs on the heap so that a search only touches one block of the file
+    private static class Spill {
+        final File file;
+        final IntBuffer pairs;
+        final int count;
+        final int[] fences;
+        final int generation;
+
+        private Spill(File file, IntBuffer pairs, int count, int generation) {
+            this.file = file;
+            this.pairs = pairs;
+            this.count = count;
+            this.generation = generation;
+            this.fences = new int[(count + SPILL_BLOCK - 1) / SPILL_BLOCK];
+            for (int b = 0; b < fences.length; b++) {
+                fences[b] = pairs.get(2 * b * SPILL_BLOCK);
+            }
+        }
+
+        // one pass over the previous file and the sorted new entries, as in the merge step of a merge sort
+        static Spill merge(Spill previous, long[] entries) throws IOException {
+            File file = File.createTempFile("omop-concepts", ".index");
+            file.deleteOnExit();
+            int oldCount = previous == null ? 0 : previous.count;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                int i = 0;
+                int j = 0;
+                while (i < oldCount || j < entries.length) {
+                    if (j == entries.length || i < oldCount && previous.pairs.get(2 * i) < (int) (entries[j] >> 32)) {
+                        out.writeInt(previous.pairs.get(2 * i));
+                        out.writeInt(previous.pairs.get(2 * i + 1));
+                        i++;
+                    } else {
+                        out.writeInt((int) (entries[j] >> 32));
+                        out.writeInt((int) entries[j]);
+                        j++;
+                    }
+                }
+            }
+            IntBuffer pairs;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                pairs = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+            }
+            if (previous != null) {
+                // the old mapping stays readable until it is collected
+                previous.file.delete();
+            }
+            return new Spill(file, pairs, oldCount + entries.length, previous == null ? 1 : previous.generation + 1);
+        }
+
+        int ordinal(int id) {
+            int block = Arrays.binarySearch(fences, id);
+            if (block < 0) {
+                block = -block - 2;
+                if (block < 0) {
+                    return EMPTY;
+                }
+            }
+            int low = block * SPILL_BLOCK;
+            int high = Math.min(count, low + SPILL_BLOCK) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midId = pairs.get(2 * mid);
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return pairs.get(2 * mid + 1);
+                }
+            }
+            return EMPTY;
+        }
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(int expectedSize) {
+        long wanted = Math.max(16L, expectedSize * 3L / 2 + 1);
+        return (int) Math.min(1 << 30, Long.highestOneBit(wanted - 1) << 1);
+    }
+}
@@ -0,0 +1,120 @@
+package com.ohdsi.app;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Hierarchy and mapping lookups over what a load leaves in memory - the concept index, the CONCEPT_ANCESTOR DAG, the
+    Maps to relationships and the concept codes - so that callers can ask them of a resident loader (see
+    ConceptQueryServer) instead of re-reading the ontology.
+
+    Results only ever contain loaded concepts, i.e. those of the target vocabularies. Descendant tests are answered
+    from the bitset of the ancestor's whole subtree, and the subtrees asked about most recently are kept in an LRU
+    cache, since grounding jobs keep testing against the same few top level concepts.
+
+    Safe to use from several threads.
+ */
+public class ConceptQueries {
+
+    private final ConceptIndex index;
+    private final ConceptDAG hierarchy;
+    private final ConceptDAG mappings;
+    private final ConceptCodes codes;
+    private final Map<Integer, BitSet> subtrees;
+
+    public ConceptQueries(ConceptIndex index, ConceptDAG hierarchy, ConceptDAG mappings, ConceptCodes codes, int cacheSize) {
+        this.index = index;
+        this.hierarchy = hierarchy;
+        this.mappings = mappings;
+        this.codes = codes;
+        this.subtrees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BitSet> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public boolean contains(int id) {
+        return index.contains(id);
+    }
+
+    // loaded ancestors of id up to maxDepth levels up, nearest first
+    public int[] ancestors(int id, int maxDepth) {
+        IntList result = new IntList();
+        hierarchy.ancestors(id, maxDepth, (ancestor, depth) -> {
+            if (index.contains(ancestor)) {
+                result.add(ancestor);
+            }
+        });
+        return result.toArray();
+    }
+
+    public int[] descendants(int id, int maxDepth) {
+        IntList result = new IntList();
+        hierarchy.descendants(id, maxDepth, (descendant, depth) -> {
+            if (index.contains(descendant)) {
+                result.add(descendant);
+            }
+        });
+        return result.toArray();
+    }
+
+    public boolean isDescendantOf(int descendant, int ancestor) {
+        int node = hierarchy.node(descendant);
+        if (node < 0 || !hierarchy.contains(ancestor)) {
+            return false;
+        }
+        return subtree(ancestor).get(node);
+    }
+
+    // concept_id of the code in vocab (a vocabulary_id, e.g. "SNOMED"), -1 if it is not loaded
+    public int resolve(String vocab, String code) {
+        return codes == null ? -1 : codes.resolve(vocab, code);
+    }
+
+    public String code(int id) {
+        int ordinal = index.ordinal(id);
+        return ordinal < 0 || codes == null ? null : codes.codeAt(ordinal);
+    }
+
+    // the standard concepts id maps to
+    public int[] mapsTo(int id) {
+        IntList result = new IntList();
+        mappings.ancestors(id, 1, (standard, depth) -> result.add(standard));
+        return result.toArray();
+    }
+
+    // built outside the lock - two threads may both build a missing subtree, but neither waits on the other's walk
+    private BitSet subtree(int ancestor) {
+        synchronized (subtrees) {
+            BitSet cached = subtrees.get(ancestor);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        BitSet nodes = hierarchy.descendantNodes(ancestor);
+        synchronized (subtrees) {
+            subtrees.put(ancestor, nodes);
+        }
+        return nodes;
+    }
+
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
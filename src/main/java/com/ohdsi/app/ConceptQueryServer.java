@@ -0,0 +1,157 @@
+package com.ohdsi.app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+    ConceptQueries over HTTP on localhost, on the JDK's own HttpServer so that nothing else has to be running. Every
+    endpoint is a GET answering JSON:
+
+        /ancestors?id=4118017[&depth=2]       {"id":4118017,"ancestors":[...]}
+        /descendants?id=4118017[&depth=2]     {"id":4118017,"descendants":[...]}
+        /is-descendant?id=1&ancestor=2        {"id":1,"ancestor":2,"descendant":true}
+        /resolve?vocab=SNOMED&code=254637007  {"vocab":"SNOMED","code":"254637007","id":4118017}  (id -1: unknown)
+        /maps-to?id=1                         {"id":1,"mapsTo":[...]}
+
+    Malformed requests get a 400 with {"error": ...}.
+ */
+public class ConceptQueryServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public ConceptQueryServer(ConceptQueries queries, int port, int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/ancestors", exchange -> respond(exchange, params -> {
+            int id = intParam(params, "id");
+            return "{\"id\":" + id + ",\"ancestors\":" + json(queries.ancestors(id, depth(params))) + "}";
+        }));
+        server.createContext("/descendants", exchange -> respond(exchange, params -> {
+            int id = intParam(params, "id");
+            return "{\"id\":" + id + ",\"descendants\":" + json(queries.descendants(id, depth(params))) + "}";
+        }));
+        server.createContext("/is-descendant", exchange -> respond(exchange, params -> {
+            int id = intParam(params, "id");
+            int ancestor = intParam(params, "ancestor");
+            return "{\"id\":" + id + ",\"ancestor\":" + ancestor + ",\"descendant\":" + queries.isDescendantOf(id, ancestor) + "}";
+        }));
+        server.createContext("/resolve", exchange -> respond(exchange, params -> {
+            String vocab = param(params, "vocab");
+            String code = param(params, "code");
+            return "{\"vocab\":" + json(vocab) + ",\"code\":" + json(code) + ",\"id\":" + queries.resolve(vocab, code) + "}";
+        }));
+        server.createContext("/maps-to", exchange -> respond(exchange, params -> {
+            int id = intParam(params, "id");
+            return "{\"id\":" + id + ",\"mapsTo\":" + json(queries.mapsTo(id)) + "}";
+        }));
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Serving concept queries on http://localhost:" + getPort() + "/");
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // the port actually bound, when started on port 0
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Query {
+        String answer(Map<String, String> params);
+    }
+
+    private static void respond(HttpExchange exchange, Query query) throws IOException {
+        int status = 200;
+        String body;
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            status = 405;
+            body = "{\"error\":\"only GET is supported\"}";
+        } else {
+            try {
+                body = query.answer(params(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = "{\"error\":" + json(e.getMessage()) + "}";
+            }
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static String param(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing parameter " + name);
+        }
+        return value;
+    }
+
+    // NumberFormatException is an IllegalArgumentException, so a bad number is a 400 as well
+    private static int intParam(Map<String, String> params, String name) {
+        return Integer.parseInt(param(params, name));
+    }
+
+    private static int depth(Map<String, String> params) {
+        return params.containsKey("depth") ? intParam(params, "depth") : OMOPAncestry.FULL_CLOSURE;
+    }
+
+    private static String json(int[] values) {
+        StringBuilder sb = new StringBuilder(values.length * 9 + 2).append('[');
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i > 0 ? "," : "").append(values[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String json(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
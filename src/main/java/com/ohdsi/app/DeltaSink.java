@@ -0,0 +1,99 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Fingerprints every axiom on its way through (see FingerprintStore) for incremental builds.
+
+    On a full build everything is passed on to the output as well. On an incremental build the loaders run twice:
+    the first pass only fingerprints, then startPatch() hands over the diff against the last run and the second pass
+    passes on just the axioms of added or changed concepts. The axioms that are not about a concept (metadata,
+    property declarations made in the loader constructors) are only produced once, so they are kept from the first pass.
+ */
+public class DeltaSink implements AxiomSink {
+
+    private final FingerprintStore fingerprints = new FingerprintStore(1 << 20);
+    private final List<OWLAxiom> unrouted = Collections.synchronizedList(new ArrayList<>());
+    private volatile AxiomSink target;
+    private volatile ConceptDelta delta;
+
+    // target is null for the fingerprinting pass of an incremental build
+    public DeltaSink(AxiomSink target) {
+        this.target = target;
+    }
+
+    @Override
+    public void add(OWLAxiom axiom) {
+        addAll(Collections.singletonList(axiom));
+    }
+
+    @Override
+    public void addAll(Collection<? extends OWLAxiom> axioms) {
+        if (delta != null) {
+            List<OWLAxiom> emitted = new ArrayList<>();
+            for (OWLAxiom axiom : axioms) {
+                int id = AxiomRouting.subjectConceptId(axiom);
+                if (id != AxiomRouting.NO_CONCEPT && delta.emits(id)) {
+                    emitted.add(axiom);
+                }
+            }
+            if (!emitted.isEmpty()) {
+                target.addAll(emitted);
+            }
+            return;
+        }
+        // hashing is the expensive part, so it happens outside the lock
+        int[] ids = new int[axioms.size()];
+        long[] hashes = new long[axioms.size()];
+        int n = 0;
+        for (OWLAxiom axiom : axioms) {
+            ids[n] = AxiomRouting.subjectConceptId(axiom);
+            hashes[n++] = FingerprintStore.hash(axiom);
+            if (target == null && ids[n - 1] == AxiomRouting.NO_CONCEPT) {
+                unrouted.add(axiom);
+            }
+        }
+        synchronized (fingerprints) {
+            for (int i = 0; i < n; i++) {
+                fingerprints.mix(ids[i], hashes[i]);
+            }
+        }
+        if (target != null) {
+            target.addAll(axioms);
+        }
+    }
+
+    // switches from fingerprinting to emitting the delta into patch
+    public void startPatch(ConceptDelta delta, AxiomSink patch) {
+        this.target = patch;
+        if (delta.emits(AxiomRouting.NO_CONCEPT)) {
+            patch.addAll(unrouted);
+        }
+        unrouted.clear();
+        this.delta = delta;
+    }
+
+    // the fingerprints of this run, with the shard of each concept taken from the index
+    public FingerprintStore getFingerprints(ConceptIndex index) {
+        for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+            int id = index.idAt(ordinal);
+            if (fingerprints.contains(id)) {
+                fingerprints.setVocab(id, index.vocabAt(ordinal));
+            }
+        }
+        return fingerprints;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (target != null) {
+            target.close();
+        }
+    }
+}
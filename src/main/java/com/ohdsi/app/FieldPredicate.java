@@ -0,0 +1,89 @@
+package com.ohdsi.app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+
+/*
+    Filter on the raw bytes of a single column, buffer[start, end). Handed to TableScan.forEach so that the scan can
+    test it as soon as it has found that one field and skip the line before the rest of it is split - most of
+    CONCEPT_ANCESTOR and CONCEPT_RELATIONSHIP never gets past this.
+
+    The factory predicates also know the values they compare with, so that a source with a query language of its own
+    (JdbcSource) can hand the filter to the database instead of testing the bytes.
+ */
+@FunctionalInterface
+public interface FieldPredicate {
+
+    boolean test(ByteBuffer buffer, int start, int end);
+
+    // the field passes if it equals any one of these - null when the predicate is not one of the comparisons below
+    default List<?> values() {
+        return null;
+    }
+
+    static FieldPredicate equalTo(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return comparison(List.of(value), (buffer, start, end) -> {
+            if (end - start != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (buffer.get(start + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    // constant time membership test, whatever the number of values
+    static FieldPredicate anyOf(Collection<String> values) {
+        ByteStringMap<Boolean> set = new ByteStringMap<>(values.size());
+        for (String value : values) {
+            set.put(value, Boolean.TRUE);
+        }
+        return comparison(List.copyOf(values), set::containsKey);
+    }
+
+    // same value as CSVRow.getInt would read (so leading zeros are fine), false rather than an exception for non-numbers
+    static FieldPredicate isInt(int value) {
+        return comparison(List.of(value), (buffer, start, end) -> {
+            int i = start;
+            boolean negative = i < end && buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == end) {
+                return false;
+            }
+            long parsed = 0;
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return false;
+                }
+                parsed = parsed * 10 + digit;
+                if (parsed > (long) Integer.MAX_VALUE + 1) {
+                    return false;
+                }
+            }
+            return (negative ? -parsed : parsed) == value;
+        });
+    }
+
+    private static FieldPredicate comparison(List<?> values, FieldPredicate test) {
+        return new FieldPredicate() {
+            @Override
+            public boolean test(ByteBuffer buffer, int start, int end) {
+                return test.test(buffer, start, end);
+            }
+
+            @Override
+            public List<?> values() {
+                return values;
+            }
+        };
+    }
+}
@@ -0,0 +1,173 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.*;
+import java.util.Arrays;
+
+/*
+    One 64-bit fingerprint per concept_id over every axiom about that concept (AxiomRouting.subjectConceptId), plus the
+    concept's shard. Axioms not about any concept are kept under AxiomRouting.NO_CONCEPT. The fingerprint is a sum of
+    per-axiom hashes, so it does not depend on the order the (parallel) loaders produce the axioms in.
+
+    Saved between runs - 14 bytes per concept - so that the next release can be diffed against it, see ConceptDelta.
+ */
+public class FingerprintStore {
+
+    private static final int MAGIC = 0x4F4D4650; // "OMFP"
+    private static final int VERSION = 1;
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private long[] fingerprints;
+    private short[] vocabs;
+    private int mask;
+    private int size = 0;
+
+    public FingerprintStore(int expectedSize) {
+        long wanted = Math.max(16L, expectedSize * 3L / 2 + 1);
+        int capacity = (int) Math.min(1 << 30, Long.highestOneBit(wanted - 1) << 1);
+        allocate(capacity);
+    }
+
+    // adds an axiom's hash to the fingerprint of its concept
+    public void mix(int id, long hash) {
+        int pos = slot(id);
+        fingerprints[pos] += hash;
+    }
+
+    public void setVocab(int id, int vocab) {
+        vocabs[slot(id)] = (short) vocab;
+    }
+
+    public boolean contains(int id) {
+        return keys[find(id)] == id;
+    }
+
+    public long fingerprint(int id) {
+        int pos = find(id);
+        return keys[pos] == id ? fingerprints[pos] : 0;
+    }
+
+    // position of the concept's vocabulary in target_vocabs, -1 for NO_CONCEPT or unknown ids
+    public int vocab(int id) {
+        int pos = find(id);
+        return keys[pos] == id ? vocabs[pos] : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // every id in the store, sorted
+    public int[] ids() {
+        int[] ids = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                ids[n++] = key;
+            }
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    public static long hash(OWLAxiom axiom) {
+        // the rendering is stable across runs and JVMs, unlike identity or 32-bit OWLAPI hash codes
+        String s = axiom.toString();
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // FNV alone is weak in the low bits and the fingerprint is a plain sum, so finish with a full avalanche
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            for (int id : ids()) {
+                int pos = find(id);
+                out.writeInt(id);
+                out.writeLong(fingerprints[pos]);
+                out.writeShort(vocabs[pos]);
+            }
+        }
+        // a run that dies half way must not leave a truncated store behind
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Could not replace fingerprint store " + file);
+        }
+    }
+
+    public static FingerprintStore load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a fingerprint store written by this version");
+            }
+            int count = in.readInt();
+            FingerprintStore store = new FingerprintStore(count);
+            for (int i = 0; i < count; i++) {
+                int pos = store.slot(in.readInt());
+                store.fingerprints[pos] = in.readLong();
+                store.vocabs[pos] = in.readShort();
+            }
+            return store;
+        }
+    }
+
+    // slot of the id, inserting it if needed
+    private int slot(int id) {
+        int pos = find(id);
+        if (keys[pos] != id) {
+            keys[pos] = id;
+            vocabs[pos] = -1;
+            size++;
+            if (size * 3L > keys.length * 2L) {
+                rehash(keys.length * 2);
+                pos = find(id);
+            }
+        }
+        return pos;
+    }
+
+    private int find(int id) {
+        int h = id * 0x9E3779B9;
+        int pos = (h ^ (h >>> 16)) & mask;
+        while (keys[pos] != FREE && keys[pos] != id) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldFingerprints = fingerprints;
+        short[] oldVocabs = vocabs;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int pos = find(oldKeys[i]);
+                keys[pos] = oldKeys[i];
+                fingerprints[pos] = oldFingerprints[i];
+                vocabs[pos] = oldVocabs[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        fingerprints = new long[capacity];
+        vocabs = new short[capacity];
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,195 @@
+package com.ohdsi.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/*
+    Reads the vocabulary tables straight from an OMOP CDM database instead of an Athena export. Only java.sql is used,
+    the driver (e.g. org.postgresql:postgresql, see the postgres profile in pom.xml) just has to be on the classpath.
+
+    Each scan has a connection of its own, since the pipeline runs several of them at once. Rows are streamed with
+    autocommit off and a large fetch size, which is what makes the Postgres driver use a server-side cursor rather
+    than reading the whole of CONCEPT_RELATIONSHIP into memory. A filter handed to forEach is added to the query as a
+    WHERE clause when it is one of the FieldPredicate comparisons, so the rows the loaders skip never leave the
+    database.
+
+    Every value is read as text and written into the row's buffer as UTF-8, which keeps the loaders unchanged - they
+    see the same CSVRow as from the csv files. Tables and columns are the unquoted CDM names, so that they resolve in
+    whatever case the database folds them to.
+ */
+public class JdbcSource implements VocabularySource {
+
+    public static final int DEFAULT_FETCH_SIZE = 10000;
+
+    private final String url;
+    private final Properties properties;
+    private final String schema;
+    private final int fetchSize;
+
+    public JdbcSource(String url, String user, String password, String schema, int fetchSize) {
+        this.url = url;
+        this.properties = new Properties();
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        this.schema = schema;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public TableScan open(String table) throws IOException {
+        try {
+            return new JdbcScan(DriverManager.getConnection(url, properties), qualified(table));
+        } catch (SQLException e) {
+            throw new IOException("Could not read " + table + " from " + url, e);
+        }
+    }
+
+    private String qualified(String table) {
+        String name = table.toLowerCase(Locale.ROOT);
+        return schema == null ? name : schema + "." + name;
+    }
+
+    private class JdbcScan implements TableScan {
+        private final Connection connection;
+        private final String table;
+        private final CSVHeader header;
+        private final String columns;
+
+        JdbcScan(Connection connection, String table) throws SQLException {
+            this.connection = connection;
+            this.table = table;
+            try {
+                connection.setAutoCommit(false);
+                connection.setReadOnly(true);
+                // no rows, only the column names
+                List<String> names = new ArrayList<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    for (int c = 1; c <= meta.getColumnCount(); c++) {
+                        names.add(meta.getColumnLabel(c).toLowerCase(Locale.ROOT));
+                    }
+                }
+                this.header = new CSVHeader(String.join("\t", names));
+                this.columns = String.join(", ", names);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public CSVHeader getHeader() {
+            return header;
+        }
+
+        @Override
+        public void forEach(RowHandler handler) throws IOException {
+            query("SELECT " + columns + " FROM " + table, List.of(), handler);
+        }
+
+        @Override
+        public void forEach(int col, FieldPredicate filter, RowHandler handler) throws IOException {
+            List<?> values = filter.values();
+            if (values == null || values.isEmpty()) {
+                TableScan.super.forEach(col, filter, handler);
+                return;
+            }
+            StringBuilder sql = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table)
+                    .append(" WHERE ").append(header.name(col));
+            if (values.size() == 1) {
+                sql.append(" = ?");
+            } else {
+                sql.append(" IN (?").append(", ?".repeat(values.size() - 1)).append(')');
+            }
+            query(sql.toString(), values, handler);
+        }
+
+        private void query(String sql, List<?> parameters, RowHandler handler) throws IOException {
+            try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    JdbcRow row = new JdbcRow(header);
+                    while (rs.next()) {
+                        row.read(rs);
+                        handler.accept(row);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException("Could not read " + table + " from " + url, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // nothing was written, this only ends the cursor's transaction
+                connection.rollback();
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    // the fields of the current result set row, one after the other in a reused buffer that grows as needed
+    private static class JdbcRow extends CSVRow {
+        private byte[] bytes = new byte[1024];
+
+        JdbcRow(CSVHeader header) {
+            super(header, ByteBuffer.allocate(0));
+            setBuffer(ByteBuffer.wrap(bytes));
+        }
+
+        void read(ResultSet rs) throws SQLException {
+            int position = 0;
+            for (int c = 0; c < header.size(); c++) {
+                String value = rs.getString(c + 1);
+                int start = position;
+                if (value != null) {
+                    position = append(value, position);
+                }
+                setField(c, start, position);
+            }
+        }
+
+        // plain ascii, which almost every id and code is, is copied without encoding it into a temporary array
+        private int append(String value, int position) {
+            int length = value.length();
+            ensure(position + length);
+            for (int i = 0; i < length; i++) {
+                char ch = value.charAt(i);
+                if (ch >= 0x80) {
+                    byte[] encoded = value.substring(i).getBytes(StandardCharsets.UTF_8);
+                    ensure(position + encoded.length);
+                    System.arraycopy(encoded, 0, bytes, position, encoded.length);
+                    return position + encoded.length;
+                }
+                bytes[position++] = (byte) ch;
+            }
+            return position;
+        }
+
+        private void ensure(int capacity) {
+            if (capacity > bytes.length) {
+                byte[] grown = new byte[Math.max(capacity, bytes.length * 2)];
+                System.arraycopy(bytes, 0, grown, 0, bytes.length);
+                bytes = grown;
+                setBuffer(ByteBuffer.wrap(bytes));
+            }
+        }
+    }
+}
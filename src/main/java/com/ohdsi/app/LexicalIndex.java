@@ -0,0 +1,319 @@
+package com.ohdsi.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/*
+    The concept names and English synonyms of a load as a memory mapped lexicon, for grounding text mentions to
+    concept ids without the ontology or a database. Written by LexicalIndexWriter; opening it maps the file and reads
+    a few header ints, so it is ready in milliseconds whatever its size.
+
+        LexicalIndex lexicon = LexicalIndex.open(new File("omop.owl.lexicon"));
+        lexicon.lookup("Malignant neoplasm of breast");   // concepts with that exact name or synonym
+        lexicon.prefix("malignant neo", 50);              // concepts with a name or synonym starting with it
+        lexicon.tokens("breast neoplasm");                // concepts whose names / synonyms have all these words
+
+    Everything is compared in its normalized form (see normalize), so lookups ignore case, accents and punctuation.
+
+    The file holds two dictionaries, the normalized terms and the words they are made of. Each is a sorted,
+    front coded string table - every term is stored as the length of the prefix it shares with the one before and
+    the bytes after that, with a full term every BLOCK terms - followed by the sorted concept ids of every term:
+
+        int count, int blocks, int dataLength, int postingCount
+        int[blocks] offset in data of each block's first term
+        int[count + 1] start in postings of each term's concept ids
+        byte[dataLength] terms: varint shared, varint suffix length, suffix
+        int[postingCount] concept ids
+ */
+public class LexicalIndex {
+
+    static final int MAGIC = 0x4F4C4558; // "OLEX"
+    static final int VERSION = 1;
+    static final int BLOCK = 16;
+
+    private final Dictionary terms;
+    private final Dictionary words;
+
+    private LexicalIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a lexical index written by this version");
+        }
+        this.terms = new Dictionary(buffer, 8);
+        this.words = new Dictionary(buffer, terms.end);
+    }
+
+    public static LexicalIndex open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Lexical index " + file + " is larger than 2GB");
+            }
+            return new LexicalIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // lower case, accents dropped, anything but letters and digits turned into single spaces between the words
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean gap = false;
+        for (int i = 0; i < decomposed.length(); ) {
+            int cp = decomposed.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetterOrDigit(cp)) {
+                if (gap && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                gap = false;
+                sb.appendCodePoint(Character.toLowerCase(cp));
+            } else if (Character.getType(cp) != Character.NON_SPACING_MARK) {
+                gap = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    public int termCount() {
+        return terms.count;
+    }
+
+    public int wordCount() {
+        return words.count;
+    }
+
+    // concepts with a name or synonym that normalizes to the same as text
+    public int[] lookup(String text) {
+        return terms.postings(terms.find(bytes(normalize(text))));
+    }
+
+    // concepts with a name or synonym starting with prefix, at most limit of them, in the order of their terms
+    public int[] prefix(String prefix, int limit) {
+        byte[] wanted = bytes(normalize(prefix));
+        Cursor cursor = terms.seek(wanted);
+        IntSet seen = new IntSet();
+        while (seen.size < limit && cursor.term >= 0 && cursor.startsWith(wanted)) {
+            for (int p = terms.postingStart(cursor.term); p < terms.postingStart(cursor.term + 1) && seen.size < limit; p++) {
+                seen.add(terms.posting(p));
+            }
+            cursor.next();
+        }
+        return seen.toArray();
+    }
+
+    // concepts that have every word of text somewhere in their names and synonyms
+    public int[] tokens(String text) {
+        String normal = normalize(text);
+        if (normal.isEmpty()) {
+            return new int[0];
+        }
+        int[] result = null;
+        for (String word : normal.split(" ")) {
+            int[] postings = words.postings(words.find(bytes(word)));
+            result = result == null ? postings : intersect(result, postings);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, n);
+    }
+
+    // unsigned byte order, which for UTF-8 is code point order - the order LexicalIndexWriter sorts in
+    static int compare(byte[] a, int aLength, byte[] b, int bLength) {
+        int n = Math.min(aLength, bLength);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    private static class Dictionary {
+        final ByteBuffer buffer;
+        final int count;
+        final int blocks;
+        final int blockOffsets;
+        final int postingStarts;
+        final int data;
+        final int postings;
+        final int end;
+
+        Dictionary(ByteBuffer buffer, int at) {
+            this.buffer = buffer;
+            this.count = buffer.getInt(at);
+            this.blocks = buffer.getInt(at + 4);
+            int dataLength = buffer.getInt(at + 8);
+            int postingCount = buffer.getInt(at + 12);
+            this.blockOffsets = at + 16;
+            this.postingStarts = blockOffsets + 4 * blocks;
+            this.data = postingStarts + 4 * (count + 1);
+            this.postings = data + dataLength;
+            this.end = postings + 4 * postingCount;
+        }
+
+        int postingStart(int term) {
+            return buffer.getInt(postingStarts + 4 * term);
+        }
+
+        int posting(int p) {
+            return buffer.getInt(postings + 4 * p);
+        }
+
+        int[] postings(int term) {
+            if (term < 0) {
+                return new int[0];
+            }
+            int from = postingStart(term);
+            int[] ids = new int[postingStart(term + 1) - from];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = posting(from + i);
+            }
+            return ids;
+        }
+
+        // the term equal to wanted, -1 if there is none
+        int find(byte[] wanted) {
+            Cursor cursor = seek(wanted);
+            return cursor.term >= 0 && compare(cursor.bytes, cursor.length, wanted, wanted.length) == 0 ? cursor.term : -1;
+        }
+
+        // a cursor on the first term >= wanted, or past the end (term -1)
+        Cursor seek(byte[] wanted) {
+            // last block whose first term is <= wanted
+            int low = 0;
+            int high = blocks - 1;
+            int block = 0;
+            Cursor probe = new Cursor(this);
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                probe.at(mid);
+                if (compare(probe.bytes, probe.length, wanted, wanted.length) <= 0) {
+                    block = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            Cursor cursor = probe;
+            cursor.at(block);
+            while (cursor.term >= 0 && compare(cursor.bytes, cursor.length, wanted, wanted.length) < 0) {
+                cursor.next();
+            }
+            return cursor;
+        }
+    }
+
+    // walks the terms of a dictionary in order, decoding each into bytes[0, length)
+    private static class Cursor {
+        final Dictionary dictionary;
+        byte[] bytes = new byte[64];
+        int length;
+        int term = -1;
+        int pos;
+
+        Cursor(Dictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        void at(int block) {
+            if (dictionary.count == 0) {
+                term = -1;
+                return;
+            }
+            term = block * BLOCK;
+            pos = dictionary.data + dictionary.buffer.getInt(dictionary.blockOffsets + 4 * block);
+            decode();
+        }
+
+        void next() {
+            if (term < 0 || ++term >= dictionary.count) {
+                term = -1;
+                return;
+            }
+            decode();
+        }
+
+        private void decode() {
+            int shared = varint();
+            int suffix = varint();
+            if (shared + suffix > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, shared + suffix));
+            }
+            dictionary.buffer.get(pos, bytes, shared, suffix);
+            pos += suffix;
+            length = shared + suffix;
+        }
+
+        boolean startsWith(byte[] prefix) {
+            if (length < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (bytes[i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = dictionary.buffer.get(pos++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    // insertion ordered set of ids, small enough for a linear membership test to be the quickest
+    private static class IntSet {
+        int[] values = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    return;
+                }
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+    Collects the (normalized name or synonym, concept id) pairs of a load and writes them as a LexicalIndex. add is
+    called from the threads of the parallel scans. The normalized terms and their words are kept in a StringArena of
+    their own, so collecting them costs 8 bytes a pair on the heap; the sorting all happens in write.
+ */
+public class LexicalIndexWriter implements Closeable {
+
+    private final StringArena strings;
+    // (arena handle, concept id) pairs
+    private int[] termPairs = new int[1 << 16];
+    private int termPairCount = 0;
+    private int[] wordPairs = new int[1 << 16];
+    private int wordPairCount = 0;
+
+    public LexicalIndexWriter() throws IOException {
+        this.strings = new StringArena();
+    }
+
+    public synchronized void add(int conceptId, String text) {
+        String normal = LexicalIndex.normalize(text);
+        if (normal.isEmpty()) {
+            return;
+        }
+        termPairs = append(termPairs, termPairCount++, strings.intern(normal), conceptId);
+        for (String word : normal.split(" ")) {
+            wordPairs = append(wordPairs, wordPairCount++, strings.intern(word), conceptId);
+        }
+    }
+
+    public synchronized void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(LexicalIndex.MAGIC);
+            out.writeInt(LexicalIndex.VERSION);
+            writeDictionary(out, termPairs, termPairCount);
+            writeDictionary(out, wordPairs, wordPairCount);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        strings.close();
+    }
+
+    private static int[] append(int[] pairs, int at, int handle, int conceptId) {
+        if (2 * at + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[2 * at] = handle;
+        pairs[2 * at + 1] = conceptId;
+        return pairs;
+    }
+
+    private void writeDictionary(DataOutputStream out, int[] pairs, int count) throws IOException {
+        // the distinct terms in byte order, and the rank of each handle among them
+        int[] rank = new int[strings.size()];
+        Arrays.fill(rank, -1);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (rank[pairs[2 * i]] < 0) {
+                rank[pairs[2 * i]] = distinct++;
+            }
+        }
+        int[] terms = new int[distinct];
+        for (int handle = 0; handle < rank.length; handle++) {
+            if (rank[handle] >= 0) {
+                terms[rank[handle]] = handle;
+            }
+        }
+        byte[][] scratch = {new byte[64], new byte[64]};
+        sort(terms, (a, b) -> compareTerms(a, b, scratch));
+        for (int i = 0; i < distinct; i++) {
+            rank[terms[i]] = i;
+        }
+
+        // the postings, ordered by term and then by concept id (flipping the sign bit makes the ids sort as signed)
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) rank[pairs[2 * i]] << 32) | ((pairs[2 * i + 1] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(keys);
+        int postingCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[postingCount++] = keys[i];
+            }
+        }
+
+        // first pass over the terms only measures the front coded data, so that the header can go first
+        int blocks = (distinct + LexicalIndex.BLOCK - 1) / LexicalIndex.BLOCK;
+        int[] blockOffsets = new int[blocks];
+        long dataLength = 0;
+        byte[] previous = new byte[0];
+        for (int i = 0; i < distinct; i++) {
+            byte[] term = bytes(terms[i]);
+            int shared = i % LexicalIndex.BLOCK == 0 ? 0 : sharedPrefix(previous, term);
+            if (i % LexicalIndex.BLOCK == 0) {
+                blockOffsets[i / LexicalIndex.BLOCK] = (int) dataLength;
+            }
+            dataLength += varintLength(shared) + varintLength(term.length - shared) + term.length - shared;
+            previous = term;
+        }
+        if (dataLength > Integer.MAX_VALUE / 2) {
+            throw new IOException("Too many terms for a lexical index: " + dataLength + " bytes");
+        }
+
+        out.writeInt(distinct);
+        out.writeInt(blocks);
+        out.writeInt((int) dataLength);
+        out.writeInt(postingCount);
+        for (int offset : blockOffsets) {
+            out.writeInt(offset);
+        }
+        int p = 0;
+        for (int term = 0; term <= distinct; term++) {
+            while (p < postingCount && (int) (keys[p] >>> 32) < term) {
+                p++;
+            }
+            out.writeInt(p);
+        }
+        previous = new byte[0];
+        for (int i = 0; i < distinct; i++) {
+            byte[] term = bytes(terms[i]);
+            int shared = i % LexicalIndex.BLOCK == 0 ? 0 : sharedPrefix(previous, term);
+            writeVarint(out, shared);
+            writeVarint(out, term.length - shared);
+            out.write(term, shared, term.length - shared);
+            previous = term;
+        }
+        for (int i = 0; i < postingCount; i++) {
+            out.writeInt((int) keys[i] ^ Integer.MIN_VALUE);
+        }
+    }
+
+    private byte[] bytes(int handle) {
+        byte[] bytes = new byte[strings.length(handle)];
+        strings.buffer(handle).get(strings.start(handle), bytes);
+        return bytes;
+    }
+
+    private int compareTerms(int a, int b, byte[][] scratch) {
+        int aLength = copy(a, scratch, 0);
+        int bLength = copy(b, scratch, 1);
+        return LexicalIndex.compare(scratch[0], aLength, scratch[1], bLength);
+    }
+
+    private int copy(int handle, byte[][] scratch, int slot) {
+        int length = strings.length(handle);
+        if (scratch[slot].length < length) {
+            scratch[slot] = new byte[Math.max(length, scratch[slot].length * 2)];
+        }
+        ByteBuffer buffer = strings.buffer(handle);
+        buffer.get(strings.start(handle), scratch[slot], 0, length);
+        return length;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    // bottom up merge sort of the handles, so they never have to be boxed
+    private static void sort(int[] values, IntComparator comparator) {
+        int[] from = values;
+        int[] to = new int[values.length];
+        for (int width = 1; width < values.length; width *= 2) {
+            for (int low = 0; low < values.length; low += 2 * width) {
+                int mid = Math.min(low + width, values.length);
+                int high = Math.min(low + 2 * width, values.length);
+                int i = low;
+                int j = mid;
+                for (int k = low; k < high; k++) {
+                    to[k] = i < mid && (j >= high || comparator.compare(from[i], from[j]) <= 0) ? from[i++] : from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != values) {
+            System.arraycopy(from, 0, values, 0, values.length);
+        }
+    }
+}
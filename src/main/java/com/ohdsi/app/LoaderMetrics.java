@@ -0,0 +1,308 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+    What a run spent its time and memory on. Every table scan goes through source(), which counts the rows read and
+    the rows the scan's filter let through, and every stage of OWLLoader is timed between startStage and endStage
+    together with the axioms it committed. A table is put down to the stage that opened it.
+
+    While the loader runs, startProgress prints a line every few seconds with the open tables and running stages,
+    and writeReport leaves the totals as JSON, e.g.
+
+        {"seconds":812.4,"peakHeapBytes":..,"maxHeapBytes":..,"gcSeconds":14.2,"gcCount":310,
+         "stages":[{"name":"concepts","seconds":95.1,"axioms":9120334,"axiomsPerSecond":95902.6}, ...],
+         "tables":[{"table":"CONCEPT","stage":"concepts","rowsRead":6511035,"rowsFiltered":5802210,"rowsPassed":708825,
+                    "bytes":981330102,"seconds":41.3,"rowsPerSecond":157652.2,"bytesPerSecond":23761019.4}, ...]}
+
+    bytes (and bytesPerSecond) are -1 for sources that can't tell, i.e. JdbcSource. The peak heap is the sum of the
+    peaks of the heap pools, which may have peaked at different times - an upper bound rather than an exact figure.
+    Per chunk timings are JFR events instead, see ScanChunkEvent.
+ */
+public class LoaderMetrics {
+
+    public static class Stage {
+        final String name;
+        private final LongSupplier axioms;
+        private long nanos = 0;
+        private long started = -1;
+        private long committed = 0;
+
+        Stage(String name, LongSupplier axioms) {
+            this.name = name;
+            this.axioms = axioms;
+        }
+
+        public long getAxioms() {
+            return started >= 0 ? axioms.getAsLong() : committed;
+        }
+
+        public double getSeconds() {
+            return (nanos + (started >= 0 ? System.nanoTime() - started : 0)) / 1e9;
+        }
+    }
+
+    public static class Table {
+        final String name;
+        final String stage;
+        private final long opened = System.nanoTime();
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private long closed = -1;
+        private long bytes = -1;
+
+        Table(String name, String stage) {
+            this.name = name;
+            this.stage = stage;
+        }
+
+        public long getRowsRead() {
+            return passed.sum() + rejected.sum();
+        }
+
+        public long getRowsPassed() {
+            return passed.sum();
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getSeconds() {
+            return ((closed >= 0 ? closed : System.nanoTime()) - opened) / 1e9;
+        }
+    }
+
+    private final long started = System.nanoTime();
+    private final long gcTimeAtStart = gcTime();
+    private final long gcCountAtStart = gcCount();
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<Table> tables = new ArrayList<>();
+    // the stage running on this thread, that the tables it opens are put down to
+    private final ThreadLocal<Stage> current = new ThreadLocal<>();
+    private ScheduledExecutorService progress;
+
+    public LoaderMetrics() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // a stage run twice (the second pass of an incremental build) adds to the same entry - axioms counts the
+    // stage's BatchingSink, which keeps counting across both passes
+    public synchronized Stage startStage(String name, LongSupplier axioms) {
+        Stage stage = stages.stream().filter(s -> s.name.equals(name)).findFirst().orElse(null);
+        if (stage == null) {
+            stage = new Stage(name, axioms);
+            stages.add(stage);
+        }
+        stage.started = System.nanoTime();
+        current.set(stage);
+        return stage;
+    }
+
+    public synchronized void endStage(Stage stage) {
+        stage.nanos += System.nanoTime() - stage.started;
+        stage.started = -1;
+        stage.committed = stage.axioms.getAsLong();
+        current.remove();
+    }
+
+    public synchronized List<Table> getTables() {
+        return new ArrayList<>(tables);
+    }
+
+    public VocabularySource source(VocabularySource source) {
+        return name -> {
+            TableScan scan = source.open(name);
+            Stage stage = current.get();
+            Table table = new Table(name, stage == null ? null : stage.name);
+            synchronized (this) {
+                tables.add(table);
+            }
+            return new MeteredScan(scan, table);
+        };
+    }
+
+    // the rows a filter turns down are counted by the filter, so that read = passed + rejected even where the
+    // scan never tests the filter itself (a database filtering in the query)
+    private class MeteredScan implements TableScan {
+        private final TableScan scan;
+        private final Table table;
+
+        MeteredScan(TableScan scan, Table table) {
+            this.scan = scan;
+            this.table = table;
+        }
+
+        @Override
+        public CSVHeader getHeader() {
+            return scan.getHeader();
+        }
+
+        @Override
+        public void forEach(RowHandler handler) throws IOException {
+            scan.forEach(row -> {
+                table.passed.increment();
+                handler.accept(row);
+            });
+        }
+
+        @Override
+        public void forEach(int col, FieldPredicate filter, RowHandler handler) throws IOException {
+            FieldPredicate counted = new FieldPredicate() {
+                @Override
+                public boolean test(ByteBuffer buffer, int start, int end) {
+                    if (filter.test(buffer, start, end)) {
+                        return true;
+                    }
+                    table.rejected.increment();
+                    return false;
+                }
+
+                @Override
+                public List<?> values() {
+                    return filter.values();
+                }
+            };
+            scan.forEach(col, counted, row -> {
+                table.passed.increment();
+                handler.accept(row);
+            });
+        }
+
+        @Override
+        public long bytesRead() {
+            return scan.bytesRead();
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (LoaderMetrics.this) {
+                table.bytes = scan.bytesRead();
+                table.closed = System.nanoTime();
+            }
+            scan.close();
+        }
+    }
+
+    public void startProgress(int seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loader-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> System.out.println(progressLine()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public void stopProgress() {
+        if (progress != null) {
+            progress.shutdownNow();
+            progress = null;
+        }
+    }
+
+    // e.g. "Progress 0:03:12 | concepts 1204331 axioms | CONCEPT 2100000 rows (351020 rows/s) | heap 3.1 / 8.0 GB, gc 2.3s"
+    public synchronized String progressLine() {
+        long elapsed = (System.nanoTime() - started) / 1_000_000_000L;
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "Progress %d:%02d:%02d",
+                elapsed / 3600, elapsed / 60 % 60, elapsed % 60));
+        for (Stage stage : stages) {
+            if (stage.started >= 0) {
+                line.append(String.format(Locale.ROOT, " | %s %d axioms", stage.name, stage.getAxioms()));
+            }
+        }
+        for (Table table : tables) {
+            if (table.closed < 0) {
+                long rows = table.getRowsRead();
+                line.append(String.format(Locale.ROOT, " | %s %d rows (%.0f rows/s)",
+                        table.name, rows, rows / Math.max(table.getSeconds(), 1e-9)));
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        line.append(String.format(Locale.ROOT, " | heap %.1f / %.1f GB, gc %.1fs",
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e9, runtime.maxMemory() / 1e9,
+                (gcTime() - gcTimeAtStart) / 1e3));
+        return line.toString();
+    }
+
+    public long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public synchronized void writeReport(File file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT, "{\"seconds\":%.1f,\"peakHeapBytes\":%d,\"maxHeapBytes\":%d,\"gcSeconds\":%.1f,\"gcCount\":%d,",
+                (System.nanoTime() - started) / 1e9, getPeakHeap(), Runtime.getRuntime().maxMemory(),
+                (gcTime() - gcTimeAtStart) / 1e3, gcCount() - gcCountAtStart));
+        json.append("\n \"stages\":[");
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            double seconds = stage.getSeconds();
+            json.append(i > 0 ? ",\n  " : "\n  ").append(String.format(Locale.ROOT,
+                    "{\"name\":%s,\"seconds\":%.3f,\"axioms\":%d,\"axiomsPerSecond\":%.1f}",
+                    json(stage.name), seconds, stage.getAxioms(), stage.getAxioms() / Math.max(seconds, 1e-9)));
+        }
+        json.append("],\n \"tables\":[");
+        for (int i = 0; i < tables.size(); i++) {
+            Table table = tables.get(i);
+            double seconds = Math.max(table.getSeconds(), 1e-9);
+            long read = table.getRowsRead();
+            long passed = table.getRowsPassed();
+            json.append(i > 0 ? ",\n  " : "\n  ").append(String.format(Locale.ROOT,
+                    "{\"table\":%s,\"stage\":%s,\"rowsRead\":%d,\"rowsFiltered\":%d,\"rowsPassed\":%d,\"bytes\":%d,"
+                            + "\"seconds\":%.3f,\"rowsPerSecond\":%.1f,\"bytesPerSecond\":%.1f}",
+                    json(table.name), table.stage == null ? "null" : json(table.stage), read, read - passed, passed,
+                    table.bytes, table.getSeconds(), read / seconds, table.bytes < 0 ? -1.0 : table.bytes / seconds));
+        }
+        json.append("]}\n");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(json.toString());
+        }
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static String json(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
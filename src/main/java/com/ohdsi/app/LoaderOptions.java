@@ -0,0 +1,77 @@
+package com.ohdsi.app;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+// everything OWLLoader needs to know about a run - filled in from the command line in OWLLoader.main
+public class LoaderOptions implements Cloneable {
+    public static final List<String> DEFAULT_VOCABS = List.of("SNOMED", "HemOnc", "ICDO3", "Cancer Modifier", "NCIt", "LOINC", "ICD10CM", "RxNorm");
+
+    public String outdir;
+    public String outfile;
+    public String vocabFolder;
+    // vocabulary_ids of the concepts to load, each with a prefix (and a shard) of its own
+    public List<String> vocabs = DEFAULT_VOCABS;
+    // relationship_ids of CONCEPT_RELATIONSHIP to write - "Maps to" as skos:exactMatch, the others as object
+    // properties (see OMOPRelationships)
+    public List<String> relationships = List.of(OMOPRelationships.MAPS_TO);
+    // null keeps the in-memory OWLAPI build, otherwise axioms are streamed straight into the output file
+    public StreamingOntologyWriter.Format streamFormat;
+    // parallelism for parsing the large csv files - 1 reads everything on the main thread
+    public int threads = Runtime.getRuntime().availableProcessors();
+    // axioms per bulk commit to the ontology / writer
+    public int batchSize = 5000;
+    // one omop_<vocab> ontology per target vocabulary plus omop_metadata, instead of a single file
+    public boolean sharded = false;
+    // vocab keys (e.g. "snomed") of the shards to write when sharded, null for all of them
+    public Set<String> shards;
+    // combine the shards into outfile once they are written
+    public boolean merge = false;
+    // fingerprint store of an incremental build - when it exists only the delta against it is written, as a patch
+    // file or into the shards of the last sharded run, otherwise a full build creates it
+    public File incremental;
+    // read the tables from a binary snapshot next to vocabFolder, built on the first run, instead of the csv files
+    public boolean snapshot = false;
+    // levels of the concept hierarchy asserted as SubClassOf - 1 for the direct parents only, OMOPAncestry.FULL_CLOSURE
+    // for every ancestor
+    public int closureDepth = OMOPAncestry.DIRECT;
+    // keep concept names and synonyms in an off-heap StringArena rather than as Strings
+    public boolean offHeapNames = true;
+    // port to answer concept queries on (ConceptQueryServer) once the ontology is written, null to just exit
+    public Integer servePort;
+    // write outfile as a semsql SQLite database instead of an ontology file
+    public boolean semsql = false;
+    // read the tables from this OMOP CDM database instead of vocabFolder
+    public String jdbcUrl;
+    public String jdbcUser;
+    public String jdbcPassword;
+    // schema holding the vocabulary tables, null for the connection's default
+    public String jdbcSchema;
+    public int fetchSize = JdbcSource.DEFAULT_FETCH_SIZE;
+    // MB of heap the concept index's hash table may take before it spills to disk (see ConceptIndex.spillAfter), null
+    // for no limit - the rest of the loader's heap is not counted. A budget also means streamed output, rdfxml unless streamFormat says otherwise, as the in-memory
+    // ontology would not fit in any budget
+    public Integer memoryBudgetMB;
+    // where to write a LexicalIndex of the concept names and synonyms, null for none
+    public File lexicalIndex;
+    // seconds between progress lines, 0 for none
+    public int progressSeconds = 0;
+    // where to write the JSON run report (see LoaderMetrics), null for no report
+    public File metricsReport;
+
+    public LoaderOptions(String outdir, String outfile, String vocabFolder) {
+        this.outdir = outdir;
+        this.outfile = outfile;
+        this.vocabFolder = vocabFolder;
+    }
+
+    // the same options, for a build profile to change some of (see BuildProfiles)
+    public LoaderOptions copy() {
+        try {
+            return (LoaderOptions) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
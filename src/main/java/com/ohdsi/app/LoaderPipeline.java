@@ -0,0 +1,95 @@
+package com.ohdsi.app;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+    Runs the loader stages as soon as the stages they depend on are finished, e.g. ancestry, relationships and synonyms
+    only need the concept index so they can all run at the same time once concepts are loaded.
+
+        new LoaderPipeline()
+            .stage("concepts", concepts::load)
+            .stage("ancestry", () -> ancestry.load(concepts), "concepts")
+            .run();
+
+    stages have to be added after the stages they depend on. The stages that don't depend on a failed one still run to
+    the end, then the first failure (in time) is rethrown from run() with any later ones added to it as suppressed.
+ */
+public class LoaderPipeline {
+
+    @FunctionalInterface
+    public interface Stage {
+        void run() throws IOException;
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, String[]> dependencies = new HashMap<>();
+
+    public LoaderPipeline stage(String name, Stage stage, String... dependsOn) {
+        for (String dependency : dependsOn) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + name + " depends on unknown stage " + dependency);
+            }
+        }
+        stages.put(name, stage);
+        dependencies.put(name, dependsOn);
+        return this;
+    }
+
+    public void run() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, stages.size()), r -> {
+            Thread t = new Thread(r, "loader-stage");
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        // in the order they happened
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        try {
+            for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+                String name = entry.getKey();
+                Stage stage = entry.getValue();
+                CompletableFuture<?>[] deps = Arrays.stream(dependencies.get(name))
+                        .map(futures::get)
+                        .toArray(CompletableFuture<?>[]::new);
+                futures.put(name, CompletableFuture.allOf(deps).thenRunAsync(() -> {
+                    try {
+                        stage.run();
+                    } catch (IOException e) {
+                        failures.add(e);
+                        throw new UncheckedIOException(e);
+                    } catch (RuntimeException | Error e) {
+                        failures.add(e);
+                        throw e;
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (!failures.isEmpty()) {
+                cause = failures.get(0);
+                for (int i = 1; i < failures.size(); i++) {
+                    cause.addSuppressed(failures.get(i));
+                }
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Parallel scan of a (large) Athena file. Athena files are unquoted, so every newline is a record boundary: the file
+    is cut into ranges of roughly SPLIT_SIZE bytes that end on a newline, each range is memory mapped and parsed on
+    the ForkJoin pool with its own CSVRow. The RowHandler therefore sees rows from several threads at once and in no
+    particular order - anything it writes to has to be thread safe.
+ */
+public class MappedCSVScanner implements TableScan {
+
+    static final long SPLIT_SIZE = 32L << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final CSVHeader header;
+    private final long dataStart;
+    private final long splitSize;
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public MappedCSVScanner(File file, ForkJoinPool pool) throws IOException {
+        this(file, pool, SPLIT_SIZE);
+    }
+
+    public MappedCSVScanner(File file, ForkJoinPool pool, long splitSize) throws IOException {
+        this.file = file;
+        this.pool = pool;
+        this.splitSize = splitSize;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long headerEnd = nextNewline(0);
+            if (headerEnd <= 0) {
+                throw new IOException("Missing header line in " + file);
+            }
+            ByteBuffer headerBytes = ByteBuffer.allocate((int) headerEnd);
+            channel.read(headerBytes, 0);
+            String line = new String(headerBytes.array(), StandardCharsets.UTF_8);
+            if (line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            this.header = new CSVHeader(line);
+            this.dataStart = Math.min(headerEnd + 1, channel.size());
+            bytesRead.set(dataStart);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public CSVHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public void forEach(RowHandler handler) throws IOException {
+        forEach(-1, null, handler);
+    }
+
+    @Override
+    public void forEach(int col, FieldPredicate filter, RowHandler handler) throws IOException {
+        List<long[]> ranges = split();
+        try {
+            pool.invoke(new RangeTask(ranges, 0, ranges.size(), col, filter, handler));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public long bytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // [start, end) byte ranges covering the data, each ending just after a newline (or at end of file)
+    List<long[]> split() throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        long size = channel.size();
+        long start = dataStart;
+        while (start < size) {
+            long end = size;
+            if (size - start > splitSize) {
+                long newline = nextNewline(start + splitSize - 1);
+                end = newline < 0 ? size : newline + 1;
+            }
+            ranges.add(new long[]{start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    // position of the first '\n' at or after from, -1 if there is none
+    private long nextNewline(long from) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(1 << 16);
+        long pos = from;
+        while (true) {
+            probe.clear();
+            int n = channel.read(probe, pos);
+            if (n <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i;
+                }
+            }
+            pos += n;
+        }
+    }
+
+    // a fork/join task is Serializable, this one is only ever run
+    @SuppressWarnings("serial")
+    private class RangeTask extends RecursiveAction {
+        private final List<long[]> ranges;
+        private final int from;
+        private final int to;
+        private final int col;
+        private final FieldPredicate filter;
+        private final RowHandler handler;
+
+        RangeTask(List<long[]> ranges, int from, int to, int col, FieldPredicate filter, RowHandler handler) {
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+            this.col = col;
+            this.filter = filter;
+            this.handler = handler;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeTask(ranges, from, mid, col, filter, handler),
+                        new RangeTask(ranges, mid, to, col, filter, handler));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            long[] range = ranges.get(from);
+            ScanChunkEvent event = new ScanChunkEvent();
+            event.begin();
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+                RangeRow row = new RangeRow(header, mapped);
+                long rows = 0;
+                while (row.next(col, filter)) {
+                    handler.accept(row);
+                    rows++;
+                }
+                bytesRead.addAndGet(range[1] - range[0]);
+                if (event.shouldCommit()) {
+                    event.source = file.getName();
+                    event.offset = range[0];
+                    event.bytes = range[1] - range[0];
+                    event.rows = rows;
+                    event.commit();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + file + " at byte " + range[0], e);
+            }
+        }
+    }
+
+    // walks the lines of one mapped range
+    private static class RangeRow extends CSVRow {
+        private int pos = 0;
+        private final int limit;
+
+        RangeRow(CSVHeader header, ByteBuffer buffer) {
+            super(header, buffer);
+            this.limit = buffer.limit();
+        }
+
+        boolean next(int col, FieldPredicate filter) {
+            while (pos < limit) {
+                int lineStart = pos;
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                pos = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    if (filter == null) {
+                        split(lineStart, lineEnd);
+                        return true;
+                    }
+                    if (splitIf(lineStart, lineEnd, col, filter)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package com.ohdsi.app;
 
 public class MetadataConfig {
-    public String filename;
+    public String table;
     public String conceptIdColumn;
     public String labelColumn;
     public String idColumn;
 
-    public MetadataConfig(String filename, String conceptIdColumn, String labelColumn, String idColumn) {
-        this.filename = filename;
+    public MetadataConfig(String table, String conceptIdColumn, String labelColumn, String idColumn) {
+        this.table = table;
         this.conceptIdColumn = conceptIdColumn;
         this.labelColumn = labelColumn;
         this.idColumn = idColumn;
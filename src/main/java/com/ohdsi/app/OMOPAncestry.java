@@ -3,43 +3,92 @@ package com.ohdsi.app;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
 public class OMOPAncestry {
 
-    private final String vocab_folder;
-    private final OWLOntology ontology;
+    // closure depth that emits only the direct parents, as CONCEPT_ANCESTOR's level 1 rows
+    public static final int DIRECT = 1;
+    public static final int FULL_CLOSURE = Integer.MAX_VALUE;
+
+    private final VocabularySource source;
+    private final AxiomSink sink;
     private final OWLDataFactory dataFactory;
+    private ConceptDAG dag;
 
     // TODO: need to create a superclass here because I am repeating myself all over the place
-    public OMOPAncestry(OWLOntology ontology, OWLDataFactory dataFactory, String vocab_folder) {
-        this.ontology = ontology;
+    public OMOPAncestry(AxiomSink sink, OWLDataFactory dataFactory, VocabularySource source) {
+        this.sink = sink;
         this.dataFactory = dataFactory;
-        this.vocab_folder = vocab_folder;
+        this.source = source;
     }
 
     public void load(OMOPConcepts concepts) throws IOException {
+        load(concepts, DIRECT, null);
+    }
+
+    /*
+        only the direct edges are read - they make up the ConceptDAG, and everything further up is walked from it
+        rather than read from the (much larger) rest of the table or left to a reasoner. closureDepth > 1 adds a
+        SubClassOf axiom for every loaded ancestor up to that many levels up, and a semsql database gets the whole
+        closure as entailed edges.
+     */
+    public void load(OMOPConcepts concepts, int closureDepth, SemsqlWriter semsql) throws IOException {
         System.out.println("Creating OWL axioms for OMOP subsumption relationships");
-        int chunkSize = 1000;
         System.out.println("Reading CONCEPT_ANCESTOR.csv...");
-        File conceptAncestorFile = new File(vocab_folder, "CONCEPT_ANCESTOR.csv");
-        CSVChunkIterable iterable = new CSVChunkIterable(conceptAncestorFile, chunkSize);
-
-        for (List<Map<String, String>> chunk : iterable) {
-            if (!chunk.isEmpty()) {
-                for (Map<String, String> row : chunk) {
-                    // todo: assuming only implemented for immediate parent because others will be handled by the reasoner
-                   if (row.get("min_levels_of_separation").equals("1")) {
-                        OWLClass parent = concepts.getByID(row.get("ancestor_concept_id"));
-                        OWLClass child = concepts.getByID(row.get("descendant_concept_id"));
-                        if (parent != null && child != null) {
-                            ontology.add(dataFactory.getOWLSubClassOfAxiom(child, parent));
-                        }
-                    }
+        ConceptDAG.Builder builder = new ConceptDAG.Builder();
+        ConceptIndex index = concepts.getIndex();
+        // the ordinals are checked first and the classes only made for an axiom - under a memory budget every
+        // classAt builds a new OWLClass, and most rows are about concepts that aren't loaded
+        try (TableScan scan = source.open("CONCEPT_ANCESTOR")) {
+            int ancestorCol = scan.column("ancestor_concept_id");
+            int descendantCol = scan.column("descendant_concept_id");
+            int levelCol = scan.column("min_levels_of_separation");
+            scan.forEach(levelCol, FieldPredicate.isInt(1), row -> {
+                int parentId = row.getInt(ancestorCol);
+                int childId = row.getInt(descendantCol);
+                builder.add(childId, parentId);
+                int parent = index.ordinal(parentId);
+                int child = index.ordinal(childId);
+                if (parent >= 0 && child >= 0) {
+                    sink.add(dataFactory.getOWLSubClassOfAxiom(index.classAt(child), index.classAt(parent)));
                 }
+            });
+        }
+        this.dag = builder.build();
+        System.out.println("Concept hierarchy: " + dag.size() + " concepts, " + dag.edgeCount() + " direct edges");
+        if (closureDepth <= DIRECT && semsql == null) {
+            return;
+        }
+
+        int walkDepth = semsql != null ? FULL_CLOSURE : closureDepth;
+        for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+            OWLClass child = index.classAt(ordinal);
+            if (semsql != null) {
+                // semsql's closure is reflexive
+                semsql.entailedSubClassOf(child, child);
             }
+            dag.ancestors(index.idAt(ordinal), walkDepth, (id, depth) -> {
+                int parentOrdinal = index.ordinal(id);
+                // the direct parents are already in from the scan
+                boolean emits = depth > DIRECT && depth <= closureDepth;
+                if (parentOrdinal < 0 || (semsql == null && !emits)) {
+                    return;
+                }
+                OWLClass parent = index.classAt(parentOrdinal);
+                if (semsql != null) {
+                    semsql.entailedSubClassOf(child, parent);
+                }
+                if (emits) {
+                    sink.add(dataFactory.getOWLSubClassOfAxiom(child, parent));
+                }
+            });
         }
     }
+
+    // the hierarchy of the last load, null before it
+    public ConceptDAG getDAG() {
+        return dag;
+    }
 }
@@ -1,16 +1,15 @@
 package com.ohdsi.app;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
-import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
 
 public class OMOPConcepts {
 
-    private final Map<String, OWLClass> idToClass = new HashMap<>();
-    private final String vocab_folder;
-    private final OWLOntology ontology;
+    private final ConceptIndex idToClass;
+    private final VocabularySource source;
+    private final AxiomSink sink;
     private final OWLDataFactory dataFactory;
     private final Map<String, AnnotationConfig> annotation_lookup;
     private final Map<String, PropertyConfig> property_lookup;
@@ -19,114 +18,214 @@ public class OMOPConcepts {
     private final OWLAnnotationProperty maps_to;
     private Map<String, IRI> vocabBaseIRIs = new HashMap<>();
     private final List<String> target_vocabs;
-
-
-    public OMOPConcepts(OWLOntology ontology, OWLDataFactory dataFactory, String vocab_folder,
-                        PrefixDocumentFormat pm, OWLOntologyManager manager, OMOPMetadataClasses metadata,
-                        IRI omop_iri, Map<String, IRI> vocabBaseIRIs, List<String> target_vocabs) {
+    // namespace of each target vocab's codes, by position in target_vocabs - shared by all the code IRIs
+    private final String[] vocabBases;
+    // null unless the codes are wanted for lookups after the load
+    private ConceptCodes codes;
+    // where the labels are kept when they are off the heap, null for plain literals
+    private StringArena names;
+    // collects the labels for a lexical index, null when there is none
+    private LexicalIndexWriter lexicon;
+
+
+    public OMOPConcepts(AxiomSink sink, OWLDataFactory dataFactory, VocabularySource source,
+                        PrefixDocumentFormat pm, OMOPMetadataClasses metadata,
+                        IRI omop_iri, Map<String, IRI> vocabBaseIRIs, List<String> target_vocabs, ConceptIndex index) {
+        this.idToClass = index;
         this.omop_iri = omop_iri;
-        this.ontology = ontology;
+        this.sink = sink;
         this.dataFactory = dataFactory;
-        this.vocab_folder = vocab_folder;
+        this.source = source;
         this.target_vocabs = target_vocabs;
         this.annotation_lookup = new LinkedHashMap<>();
         this.property_lookup = new LinkedHashMap<>();
         this.vocabBaseIRIs = vocabBaseIRIs;
+        this.vocabBases = new String[target_vocabs.size()];
+        for (int i = 0; i < target_vocabs.size(); i++) {
+            vocabBases[i] = vocabBaseIRIs.get(target_vocabs.get(i).replace(" ", "_").toLowerCase()).toString();
+        }
 
         this.pm = pm;
         this.maps_to = dataFactory.getOWLAnnotationProperty("skos:exactMatch", this.pm);
+        sink.add(dataFactory.getOWLDeclarationAxiom(maps_to));
 
         Map<String, OWLClass> vv = metadata.getFamily("vocabulary");
         Map<String, OWLClass> cc = metadata.getFamily("concept_class");
         Map<String, OWLClass> dd = metadata.getFamily("domain");
 
-        property_lookup.put("domain", new PropertyConfig("in_domain", "domain_id", dataFactory, omop_iri, ontology, manager, dd));
-        property_lookup.put("concept_class", new PropertyConfig("in_class", "concept_class_id", dataFactory, omop_iri, ontology, manager, cc));
-        property_lookup.put("vocabulary", new PropertyConfig("in_vocabulary", "vocabulary_id", dataFactory, omop_iri, ontology, manager, vv));
+        property_lookup.put("domain", new PropertyConfig("in_domain", "domain_id", dataFactory, omop_iri, sink, dd));
+        property_lookup.put("concept_class", new PropertyConfig("in_class", "concept_class_id", dataFactory, omop_iri, sink, cc));
+        property_lookup.put("vocabulary", new PropertyConfig("in_vocabulary", "vocabulary_id", dataFactory, omop_iri, sink, vv));
+
+        annotation_lookup.put("invalid", new AnnotationConfig("invalid", "invalid", dataFactory, sink, omop_iri));
+        annotation_lookup.put("standard", new AnnotationConfig("standard_concept", "standard_concept", dataFactory, sink, omop_iri));
+    }
 
-        annotation_lookup.put("invalid", new AnnotationConfig("invalid", "invalid", dataFactory, ontology, omop_iri, manager));
-        annotation_lookup.put("standard", new AnnotationConfig("standard_concept", "standard_concept", dataFactory, ontology, omop_iri, manager));
+    // vocab is the position in target_vocabs - package-private for the benchmarks module
+    IRI safeVocabIRI(int vocab, String code) {
+        return IRI.create(vocabBases[vocab], safeCode(code));
     }
 
-    private IRI safeVocabIRI(String vocabPrefix, String code) {
-        // Normalize vocab prefix
-        String vocab = vocabPrefix.replace(" ", "_").toLowerCase();
-        IRI vocab_iri = vocabBaseIRIs.get(vocab);
-        // Replace problematic characters in code
-        String safeCode = code
-                .replaceAll("[^A-Za-z0-9_.-]", "_")  // replace invalid URI chars with "_"
-                .replaceAll("_+", "_")                // collapse multiple underscores
-                .replaceAll("^_|_$", "");             // trim leading/trailing underscores
-
-        // Build the full IRI using fragment form
-        String iriString = vocab_iri + safeCode;
-        return IRI.create(iriString);
+    // same result as the original
+    //     code.replaceAll("[^A-Za-z0-9_.-]", "_")   replace invalid URI chars with "_"
+    //         .replaceAll("_+", "_")                collapse multiple underscores
+    //         .replaceAll("^_|_$", "")              trim leading/trailing underscores
+    // in one pass, and the code itself is returned when there is nothing to replace
+    static String safeCode(String code) {
+        int n = code.length();
+        boolean safe = n == 0 || code.charAt(0) != '_' && code.charAt(n - 1) != '_';
+        for (int i = 0; i < n && safe; i++) {
+            char c = code.charAt(i);
+            safe = isSafe(c) && (c != '_' || code.charAt(i - 1) != '_');
+        }
+        if (safe) {
+            return code;
+        }
+        StringBuilder sb = new StringBuilder(n);
+        boolean underscore = false;
+        for (int i = 0; i < n; ) {
+            int cp = code.codePointAt(i);
+            i += Character.charCount(cp);
+            if (cp == '_' || cp > 0x7F || !isSafe((char) cp)) {
+                underscore = true;
+            } else {
+                if (underscore && sb.length() > 0) {
+                    sb.append('_');
+                }
+                underscore = false;
+                sb.append((char) cp);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isSafe(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '.' || c == '-';
     }
 
     public void load() throws IOException {
         System.out.println("Creating OWL classes for OMOP concepts");
 
-        int chunkSize = 5000;
         System.out.println("Reading CONCEPT.csv...");
-        File conceptFile = new File(vocab_folder, "CONCEPT.csv");
-        CSVChunkIterable iterable = new CSVChunkIterable(conceptFile, chunkSize);
-
-        for (List<Map<String, String>> chunk : iterable) {
-            if (!chunk.isEmpty()) {
-                for (Map<String, String> row : chunk) {
-                    if (target_vocabs.contains(row.get("vocabulary_id"))) {
-                        OWLClass concept = dataFactory.getOWLClass(
-                                omop_iri + row.get("concept_id") //row.get("vocabulary_id").replace(" ", "_").toLowerCase() + "_" +
-                        );
-                        String v = row.get("vocabulary_id").replace(" ", "_").toLowerCase();
-                        String c = row.get("concept_code");
-                        IRI code = safeVocabIRI(v, c);
-                        OWLAnnotation mapping = dataFactory.getOWLAnnotation(
-                                maps_to,
-                                code
-                                //IRI.create(code.getIRI().toString())
-                                //dataFactory.getOWLLiteral(standard.getIRI().toString())
+        ByteStringMap<Integer> vocabs = new ByteStringMap<>(target_vocabs.size());
+        for (int i = 0; i < target_vocabs.size(); i++) {
+            vocabs.put(target_vocabs.get(i), i);
+        }
+
+        try (TableScan scan = source.open("CONCEPT")) {
+            int idCol = scan.column("concept_id");
+            int nameCol = scan.column("concept_name");
+            int vocabCol = scan.column("vocabulary_id");
+            int codeCol = scan.column("concept_code");
+            // column indexes for the configured annotations / properties, -1 where the file has no such column
+            List<AnnotationConfig> annotators = new ArrayList<>(annotation_lookup.values());
+            int[] annotationCols = new int[annotators.size()];
+            for (int i = 0; i < annotators.size(); i++) {
+                String source = annotators.get(i).annotation_source;
+                annotationCols[i] = scan.getHeader().hasColumn(source) ? scan.column(source) : -1;
+            }
+            List<PropertyConfig> properties = new ArrayList<>(property_lookup.values());
+            int[] propertyCols = new int[properties.size()];
+            for (int i = 0; i < properties.size(); i++) {
+                String source = properties.get(i).property_source;
+                propertyCols[i] = scan.getHeader().hasColumn(source) ? scan.column(source) : -1;
+            }
+
+            // only rows of the target vocabularies get past the scan. They arrive on several threads when the scan is
+            // parallel - the axioms of one concept are handed over together so they stay next to each other in a
+            // streamed output
+            scan.forEach(vocabCol, FieldPredicate.anyOf(target_vocabs), row -> {
+                int vocabIndex = row.lookup(vocabCol, vocabs);
+                List<OWLAxiom> axioms = new ArrayList<>(8);
+                int conceptId = row.getInt(idCol);
+                OWLClass concept = dataFactory.getOWLClass(
+                        omop_iri + Integer.toString(conceptId) //row.get("vocabulary_id").replace(" ", "_").toLowerCase() + "_" +
+                );
+                String conceptCode = row.getString(codeCol);
+                IRI code = safeVocabIRI(vocabIndex, conceptCode);
+                OWLAnnotation mapping = dataFactory.getOWLAnnotation(
+                        maps_to,
+                        code
+                        //IRI.create(code.getIRI().toString())
+                        //dataFactory.getOWLLiteral(standard.getIRI().toString())
+                );
+                // the OWLAPI savers add missing declarations themselves, the streaming writers can't
+                axioms.add(dataFactory.getOWLDeclarationAxiom(concept));
+                OWLAxiom map_ax = dataFactory.getOWLAnnotationAssertionAxiom(concept.getIRI(), mapping);
+                axioms.add(map_ax);
+
+                for (int i = 0; i < annotators.size(); i++) {
+                    int col = annotationCols[i];
+                    if (col >= 0 && !row.isBlank(col)) {
+                        OWLAnnotationAssertionAxiom annotation_axiom = dataFactory.getOWLAnnotationAssertionAxiom(
+                                annotators.get(i).annotation,
+                                concept.getIRI(),
+                                dataFactory.getOWLLiteral(row.getString(col))
                         );
-                        OWLAxiom map_ax = dataFactory.getOWLAnnotationAssertionAxiom(concept.getIRI(), mapping);
-                        ontology.add(map_ax);
-
-                        for (Map.Entry<String, AnnotationConfig> entry : annotation_lookup.entrySet()) {
-                            AnnotationConfig annotator = entry.getValue();
-                            String label = row.get(annotator.annotation_source);
-                            if (label != null && !label.trim().isEmpty()) {
-                                OWLAnnotationAssertionAxiom annotation_axiom = dataFactory.getOWLAnnotationAssertionAxiom(
-                                        annotator.annotation,
-                                        concept.getIRI(),
-                                        dataFactory.getOWLLiteral(label)
-                                );
-                                ontology.addAxiom(annotation_axiom);
-                            }
-                        }
-                        for (Map.Entry<String, PropertyConfig> entry : property_lookup.entrySet()) {
-                            PropertyConfig property = entry.getValue();
-                            String label = row.get(property.property_source);
-                            if (label != null && !label.trim().isEmpty()) {
-                                OWLClass prop = property.property_lookup.get(label);
-                                OWLClassExpression expression = dataFactory.getOWLObjectSomeValuesFrom(property.property, prop);
-                                OWLAxiom subclass_axiom = dataFactory.getOWLSubClassOfAxiom(concept, expression);
-                                ontology.addAxiom(subclass_axiom);
-                            }
+                        axioms.add(annotation_axiom);
+                    }
+                }
+                for (int i = 0; i < properties.size(); i++) {
+                    int col = propertyCols[i];
+                    if (col >= 0 && !row.isBlank(col)) {
+                        PropertyConfig property = properties.get(i);
+                        OWLClassExpression expression = row.lookup(col, property.restrictions);
+                        if (expression == null) {
+                            property.missing(row.getString(col));
+                        } else {
+                            OWLAxiom subclass_axiom = dataFactory.getOWLSubClassOfAxiom(concept, expression);
+                            axioms.add(subclass_axiom);
                         }
-                        OWLAnnotation label = dataFactory.getOWLAnnotation(
-                                dataFactory.getRDFSLabel(),
-                                dataFactory.getOWLLiteral(row.get("concept_name"), "en")
-                        );
-                        OWLAxiom lab = dataFactory.getOWLAnnotationAssertionAxiom(concept.getIRI(), label);
-                        ontology.add(lab);
-                        idToClass.put(row.get("concept_id"), concept);
                     }
                 }
-            }
+                OWLLiteral name = names != null
+                        ? new ArenaLiteral(names, names.intern(row.buffer(), row.start(nameCol), row.end(nameCol)), "en")
+                        : dataFactory.getOWLLiteral(row.getString(nameCol), "en");
+                OWLAnnotation label = dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(), name);
+                OWLAxiom lab = dataFactory.getOWLAnnotationAssertionAxiom(concept.getIRI(), label);
+                axioms.add(lab);
+                if (lexicon != null) {
+                    lexicon.add(conceptId, row.getString(nameCol));
+                }
+                synchronized (idToClass) {
+                    int ordinal = idToClass.put(conceptId, concept, vocabIndex);
+                    if (codes != null) {
+                        codes.put(ordinal, vocabIndex, conceptId, conceptCode);
+                    }
+                }
+                sink.addAll(axioms);
+            });
         }
         System.out.println("Number of items in the map: " + idToClass.size());
+        if (idToClass.getSpills() > 0) {
+            System.out.println("Concept index spilled to disk " + idToClass.getSpills() + " times");
+        }
+        property_lookup.values().forEach(PropertyConfig::reportMissing);
+    }
+
+    public OWLClass getByID(int id) {
+        return idToClass.getByID(id);
+    }
+
+    public ConceptIndex getIndex() {
+        return idToClass;
+    }
+
+    // keep the concept codes of the next load for lookups, see ConceptQueries
+    public void setCodes(ConceptCodes codes) {
+        this.codes = codes;
+    }
+
+    public ConceptCodes getCodes() {
+        return codes;
+    }
+
+    // keep the labels in this arena instead of as Strings
+    public void setNames(StringArena names) {
+        this.names = names;
     }
 
-    public OWLClass getByID(String id) {
-        return idToClass.get(id);
+    public void setLexicon(LexicalIndexWriter lexicon) {
+        this.lexicon = lexicon;
     }
 }
@@ -2,26 +2,26 @@ package com.ohdsi.app;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 
 import org.semanticweb.owlapi.model.*;
-import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OMOPMetadataClasses {
     Map<String, Map<String, OWLClass>> owlClassLookup = new HashMap<>();
-    private final String vocab_folder;
-    private final OWLOntology ontology;
+    private final VocabularySource source;
+    private final AxiomSink sink;
     private final OWLDataFactory dataFactory;
     private final Map<String, MetadataConfig> refLookup;
     private final IRI omop_iri;
     // private final OWLOntologyManager manager;
 
-    public OMOPMetadataClasses(OWLOntology ontology,
+    public OMOPMetadataClasses(AxiomSink sink,
                                OWLDataFactory dataFactory,
-                               String vocab_folder,
+                               VocabularySource source,
                                IRI omop_iri){
-        this.ontology = ontology;
+        this.sink = sink;
         this.dataFactory = dataFactory;
-        this.vocab_folder = vocab_folder;
+        this.source = source;
         this.refLookup = new LinkedHashMap<>();
         this.omop_iri = omop_iri;
 
@@ -33,10 +33,10 @@ public class OMOPMetadataClasses {
 //        manager.applyChange(new AddImport(ontology, imports_declaration));
 //                OWLAnnotationProperty prefLabel = dataFactory.getOWLAnnotationProperty("skos:prefLabel", pm);
 
-        refLookup.put("domain", new MetadataConfig("DOMAIN.csv", "domain_concept_id", "domain_name", "domain_id"));
-        refLookup.put("concept_class", new MetadataConfig("CONCEPT_CLASS.csv", "concept_class_concept_id", "concept_class_name", "concept_class_id"));
-        refLookup.put("relationship", new MetadataConfig("RELATIONSHIP.csv", "relationship_concept_id", "relationship_name", "relationship_id"));
-        refLookup.put("vocabulary", new MetadataConfig("VOCABULARY.csv", "vocabulary_concept_id", "vocabulary_name", "vocabulary_id"));
+        refLookup.put("domain", new MetadataConfig("DOMAIN", "domain_concept_id", "domain_name", "domain_id"));
+        refLookup.put("concept_class", new MetadataConfig("CONCEPT_CLASS", "concept_class_concept_id", "concept_class_name", "concept_class_id"));
+        refLookup.put("relationship", new MetadataConfig("RELATIONSHIP", "relationship_concept_id", "relationship_name", "relationship_id"));
+        refLookup.put("vocabulary", new MetadataConfig("VOCABULARY", "vocabulary_concept_id", "vocabulary_name", "vocabulary_id"));
     }
 
     public void load() throws IOException {
@@ -44,30 +44,29 @@ public class OMOPMetadataClasses {
         for (Map.Entry<String, MetadataConfig> entry : refLookup.entrySet()) {
             String className = entry.getKey();
             MetadataConfig config = entry.getValue();
-            Map<String, OWLClass> inner_map = new HashMap<>();
+            Map<String, OWLClass> inner_map = new ConcurrentHashMap<>();
 
-            System.out.println("Reading " + config.filename + "...");
-            File targetFile = new File(vocab_folder, config.filename);
-            CSVChunkIterable iterable = new CSVChunkIterable(targetFile, 1000);
+            System.out.println("Reading " + config.table + ".csv...");
 
             OWLClass c = dataFactory.getOWLClass(omop_iri + className);
             OWLDeclarationAxiom da = dataFactory.getOWLDeclarationAxiom(c);
-            ontology.add(da);
+            sink.add(da);
 
-            for (List<Map<String, String>> chunk : iterable) {
-                if (!chunk.isEmpty()) {
-                    for (Map<String, String> row : chunk) {
-                        OWLClass v = dataFactory.getOWLClass(omop_iri +  row.get(config.conceptIdColumn));
-                        ontology.add(dataFactory.getOWLSubClassOfAxiom(v, c));
-                        OWLAnnotation lab = dataFactory.getOWLAnnotation(
-                                dataFactory.getRDFSLabel(),
-                                dataFactory.getOWLLiteral(row.get(config.idColumn), "en")
-                        );
-                        OWLAxiom ax1 = dataFactory.getOWLAnnotationAssertionAxiom(v.getIRI(), lab);
-                        ontology.add(ax1);
-                        inner_map.put(row.get(config.idColumn), v);
-                    }
-                }
+            try (TableScan scan = source.open(config.table)) {
+                int conceptIdCol = scan.column(config.conceptIdColumn);
+                int idCol = scan.column(config.idColumn);
+                scan.forEach(row -> {
+                    OWLClass v = dataFactory.getOWLClass(omop_iri +  row.getString(conceptIdCol));
+                    sink.add(dataFactory.getOWLDeclarationAxiom(v));
+                    sink.add(dataFactory.getOWLSubClassOfAxiom(v, c));
+                    OWLAnnotation lab = dataFactory.getOWLAnnotation(
+                            dataFactory.getRDFSLabel(),
+                            dataFactory.getOWLLiteral(row.getString(idCol), "en")
+                    );
+                    OWLAxiom ax1 = dataFactory.getOWLAnnotationAssertionAxiom(v.getIRI(), lab);
+                    sink.add(ax1);
+                    inner_map.put(row.getString(idCol), v);
+                });
             }
             owlClassLookup.put(className, inner_map);
         }
@@ -3,53 +3,126 @@ package com.ohdsi.app;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.semanticweb.owlapi.model.*;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+/*
+    The CONCEPT_RELATIONSHIP rows of the configured relationship_ids between loaded concepts. "Maps to" stays the
+    skos:exactMatch annotation it has always been (and the mappings ConceptQueries answers from), any other
+    relationship becomes an object property named after its id - "Has finding site" is has_finding_site - asserted as
+    SubClassOf(concept_1 ObjectSomeValuesFrom(has_finding_site concept_2)), the same shape as in_class and in_domain.
+
+    All of them come out of one scan. The relationship_ids are numbered once, up front, and each row's id is looked
+    up straight from its bytes (ByteStringMap) to the number that indexes the property to write, so another
+    relationship costs a table slot rather than another string comparison per row.
+ */
 public class OMOPRelationships {
 
-    private final String vocab_folder;
-    private final OWLOntology ontology;
+    public static final String MAPS_TO = "Maps to";
+
+    private final VocabularySource source;
+    private final AxiomSink sink;
     private final OWLDataFactory dataFactory;
     private final OWLAnnotationProperty maps_to;
+    private final List<String> relationshipIds;
+    // relationship_id -> its position in relationshipIds
+    private final ByteStringMap<Integer> codes;
+    // by code, null for Maps to
+    private final OWLObjectProperty[] properties;
+    // code of Maps to, -1 when it isn't one of the relationships
+    private final int mapsTo;
+    // non-standard concept -> the standard concepts it maps to, as the "parents" of a ConceptDAG
+    private ConceptDAG mappings;
 
 
     // TODO: need to create a superclass here because I am repeating myself all over the place
-    public OMOPRelationships(OWLOntology ontology, OWLDataFactory dataFactory, String vocab_folder, PrefixDocumentFormat pm) {
-        this.ontology = ontology;
+    public OMOPRelationships(AxiomSink sink, OWLDataFactory dataFactory, VocabularySource source, PrefixDocumentFormat pm) {
+        this(sink, dataFactory, source, pm, List.of(MAPS_TO), OWLLoader.omop_iri);
+    }
+
+    public OMOPRelationships(AxiomSink sink, OWLDataFactory dataFactory, VocabularySource source, PrefixDocumentFormat pm,
+                             List<String> relationshipIds, IRI omop_iri) {
+        this.sink = sink;
         this.dataFactory = dataFactory;
-        this.vocab_folder = vocab_folder;
+        this.source = source;
         this.maps_to = dataFactory.getOWLAnnotationProperty("skos:exactMatch", pm);
+        this.relationshipIds = List.copyOf(new LinkedHashSet<>(relationshipIds));
+        this.codes = new ByteStringMap<>(this.relationshipIds.size());
+        this.properties = new OWLObjectProperty[this.relationshipIds.size()];
+        int mapsTo = -1;
+        for (int code = 0; code < this.relationshipIds.size(); code++) {
+            String id = this.relationshipIds.get(code);
+            codes.put(id, code);
+            if (id.equals(MAPS_TO)) {
+                mapsTo = code;
+                continue;
+            }
+            properties[code] = dataFactory.getOWLObjectProperty(omop_iri + propertyName(id));
+            sink.add(dataFactory.getOWLDeclarationAxiom(properties[code]));
+            sink.add(dataFactory.getOWLAnnotationAssertionAxiom(properties[code].getIRI(),
+                    dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(), dataFactory.getOWLLiteral(id, "en"))));
+        }
+        this.mapsTo = mapsTo;
+    }
+
+    // "Has finding site" -> has_finding_site, "SNOMED - RxNorm eq" -> snomed_rxnorm_eq
+    static String propertyName(String relationshipId) {
+        return relationshipId.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
     }
 
     public void load(OMOPConcepts concepts, OMOPMetadataClasses metadata) throws IOException {
-        System.out.println("Creating OWL axioms for OMOP maps to relationships");
+        System.out.println("Creating OWL axioms for OMOP relationships: " + String.join(", ", relationshipIds));
         Map<String, OWLClass> rr = metadata.getFamily("relationship");
-        // todo: only implemented non-standard to standard relationship for now
+        for (String id : relationshipIds) {
+            if (rr != null && !rr.containsKey(id)) {
+                System.out.println("Relationship '" + id + "' is not in RELATIONSHIP.csv - no rows will match it");
+            }
+        }
 
-        int chunkSize = 1000;
         System.out.println("Reading CONCEPT_RELATIONSHIP.csv...");
-        File conceptRelationshipFile = new File(vocab_folder, "CONCEPT_RELATIONSHIP.csv");
-        CSVChunkIterable iterable = new CSVChunkIterable(conceptRelationshipFile, chunkSize);
-        for (List<Map<String, String>> chunk : iterable) {
-            if (!chunk.isEmpty()) {
-                for (Map<String, String> row : chunk) {
-                   if (row.get("relationship_id").equals("Maps to")) {
-                        OWLClass non_standard = concepts.getByID(row.get("concept_id_1"));
-                        OWLClass standard = concepts.getByID(row.get("concept_id_2"));
-                        if (non_standard != null && standard != null) {
-                            OWLAnnotation mapping = dataFactory.getOWLAnnotation(
-                                    maps_to,
-                                    IRI.create(standard.getIRI().toString())
-                            );
-                            OWLAxiom map_ax = dataFactory.getOWLAnnotationAssertionAxiom(non_standard.getIRI(), mapping);
-                            ontology.add(map_ax);
-                        }
-                    }
+        ConceptDAG.Builder builder = new ConceptDAG.Builder();
+        ConceptIndex index = concepts.getIndex();
+        try (TableScan scan = source.open("CONCEPT_RELATIONSHIP")) {
+            int firstCol = scan.column("concept_id_1");
+            int secondCol = scan.column("concept_id_2");
+            int relationshipCol = scan.column("relationship_id");
+            scan.forEach(relationshipCol, FieldPredicate.anyOf(relationshipIds), row -> {
+                Integer code = row.lookup(relationshipCol, codes);
+                if (code == null) {
+                    return;
                 }
-            }
+                int first = row.getInt(firstCol);
+                int second = row.getInt(secondCol);
+                // both ends are looked up before any class is made, see OMOPAncestry
+                int conceptOrdinal = index.ordinal(first);
+                int relatedOrdinal = index.ordinal(second);
+                if (conceptOrdinal < 0 || relatedOrdinal < 0) {
+                    return;
+                }
+                OWLClass concept = index.classAt(conceptOrdinal);
+                OWLClass related = index.classAt(relatedOrdinal);
+                if (code == mapsTo) {
+                    builder.add(first, second);
+                    OWLAnnotation mapping = dataFactory.getOWLAnnotation(
+                            maps_to,
+                            IRI.create(related.getIRI().toString())
+                    );
+                    OWLAxiom map_ax = dataFactory.getOWLAnnotationAssertionAxiom(concept.getIRI(), mapping);
+                    sink.add(map_ax);
+                } else {
+                    sink.add(dataFactory.getOWLSubClassOfAxiom(concept,
+                            dataFactory.getOWLObjectSomeValuesFrom(properties[code], related)));
+                }
+            });
         }
+        this.mappings = builder.build();
+    }
+
+    // the Maps to relationships between loaded concepts of the last load, null before it
+    public ConceptDAG getMappings() {
+        return mappings;
     }
 }
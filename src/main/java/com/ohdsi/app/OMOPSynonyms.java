@@ -3,47 +3,62 @@ package com.ohdsi.app;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
 public class OMOPSynonyms {
-    private final String vocab_folder;
-    private final OWLOntology ontology;
+    private final VocabularySource source;
+    private final AxiomSink sink;
     private final OWLDataFactory dataFactory;
     private final OWLAnnotationProperty synonym_of;
+    private static final int ENGLISH = 4180186;
+    // where the synonyms are kept when they are off the heap, null for plain literals
+    private StringArena names;
+    // collects the synonyms for a lexical index, null when there is none
+    private LexicalIndexWriter lexicon;
 
-    public OMOPSynonyms(OWLOntology ontology, OWLDataFactory dataFactory, String vocab_folder, PrefixDocumentFormat pm) {
-        this.ontology = ontology;
+    public OMOPSynonyms(AxiomSink sink, OWLDataFactory dataFactory, VocabularySource source, PrefixDocumentFormat pm) {
+        this.sink = sink;
         this.dataFactory = dataFactory;
-        this.vocab_folder = vocab_folder;
+        this.source = source;
         this.synonym_of = dataFactory.getOWLAnnotationProperty("skos:altLabel", pm);
+        sink.add(dataFactory.getOWLDeclarationAxiom(synonym_of));
+    }
+
+    // keep the synonyms in this arena instead of as Strings
+    public void setNames(StringArena names) {
+        this.names = names;
+    }
+
+    public void setLexicon(LexicalIndexWriter lexicon) {
+        this.lexicon = lexicon;
     }
 
     public void load(OMOPConcepts concepts) throws IOException {
         System.out.println("Creating alternative labels for OMOP synonyms");
-        int chunkSize = 1000;
         System.out.println("Reading CONCEPT_SYNONYM.csv...");
-        File conceptSynonymFile = new File(vocab_folder, "CONCEPT_SYNONYM.csv");
-        CSVChunkIterable iterable = new CSVChunkIterable(conceptSynonymFile, chunkSize);
-
-        for (List<Map<String, String>> chunk : iterable) {
-            if (!chunk.isEmpty()) {
-                for (Map<String, String> row : chunk) {
-                    // just doing English language for now
-                    if (row.get("language_concept_id").equals("4180186")) {
-                        OWLClass c = concepts.getByID(row.get("concept_id"));
-                        if (c != null) {
-                            OWLAnnotation synonym = dataFactory.getOWLAnnotation(
-                                    synonym_of,
-                                    dataFactory.getOWLLiteral(row.get("concept_synonym_name"))
-                            );
-                            OWLAxiom syn_ax = dataFactory.getOWLAnnotationAssertionAxiom(c.getIRI(), synonym);
-                            ontology.add(syn_ax);
-                        }
+        try (TableScan scan = source.open("CONCEPT_SYNONYM")) {
+            int idCol = scan.column("concept_id");
+            int nameCol = scan.column("concept_synonym_name");
+            int languageCol = scan.column("language_concept_id");
+            ConceptIndex index = concepts.getIndex();
+            // just doing English language for now
+            scan.forEach(languageCol, FieldPredicate.isInt(ENGLISH), row -> {
+                int conceptId = row.getInt(idCol);
+                int ordinal = index.ordinal(conceptId);
+                if (ordinal >= 0) {
+                    OWLClass c = index.classAt(ordinal);
+                    if (lexicon != null) {
+                        lexicon.add(conceptId, row.getString(nameCol));
                     }
+                    OWLLiteral name = names != null
+                            ? new ArenaLiteral(names, names.intern(row.buffer(), row.start(nameCol), row.end(nameCol)), null)
+                            : dataFactory.getOWLLiteral(row.getString(nameCol));
+                    OWLAnnotation synonym = dataFactory.getOWLAnnotation(synonym_of, name);
+                    OWLAxiom syn_ax = dataFactory.getOWLAnnotationAssertionAxiom(c.getIRI(), synonym);
+                    sink.add(syn_ax);
                 }
-            }
+            });
         }
     }
 }
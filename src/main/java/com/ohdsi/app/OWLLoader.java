@@ -9,12 +9,10 @@ import org.semanticweb.owlapi.util.SimpleIRIMapper;
 import org.semanticweb.owlapi.util.AutoIRIMapper;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.apache.commons.cli.*;
-import java.io.File;
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLOntology;
@@ -45,6 +43,36 @@ import org.semanticweb.owlapi.model.OWLOntology;
 
     for later context - to run:
         - mvn compile exec:java -Dexec.mainClass="com.ohdsi.app.OWLLoader" -Dexec.args="-d [outdir] -f [outfile] -v [folder with athena files] -r"
+        - add "-s rdfxml|turtle|ntriples" to stream the axioms straight to [outfile] instead of holding the ontology in memory
+        - add "-i [store]" for incremental builds: the first run writes the fingerprint store, later runs only output the
+          changes ([outfile].patch plus [outfile].retract, or patched in place with --sharded)
+        - add "--closure [depth|all]" to assert every ancestor up to that many levels up as a SubClassOf, so that
+          "is descendant of" needs no reasoner
+        - add "--serve [port]" to keep running afterwards, answering ancestor / descendant / code / maps to queries
+          over http on localhost (see ConceptQueryServer)
+        - add "--semsql" to write [outfile] as a semsql SQLite database (statements, prefix and entailed_edge tables,
+          with semsql's statement, restriction and edge views over them) directly, skipping the semsql conversion
+          below - needs the sqlite driver on the classpath, e.g. -Psqlite
+        - end [outfile] in .gz or .zst to compress the output, shards included, on several threads
+        - add "--memory-budget [MB]" for the full vocabulary on a small heap (e.g. -Xmx4G): the concept index spills to
+          disk once its hash table outgrows the budget, and the output is streamed. The budget only covers that table:
+          the per-concept arrays of the index, the concept names and the ancestry graph still need heap of their own
+        - add "--lexical-index" to also write [outfile].lexicon, the names and synonyms of every concept normalized
+          and front coded for exact, prefix and word lookups (see LexicalIndex)
+        - a progress line is printed every 30s (--progress [seconds], 0 for none) and a JSON report of the rows, axioms,
+          time, heap and gc of each stage is left in [outfile].metrics.json (--metrics [file]), see LoaderMetrics
+        - "-v" also takes the Athena zip itself, read without extracting it, and the csv files may be kept as .csv.gz or
+          .csv.zst - either way each file is inflated on a thread of its own while it is parsed
+        - "--vocabs SNOMED,LOINC" to load other vocabularies than the default eight, and "--profiles [file]" to write
+          several outputs, each with its own vocabs and options, for the cost of reading the vocabulary once (see
+          BuildProfiles)
+        - "--relationships [ids]" writes other CONCEPT_RELATIONSHIP rows than Maps to, e.g. Has finding site, as object
+          property restrictions, all from the one scan (see OMOPRelationships)
+        - add "--snapshot" to read the tables from a binary snapshot in [folder with athena files].snapshot after the first run
+        - replace "-v [folder]" with "--jdbc [url] --jdbc-user [user] --jdbc-schema [vocab schema]" to read the tables from
+          the CDM database (password in --jdbc-password or the url), with the driver on the classpath, e.g. -Ppostgres
+    benchmarks (JMH, see benchmarks/pom.xml):
+        - mvn install -DskipTests && mvn -f benchmarks/pom.xml package && java -jar benchmarks/target/benchmarks.jar
     semsql to convert:
         - cp [outfile] [semantic-sql/data]
         - cd semantic-sql
@@ -53,6 +81,9 @@ import org.semanticweb.owlapi.model.OWLOntology;
 */
 public class OWLLoader {
     public static final IRI omop_iri = IRI.create("https://athena.ohdsi.org/search-terms/terms/");
+    // every table the loaders read
+    public static final List<String> TABLES = List.of("VOCABULARY", "DOMAIN", "CONCEPT_CLASS", "RELATIONSHIP",
+            "CONCEPT", "CONCEPT_ANCESTOR", "CONCEPT_RELATIONSHIP", "CONCEPT_SYNONYM");
     private final OWLOntologyManager manager;
     private final OMOPMetadataClasses metadata;
     private final OMOPConcepts concepts;
@@ -63,15 +94,54 @@ public class OWLLoader {
     private final OWLOntology o;
     private final PrefixDocumentFormat format;
     private final Map<String, IRI> vocabBaseIRIs = new HashMap<>();
+    private final AxiomSink sink;
+    // null when patching shards, which are only opened once the delta is known
+    private final AxiomSink output;
+    private final DeltaSink deltaSink;
+    // the output when writing a semsql database, which also takes the CONCEPT_ANCESTOR closure
+    private final SemsqlWriter semsql;
+    // concept names and synonyms, unless they are kept as Strings
+    private final StringArena names;
+    // names and synonyms for the lexical index, null unless one was asked for
+    private final LexicalIndexWriter lexicon;
+    private final FingerprintStore previous;
+    private final File outdir;
+    private final List<String> target_vocabs;
+    private final ConceptIndex index = new ConceptIndex(1 << 20);
+    private final LoaderOptions options;
+    private final File outfile;
+    private final Compression compression;
+    // the compression threads of all the files written at once, the output or its shards - null when uncompressed
+    private final CompressionPool compressionPool;
+    // files written by a sharded run, metadata first
+    private final List<File> shardFiles = new ArrayList<>();
+    private final Map<String, BatchingSink> stageSinks = new HashMap<>();
+    private final int batchSize;
+    private final LoaderMetrics metrics = new LoaderMetrics();
 
     public OWLLoader(String outdir_path, String outfile_name, String vocab_folder) throws OWLOntologyCreationException {
+        this(new LoaderOptions(outdir_path, outfile_name, vocab_folder));
+    }
+
+    public OWLLoader(LoaderOptions options) throws OWLOntologyCreationException {
+        this(options, null);
+    }
+
+    // opens the output (truncating an existing file or semsql database) and loads the metadata tables, so only build
+    // a loader to write with createOHDSIOntology. source null for the one the options name, see openSource
+    public OWLLoader(LoaderOptions options, VocabularySource source) throws OWLOntologyCreationException {
         this.manager = OWLManager.createOWLOntologyManager();
         OWLDataFactory dataFactory = this.manager.getOWLDataFactory();
-        File outdir = new File(outdir_path);
+        this.batchSize = options.batchSize;
+        this.options = options;
+        this.outdir = new File(options.outdir);
         if (!outdir.exists()) {
             outdir.mkdirs(); // create folder if it doesn't exist
         }
-        File outfile = new File(outdir, outfile_name);
+        this.outfile = new File(outdir, options.outfile);
+        // shards follow the output file, so omop.owl.gz gives omop_snomed.owl.gz and so on
+        this.compression = Compression.of(options.outfile);
+        this.compressionPool = compression == Compression.NONE ? null : new CompressionPool(options.threads);
         this.documentIRI = IRI.create(outfile);
         SimpleIRIMapper mapper = new SimpleIRIMapper(omop_iri, this.documentIRI);
         this.manager.addIRIMapper(mapper);
@@ -103,7 +173,7 @@ public class OWLLoader {
         // </rdfs:subClassOf>
 
         // adding all the target vocabs as prefixes so that we can manage concept codes in their own specific vocabularies
-        List<String> target_vocabs = Arrays.asList("SNOMED", "HemOnc", "ICDO3", "Cancer Modifier", "NCIt", "LOINC", "ICD10CM", "RxNorm");
+        this.target_vocabs = options.vocabs;
         // todo: if we decide to make an omop per-vocab file structure, we may revert these and use prefixes like omop.loinc etc? tbd
         Map<String, String> existing_iris = Map.ofEntries(
                 Map.entry("loinc", "https://loinc.org/"),
@@ -123,36 +193,300 @@ public class OWLLoader {
         }
         manager.setOntologyFormat(o, format);
 
-        this.metadata = new OMOPMetadataClasses(o, dataFactory, vocab_folder, omop_iri);
+        if (options.incremental != null && options.shards != null) {
+            throw new IllegalArgumentException("Incremental builds cover every vocabulary and can't be restricted to some shards");
+        }
+        if (options.semsql && (options.sharded || options.incremental != null || options.streamFormat != null)) {
+            throw new IllegalArgumentException("A semsql database is written in one piece - it can't be combined with sharded, incremental or streamed output");
+        }
+        if (options.semsql && compression != Compression.NONE) {
+            throw new IllegalArgumentException("A semsql database can't be compressed - drop the " + compression.suffix + " from " + options.outfile);
+        }
+        if (options.memoryBudgetMB != null) {
+            long budget = options.memoryBudgetMB * (1L << 20);
+            index.spillAfter((int) Math.min(Integer.MAX_VALUE, budget / ConceptIndex.HASHED_BYTES_PER_CONCEPT),
+                    id -> dataFactory.getOWLClass(omop_iri + Integer.toString(id)));
+            if (options.streamFormat == null && !options.semsql) {
+                System.out.println("Streaming rdfxml to stay within the memory budget");
+                options.streamFormat = StreamingOntologyWriter.Format.RDFXML;
+            }
+        }
+        // in streaming or sharded mode the ontology above only carries the prefixes
         try {
-            metadata.load();
+            this.previous = options.incremental != null && options.incremental.exists()
+                    ? FingerprintStore.load(options.incremental) : null;
+            this.semsql = options.semsql ? new SemsqlWriter(outfile, omop_iri, format.getPrefixName2PrefixMap()) : null;
+            if (semsql != null) {
+                this.output = semsql;
+            } else if (previous != null && options.sharded) {
+                this.output = null;
+            } else if (options.sharded) {
+                this.output = openShardedSink(null);
+            } else if (options.streamFormat != null) {
+                this.output = new StreamingOntologyWriter(compression.output(written(), compressionPool), options.streamFormat,
+                        omop_iri, format.getPrefixName2PrefixMap());
+            } else {
+                this.output = new OntologySink(manager, o, format, IRI.create(written()));
+            }
+        } catch (IOException e) {
+            throw new OWLOntologyCreationException("Could not open output in " + outdir + " for writing", e);
+        }
+        // a patch run only fingerprints on the first pass, see createOHDSIOntology
+        this.deltaSink = options.incremental == null ? null : new DeltaSink(previous == null ? output : null);
+        this.sink = deltaSink != null ? deltaSink : output;
+
+        if (source == null) {
+            source = openSource(options);
+        }
+        source = metrics.source(source);
+        metrics.startProgress(options.progressSeconds);
+        this.metadata = new OMOPMetadataClasses(stageSink("metadata"), dataFactory, source, omop_iri);
+        try {
+            committed("metadata", metadata::load).run();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        this.concepts = new OMOPConcepts(o, dataFactory, vocab_folder, format, manager, metadata, omop_iri, vocabBaseIRIs, target_vocabs);
-        this.ancestry = new OMOPAncestry(this.o, dataFactory, vocab_folder);
-        this.synonyms = new OMOPSynonyms(this.o, dataFactory, vocab_folder, format);
-        this.relationships = new OMOPRelationships(this.o, dataFactory, vocab_folder, format);
+        // each stage collects its own batches so the stages can run side by side - see createOHDSIOntology
+        this.concepts = new OMOPConcepts(stageSink("concepts"), dataFactory, source, format, metadata, omop_iri, vocabBaseIRIs, target_vocabs, index);
+        if (options.servePort != null) {
+            concepts.setCodes(new ConceptCodes(target_vocabs));
+        }
+        if (options.offHeapNames) {
+            try {
+                this.names = new StringArena();
+            } catch (IOException e) {
+                throw new OWLOntologyCreationException("Could not create the string arena", e);
+            }
+        } else {
+            this.names = null;
+        }
+        this.ancestry = new OMOPAncestry(stageSink("ancestry"), dataFactory, source);
+        this.synonyms = new OMOPSynonyms(stageSink("synonyms"), dataFactory, source, format);
+        concepts.setNames(names);
+        synonyms.setNames(names);
+        try {
+            this.lexicon = options.lexicalIndex != null ? new LexicalIndexWriter() : null;
+        } catch (IOException e) {
+            throw new OWLOntologyCreationException("Could not create the lexical index", e);
+        }
+        concepts.setLexicon(lexicon);
+        synonyms.setLexicon(lexicon);
+        this.relationships = new OMOPRelationships(stageSink("relationships"), dataFactory, source, format,
+                options.relationships, omop_iri);
+    }
+
+    // the csv files, the Athena zip or the database the options name, with a snapshot in front if asked for
+    public static VocabularySource openSource(LoaderOptions options) throws OWLOntologyCreationException {
+        ForkJoinPool pool = options.threads > 1 ? new ForkJoinPool(options.threads) : null;
+        VocabularySource source;
+        if (options.jdbcUrl != null) {
+            source = new JdbcSource(options.jdbcUrl, options.jdbcUser, options.jdbcPassword, options.jdbcSchema, options.fetchSize);
+            if (options.snapshot) {
+                System.out.println("Ignoring --snapshot, the vocabulary is read from " + options.jdbcUrl);
+            }
+        } else if (ZipSource.isZip(new File(options.vocabFolder))) {
+            try {
+                source = new ZipSource(new File(options.vocabFolder));
+            } catch (IOException e) {
+                throw new OWLOntologyCreationException("Could not open " + options.vocabFolder, e);
+            }
+            if (options.snapshot) {
+                System.out.println("Ignoring --snapshot, the vocabulary is read from " + options.vocabFolder);
+            }
+        } else {
+            CSVSource csv = new CSVSource(options.vocabFolder, pool);
+            source = csv;
+            if (options.snapshot) {
+                try {
+                    source = SnapshotSource.open(csv, TABLES, pool);
+                } catch (IOException e) {
+                    System.out.println("Vocabulary snapshot not available, reading the csv files: " + e.getMessage());
+                }
+            }
+        }
+        return source;
+    }
+
+    // shards are omop_metadata plus omop_<vocab> for each target vocab, each vocab shard importing the metadata one.
+    // with a patcher the existing shard files are patched instead of written from scratch
+    private AxiomSink openShardedSink(ShardPatcher patcher) throws IOException {
+        IRI metadataIRI = shardIRI("metadata");
+        AxiomSink metadataShard = openShard("metadata", -1, Collections.emptyList(), patcher);
+        List<AxiomSink> vocabShards = new ArrayList<>();
+        for (int i = 0; i < target_vocabs.size(); i++) {
+            String key = target_vocabs.get(i).replace(" ", "_").toLowerCase();
+            if (options.shards != null && !options.shards.contains(key)) {
+                vocabShards.add(ShardedSink.DISCARD);
+            } else {
+                vocabShards.add(openShard(key, i, List.of(metadataIRI), patcher));
+            }
+        }
+        return new ShardedSink(index, metadataShard, vocabShards);
+    }
+
+    private static IRI shardIRI(String key) {
+        return IRI.create(omop_iri + "omop_" + key);
+    }
+
+    private AxiomSink openShard(String key, int vocab, List<IRI> imports, ShardPatcher patcher) throws IOException {
+        String extension = options.streamFormat != null ? options.streamFormat.extension : "owl";
+        File file = new File(outdir, "omop_" + key + "." + extension + compression.suffix);
+        shardFiles.add(file);
+        if (patcher != null) {
+            return patcher.shard(file, vocab, "b_" + key + "_");
+        }
+        System.out.println("Writing shard " + file);
+        if (options.streamFormat != null) {
+            return new StreamingOntologyWriter(compression.output(file, compressionPool), options.streamFormat, shardIRI(key),
+                    format.getPrefixName2PrefixMap(), "b_" + key + "_", imports);
+        }
+        OWLOntology shard;
+        try {
+            shard = manager.createOntology(shardIRI(key));
+        } catch (OWLOntologyCreationException e) {
+            throw new IOException("Could not create shard " + key, e);
+        }
+        for (IRI imported : imports) {
+            manager.applyChange(new AddImport(shard, manager.getOWLDataFactory().getOWLImportsDeclaration(imported)));
+        }
+        RDFXMLDocumentFormat shardFormat = new RDFXMLDocumentFormat();
+        shardFormat.copyPrefixesFrom(format);
+        return new OntologySink(manager, shard, shardFormat, IRI.create(file));
+    }
+
+    // where the single file output goes: outfile, or next to it for the patch of an incremental run, so that the full
+    // ontology of the first run stays as it is - omop.nt gets omop.nt.patch, omop.nt.gz omop.nt.patch.gz
+    private File written() {
+        if (previous == null) {
+            return outfile;
+        }
+        String name = outfile.getName();
+        String base = name.substring(0, name.length() - compression.suffix.length());
+        return new File(outdir, base + ".patch" + compression.suffix);
+    }
+
+    private AxiomSink stageSink(String stage) {
+        return stageSinks.computeIfAbsent(stage, s -> new BatchingSink(sink, batchSize));
     }
 
     public OWLOntology createOHDSIOntology() throws OWLOntologyStorageException, OWLOntologyCreationException, IOException {
-        System.out.println("Saving ontology to: " + documentIRI);
-        concepts.load();
-        ancestry.load(concepts);
-        relationships.load(concepts, metadata);
-        synonyms.load(concepts);
-        manager.saveOntology(o, format, documentIRI);
+        System.out.println("Saving ontology to: " + (options.sharded ? documentIRI : IRI.create(written())));
+        loadConcepts();
+        FingerprintStore fingerprints = deltaSink != null ? deltaSink.getFingerprints(index) : null;
+        if (previous != null) {
+            // second pass over the same files, this time passing on only what changed since the last run
+            ConceptDelta delta = new ConceptDelta(previous, fingerprints);
+            System.out.println("Changes since the last run: " + delta);
+            deltaSink.startPatch(delta, options.sharded ? openShardedSink(new ShardPatcher(delta, options.streamFormat, format)) : output);
+            if (!delta.isEmpty()) {
+                committed("metadata", metadata::load).run();
+                loadConcepts();
+            }
+            if (!options.sharded) {
+                writeRetractions(delta, new File(outfile.getPath() + ".retract"));
+            }
+        }
+        sink.close();
+        if (compressionPool != null) {
+            compressionPool.close();
+        }
+        if (names != null) {
+            System.out.println("Distinct names and synonyms: " + names.size());
+            names.close();
+        }
+        if (lexicon != null) {
+            System.out.println("Writing lexical index to: " + options.lexicalIndex);
+            lexicon.write(options.lexicalIndex);
+            lexicon.close();
+        }
+        if (fingerprints != null) {
+            fingerprints.save(options.incremental);
+        }
+        if (options.sharded && options.merge) {
+            System.out.println("Merging shards into: " + outfile);
+            if (options.streamFormat != null) {
+                ShardMerger.mergeStreamed(shardFiles, outfile, options.streamFormat, omop_iri, format.getPrefixName2PrefixMap());
+            } else {
+                ShardMerger.mergeOWL(shardFiles, outfile, format, omop_iri);
+            }
+        }
+        metrics.stopProgress();
+        if (options.metricsReport != null) {
+            System.out.println("Writing run metrics to: " + options.metricsReport);
+            metrics.writeReport(options.metricsReport);
+        }
         return o;
     }
 
+    public LoaderMetrics getMetrics() {
+        return metrics;
+    }
+
+    // lookups over the concepts of the last load - the codes are only there when servePort was set
+    public ConceptQueries queries() {
+        return new ConceptQueries(index, ancestry.getDAG(), relationships.getMappings(), concepts.getCodes(), 256);
+    }
+
+    private void loadConcepts() throws IOException {
+        // only the concept index is shared, so everything else runs in parallel once the concepts are in
+        new LoaderPipeline()
+                .stage("concepts", committed("concepts", concepts::load))
+                .stage("ancestry", committed("ancestry", () -> ancestry.load(concepts, options.closureDepth, semsql)), "concepts")
+                .stage("relationships", committed("relationships", () -> relationships.load(concepts, metadata)), "concepts")
+                .stage("synonyms", committed("synonyms", () -> synonyms.load(concepts)), "concepts")
+                .run();
+    }
+
+    // the concepts whose previously written axioms a patch replaces, one concept_id per line (-1: the non-concept axioms)
+    private static void writeRetractions(ConceptDelta delta, File file) throws IOException {
+        System.out.println("Writing retractions to: " + file);
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            for (int id : delta.retracted()) {
+                out.println(id);
+            }
+        }
+    }
+
+    // a stage only counts as done once its last partial batch has reached the shared sink
+    private LoaderPipeline.Stage committed(String name, LoaderPipeline.Stage stage) {
+        return () -> {
+            BatchingSink stageSink = stageSinks.get(name);
+            LoaderMetrics.Stage metered = metrics.startStage(name, stageSink::getCommitted);
+            long start = System.nanoTime();
+            stage.run();
+            stageSink.flush();
+            metrics.endStage(metered);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Stage %s: %d axioms in %.1fs (%.0f axioms/s)%n",
+                    name, stageSink.getCommitted(), seconds, stageSink.getCommitted() / Math.max(seconds, 1e-9));
+        };
+    }
+
     public static void checkRequiredFiles(File folder, String[] requiredFiles) {
+        if (ZipSource.isZip(folder)) {
+            try (ZipSource zip = new ZipSource(folder)) {
+                for (String filename : requiredFiles) {
+                    if (!zip.has(filename)) {
+                        System.err.println("Required file missing from " + folder.getName() + ": " + filename);
+                        System.exit(1);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Provided path is not a readable zip: " + folder.getAbsolutePath());
+                System.exit(1);
+            }
+            System.out.println("All required files are present in " + folder.getName() + ".");
+            return;
+        }
         if (!folder.exists() || !folder.isDirectory()) {
             System.err.println("Provided path is not a valid directory: " + folder.getAbsolutePath());
             System.exit(1);
         }
 
+        CSVSource csv = new CSVSource(folder.getPath());
         for (String filename : requiredFiles) {
-            File file = new File(folder, filename);
+            // CONCEPT.csv or its compressed copy, see CSVSource.getFile
+            File file = csv.getFile(filename.substring(0, filename.length() - ".csv".length()));
             if (!file.exists() || !file.isFile() || !file.canRead()) {
                 System.err.println("Required file missing or not readable: " + filename);
                 System.exit(1);
@@ -167,13 +501,37 @@ public class OWLLoader {
 
         options.addOption("d", "outdir", true, "Output directory");
         options.addOption("f", "outfile", true, "Output file name");
-        options.addOption("v", "vocab", true, "Vocabulary folder");
+        options.addOption("v", "vocab", true, "Vocabulary folder, or the Athena zip");
         options.addOption("r", "recreate", false, "Recreate OWL classes");
+        options.addOption("t", "threads", true, "Threads used to parse the large vocabulary files (default: number of cores)");
+        options.addOption("b", "batch-size", true, "Number of axioms committed to the ontology in one change (default: 5000)");
+        options.addOption(Option.builder().longOpt("sharded").desc("Write one omop_<vocab> ontology per target vocabulary plus omop_metadata").build());
+        options.addOption(Option.builder().longOpt("shards").hasArg().desc("Comma separated vocab keys (e.g. snomed,loinc) of the shards to write - default all").build());
+        options.addOption(Option.builder().longOpt("merge").desc("Merge the shards into the output file once written").build());
+        options.addOption("i", "incremental", true, "Fingerprint store of an incremental build - if it exists only the changes since the run that wrote it are output");
+        options.addOption(Option.builder().longOpt("snapshot").desc("Read the vocabulary from a binary snapshot next to the vocab folder, built on first use").build());
+        options.addOption(Option.builder().longOpt("closure").hasArg().desc("Assert the ancestors up to this many levels up, or all, as SubClassOf axioms (default: 1, the direct parents)").build());
+        options.addOption(Option.builder().longOpt("heap-names").desc("Keep concept names and synonyms on the heap as Strings instead of in an off-heap arena").build());
+        options.addOption(Option.builder().longOpt("serve").hasArg().desc("Answer concept hierarchy queries over http on this localhost port once loaded").build());
+        options.addOption(Option.builder().longOpt("semsql").desc("Write the output file as a semsql SQLite database instead of an ontology").build());
+        options.addOption(Option.builder().longOpt("jdbc").hasArg().desc("JDBC url of an OMOP CDM database to read the vocabulary from instead of the vocab folder").build());
+        options.addOption(Option.builder().longOpt("jdbc-user").hasArg().desc("Database user").build());
+        options.addOption(Option.builder().longOpt("jdbc-password").hasArg().desc("Database password").build());
+        options.addOption(Option.builder().longOpt("jdbc-schema").hasArg().desc("Schema of the vocabulary tables (default: the connection's search path)").build());
+        options.addOption(Option.builder().longOpt("fetch-size").hasArg().desc("Rows fetched per round trip from the database (default: " + JdbcSource.DEFAULT_FETCH_SIZE + ")").build());
+        options.addOption(Option.builder().longOpt("memory-budget").hasArg().desc("MB of heap for the concept index's hash table before it spills to a sorted file on disk - the per-concept arrays (about 6 bytes a concept), the names and the ancestry graph come on top - also streams the output (as rdfxml unless -s is given)").build());
+        options.addOption(Option.builder().longOpt("lexical-index").desc("Also write a memory mapped index of the normalized concept names and synonyms to [outfile].lexicon, for grounding text to concept ids").build());
+        options.addOption(Option.builder().longOpt("progress").hasArg().desc("Seconds between progress lines, 0 for none (default: 30)").build());
+        options.addOption(Option.builder().longOpt("metrics").hasArg().desc("JSON run report with the rows, axioms, time and memory of each stage (default: [outfile].metrics.json in the output directory)").build());
+        options.addOption(Option.builder().longOpt("vocabs").hasArg().desc("Comma separated vocabulary_ids of the concepts to load (default: " + String.join(",", LoaderOptions.DEFAULT_VOCABS) + ")").build());
+        options.addOption(Option.builder().longOpt("relationships").hasArg().desc("Comma separated relationship_ids to write, e.g. \"Maps to,Has finding site,Has asso morph\" - Maps to as skos:exactMatch, the others as object properties (default: Maps to)").build());
+        options.addOption(Option.builder().longOpt("profiles").hasArg().desc("Build profile file naming several outputs, each with its own vocabs and options, all written from one pass over the vocabulary (see BuildProfiles)").build());
+        options.addOption("s", "stream", true, "Stream axioms straight to the output file as rdfxml, turtle or ntriples instead of building the ontology in memory");
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd = parser.parse(options, args);
 
-        if (!cmd.hasOption("d") || !cmd.hasOption("f") || !cmd.hasOption("v")) {
+        if (!cmd.hasOption("d") || !cmd.hasOption("f") || !(cmd.hasOption("v") || cmd.hasOption("jdbc"))) {
             HelpFormatter formatter = new HelpFormatter();
             formatter.printHelp("OWLLoader", options);
             System.exit(1);
@@ -184,6 +542,59 @@ public class OWLLoader {
         String vocabFolder = cmd.getOptionValue("v");
         boolean recreate = cmd.hasOption("r");
 
+        LoaderOptions loaderOptions = new LoaderOptions(outdir, outfile, vocabFolder);
+        if (cmd.hasOption("t")) {
+            loaderOptions.threads = Integer.parseInt(cmd.getOptionValue("t"));
+        }
+        if (cmd.hasOption("b")) {
+            loaderOptions.batchSize = Integer.parseInt(cmd.getOptionValue("b"));
+        }
+        loaderOptions.sharded = cmd.hasOption("sharded");
+        loaderOptions.merge = cmd.hasOption("merge");
+        loaderOptions.snapshot = cmd.hasOption("snapshot");
+        loaderOptions.semsql = cmd.hasOption("semsql");
+        loaderOptions.offHeapNames = !cmd.hasOption("heap-names");
+        if (cmd.hasOption("serve")) {
+            loaderOptions.servePort = Integer.parseInt(cmd.getOptionValue("serve"));
+        }
+        if (cmd.hasOption("closure")) {
+            String depth = cmd.getOptionValue("closure");
+            loaderOptions.closureDepth = depth.equalsIgnoreCase("all") ? OMOPAncestry.FULL_CLOSURE : Integer.parseInt(depth);
+        }
+        if (cmd.hasOption("shards")) {
+            loaderOptions.shards = new HashSet<>(Arrays.asList(cmd.getOptionValue("shards").toLowerCase().split("\\s*,\\s*")));
+        }
+        if (cmd.hasOption("i")) {
+            loaderOptions.incremental = new File(cmd.getOptionValue("i"));
+        }
+        if (cmd.hasOption("jdbc")) {
+            loaderOptions.jdbcUrl = cmd.getOptionValue("jdbc");
+            loaderOptions.jdbcUser = cmd.getOptionValue("jdbc-user");
+            loaderOptions.jdbcPassword = cmd.getOptionValue("jdbc-password");
+            loaderOptions.jdbcSchema = cmd.getOptionValue("jdbc-schema");
+        }
+        if (cmd.hasOption("fetch-size")) {
+            loaderOptions.fetchSize = Integer.parseInt(cmd.getOptionValue("fetch-size"));
+        }
+        if (cmd.hasOption("lexical-index")) {
+            loaderOptions.lexicalIndex = new File(outdir, outfile + ".lexicon");
+        }
+        if (cmd.hasOption("memory-budget")) {
+            loaderOptions.memoryBudgetMB = Integer.parseInt(cmd.getOptionValue("memory-budget"));
+        }
+        loaderOptions.progressSeconds = Integer.parseInt(cmd.getOptionValue("progress", "30"));
+        loaderOptions.metricsReport = cmd.hasOption("metrics") ? new File(cmd.getOptionValue("metrics"))
+                : new File(outdir, outfile + ".metrics.json");
+        if (cmd.hasOption("s")) {
+            loaderOptions.streamFormat = StreamingOntologyWriter.Format.fromName(cmd.getOptionValue("s"));
+        }
+        if (cmd.hasOption("relationships")) {
+            loaderOptions.relationships = List.of(cmd.getOptionValue("relationships").trim().split("\\s*,\\s*"));
+        }
+        if (cmd.hasOption("vocabs")) {
+            loaderOptions.vocabs = List.of(cmd.getOptionValue("vocabs").trim().split("\\s*,\\s*"));
+        }
+
         String[] required = {
                 "VOCABULARY.csv",
                 "DOMAIN.csv",
@@ -193,14 +604,34 @@ public class OWLLoader {
                 "CONCEPT_ANCESTOR.csv",
                 "CONCEPT_SYNONYM.csv"
         };
-        checkRequiredFiles(new File(vocabFolder), required);
+        if (loaderOptions.jdbcUrl == null) {
+            checkRequiredFiles(new File(vocabFolder), required);
+        }
+
+        if (!recreate) {
+            // a loader opens its output as soon as it is built, so without -r none is built and nothing is touched
+            System.out.println("Nothing to do here...");
+            return;
+        }
+
+        if (cmd.hasOption("profiles")) {
+            Map<String, LoaderOptions> profiles = BuildProfiles.read(new File(cmd.getOptionValue("profiles")), loaderOptions);
+            try {
+                BuildProfiles.run(profiles, openSource(loaderOptions));
+            } catch (OWLOntologyCreationException | IOException ex) {
+                System.err.println(ex.getMessage());
+            }
+            return;
+        }
 
-        com.ohdsi.app.OWLLoader loader = new com.ohdsi.app.OWLLoader(outdir, outfile, vocabFolder);
+        com.ohdsi.app.OWLLoader loader = new com.ohdsi.app.OWLLoader(loaderOptions);
 
         OWLOntology onto = null;
         try {
-            if (recreate) {
-                onto = loader.createOHDSIOntology();
+            onto = loader.createOHDSIOntology();
+            if (onto != null && loaderOptions.servePort != null) {
+                // the server's threads keep the process running until it is killed
+                new ConceptQueryServer(loader.queries(), loaderOptions.servePort, loaderOptions.threads).start();
             }
         } catch (OWLOntologyStorageException | OWLOntologyCreationException | IOException ex) {
             System.err.println(ex.getMessage());
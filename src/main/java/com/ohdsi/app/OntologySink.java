@@ -0,0 +1,64 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+// the original behaviour: everything is added to a single OWLOntology and only written out once loading is finished
+public class OntologySink implements AxiomSink {
+
+    private final OWLOntologyManager manager;
+    private final OWLOntology ontology;
+    private final PrefixDocumentFormat format;
+    private final IRI documentIRI;
+
+    public OntologySink(OWLOntologyManager manager, OWLOntology ontology, PrefixDocumentFormat format, IRI documentIRI) {
+        this.manager = manager;
+        this.ontology = ontology;
+        this.format = format;
+        this.documentIRI = documentIRI;
+    }
+
+    public OWLOntology getOntology() {
+        return ontology;
+    }
+
+    // the default OWLOntologyManager is not thread safe, and the loaders may call this from a parallel scan
+    @Override
+    public synchronized void add(OWLAxiom axiom) {
+        ontology.add(axiom);
+    }
+
+    // one change list per batch, so listeners and indexes are updated once rather than once per axiom
+    @Override
+    public synchronized void addAll(Collection<? extends OWLAxiom> axioms) {
+        manager.addAxioms(ontology, axioms.stream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            save(manager, ontology, format, documentIRI);
+        } catch (OWLOntologyStorageException e) {
+            throw new IOException("Failed to save ontology to " + documentIRI, e);
+        }
+    }
+
+    // a file ending in .gz / .zst is written through Compression, anything else is left to the OWLAPI
+    static void save(OWLOntologyManager manager, OWLOntology ontology, OWLDocumentFormat format, IRI documentIRI)
+            throws IOException, OWLOntologyStorageException {
+        Compression compression = "file".equals(documentIRI.getScheme())
+                ? Compression.of(documentIRI.toString()) : Compression.NONE;
+        if (compression == Compression.NONE) {
+            manager.saveOntology(ontology, format, documentIRI);
+            return;
+        }
+        try (OutputStream out = compression.output(new File(documentIRI.toURI()))) {
+            manager.saveOntology(ontology, format, out);
+        }
+    }
+}
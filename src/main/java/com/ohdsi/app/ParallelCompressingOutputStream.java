@@ -0,0 +1,127 @@
+package com.ohdsi.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/*
+    Cuts what is written into BLOCK_SIZE blocks and compresses each one on a thread of a CompressionPool, writing the
+    compressed blocks out in order. The pool bounds the blocks in flight over all the streams sharing it, so a writer
+    faster than the compressors waits for its oldest block instead of filling the heap. See Compression for why the
+    result is still a single file.
+
+    Not thread safe - like any OutputStream it is fed by one writer at a time.
+ */
+public class ParallelCompressingOutputStream extends OutputStream {
+
+    static final int BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final Compression compression;
+    private final CompressionPool pool;
+    // a pool of this stream's own, closed with it
+    private final boolean ownsPool;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count = 0;
+
+    public ParallelCompressingOutputStream(OutputStream out, Compression compression, int threads) {
+        this(out, compression, new CompressionPool(threads), true);
+    }
+
+    // the pool is shared with the other streams of the run and outlives this one
+    public ParallelCompressingOutputStream(OutputStream out, Compression compression, CompressionPool pool) {
+        this(out, compression, pool, false);
+    }
+
+    private ParallelCompressingOutputStream(OutputStream out, Compression compression, CompressionPool pool, boolean ownsPool) {
+        this.out = out;
+        this.compression = compression;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) {
+            submit();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == block.length) {
+                submit();
+            }
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(bytes, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // only whole blocks are compressed before close - a flush that cut a block short would just cost compression
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (count > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            // blocks left after a failure still give their place in the pool back
+            for (Future<byte[]> left : pending) {
+                left.cancel(true);
+                pool.release();
+            }
+            pending.clear();
+            if (ownsPool) {
+                pool.close();
+            }
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        byte[] full = block;
+        int length = count;
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+        while (!pool.tryAcquire()) {
+            if (pending.isEmpty()) {
+                // the other streams hold every place - nothing of this one is queued, so it can be written right away
+                out.write(compression.compress(full, length));
+                return;
+            }
+            writeOldest();
+        }
+        pending.add(pool.submit(compression, full, length));
+    }
+
+    private void writeOldest() throws IOException {
+        try {
+            Future<byte[]> oldest = pending.peek();
+            out.write(oldest.get());
+            pending.poll();
+            pool.release();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.ohdsi.app;
 
 import org.semanticweb.owlapi.model.*;
         import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PropertyConfig {
 
@@ -9,15 +11,34 @@ public class PropertyConfig {
     public String property_source;
     public OWLObjectProperty property;
     public Map<String, OWLClass> property_lookup;
+    // ObjectSomeValuesFrom(property, class) for every metadata value, built once instead of once per concept row
+    public ByteStringMap<OWLClassExpression> restrictions;
+    // values found in the concept rows that are not in the metadata table, with the number of rows for each
+    private final Map<String, LongAdder> missing = new ConcurrentHashMap<>();
 
     public PropertyConfig(String annotation_name, String annotation_source,
-                            OWLDataFactory dataFactory, IRI omop_iri, OWLOntology ontology,
-                            OWLOntologyManager manager, Map<String, OWLClass> property_lookup) {
+                            OWLDataFactory dataFactory, IRI omop_iri, AxiomSink sink,
+                            Map<String, OWLClass> property_lookup) {
         this.property_name = annotation_name;
         this.property_source = annotation_source;
         this.property_lookup = property_lookup;
         this.property = dataFactory.getOWLObjectProperty(omop_iri + annotation_name);
-        manager.addAxiom(ontology, dataFactory.getOWLDeclarationAxiom(property));
+        sink.add(dataFactory.getOWLDeclarationAxiom(property));
+        this.restrictions = new ByteStringMap<>(property_lookup.size());
+        for (Map.Entry<String, OWLClass> entry : property_lookup.entrySet()) {
+            restrictions.put(entry.getKey(), dataFactory.getOWLObjectSomeValuesFrom(property, entry.getValue()));
+        }
+    }
+
+    public void missing(String value) {
+        missing.computeIfAbsent(value, v -> new LongAdder()).increment();
     }
-}
 
+    public void reportMissing() {
+        missing.forEach((value, count) -> System.out.printf(
+                "%d concepts have %s '%s', which is not in the metadata - no %s restriction written for them%n",
+                count.sum(), property_source, value, property_name));
+        // an incremental run loads the concepts twice, each load reports its own rows
+        missing.clear();
+    }
+}
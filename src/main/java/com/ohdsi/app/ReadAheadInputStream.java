@@ -0,0 +1,125 @@
+package com.ohdsi.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+    Reads the stream it wraps on a thread of its own, up to DEPTH blocks ahead of the reader. Meant for streams that
+    cost CPU to read - an entry of a zip, a .gz or .zst file - so that inflating the next block overlaps with the
+    reader parsing this one, instead of the two taking turns on the same thread.
+
+    Not thread safe on the reading side, like any InputStream.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    static final int BLOCK_SIZE = 1 << 20;
+    static final int DEPTH = 4;
+
+    // handed over once the wrapped stream is exhausted, or failed (then with the failure)
+    private static final byte[] END = new byte[0];
+
+    private final InputStream in;
+    private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(DEPTH);
+    private final Thread reader;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+    private byte[] block = new byte[0];
+    private int pos = 0;
+    private boolean eof = false;
+
+    public ReadAheadInputStream(InputStream in, String name) {
+        this.in = in;
+        this.reader = new Thread(this::readAhead, "read-ahead-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                byte[] buffer = new byte[BLOCK_SIZE];
+                int n = in.readNBytes(buffer, 0, buffer.length);
+                if (n == 0) {
+                    break;
+                }
+                blocks.put(n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
+                if (n < buffer.length) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // closed while waiting for room
+            return;
+        }
+        try {
+            blocks.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // false at the end of the stream
+    private boolean nextBlock() throws IOException {
+        if (eof) {
+            return false;
+        }
+        try {
+            block = blocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading ahead", e);
+        }
+        pos = 0;
+        if (block == END) {
+            eof = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == block.length && !nextBlock()) {
+            return -1;
+        }
+        return block[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == block.length && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, block.length - pos);
+        System.arraycopy(block, pos, bytes, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,7 @@
+package com.ohdsi.app;
+
+// called once per record of a TableScan - may be called from several threads at once when the scan is parallel
+@FunctionalInterface
+public interface RowHandler {
+    void accept(CSVRow row);
+}
@@ -0,0 +1,37 @@
+package com.ohdsi.app;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+    JFR event for one chunk of a table scan - a split of a MappedCSVScanner, a row range of a SnapshotSource, or the
+    whole of a sequential CSVRowCursor pass. Free unless a recording is running, e.g.
+
+        java -XX:StartFlightRecording=filename=load.jfr ... com.ohdsi.app.OWLLoader ...
+        jfr print --events com.ohdsi.app.ScanChunk load.jfr
+ */
+@Name("com.ohdsi.app.ScanChunk")
+@Label("Scan Chunk")
+@Category({"OMOP", "Loader"})
+@Description("One chunk of a vocabulary table parsed by a table scan")
+class ScanChunkEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Offset")
+    @Description("Byte offset of the chunk in the file, or its first row in a snapshot")
+    long offset;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Rows")
+    @Description("Rows that passed the scan's filter")
+    long rows;
+}
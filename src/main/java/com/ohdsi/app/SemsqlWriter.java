@@ -0,0 +1,222 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Writes the axioms straight into a SemanticSQL (semsql) SQLite database - the prefix, statements and entailed_edge
+    tables that `semsql make` would otherwise build from the OWL file, which is the step that needs ~10GB of heap on
+    the larger builds. The semsql views the OAK and semsql queries go through (VIEWS) are created on top of them, with
+    semsql's own definitions: the per-predicate statement views, the existential restrictions and the edge view of
+    direct subClassOf and subClassOf-some edges. The rest of semsql's views can be added to the file with semsql's
+    DDL, they only read these tables.
+
+    Statements get the same triples as a streamed file (AxiomTriples), with CURIEs for every IRI in a known namespace
+    and the named subject a blank node belongs to as its stanza. They go in as batched inserts in a single
+    transaction, with journaling off since a failed run just starts again from an empty file.
+
+    Entailed edges are not reasoned over: the subClassOf closure is walked from CONCEPT_ANCESTOR's hierarchy (see
+    OMOPAncestry), reflexive as semsql's own is, plus the direct edge of each existential restriction.
+
+    Needs the xerial sqlite-jdbc driver on the classpath (-Psqlite).
+ */
+public class SemsqlWriter implements AxiomSink, TripleHandler {
+
+    private static final int BATCH = 10000;
+    private static final String SUBCLASS_OF = "rdfs:subClassOf";
+
+    // in dependency order
+    static final String[] VIEWS = {
+            "CREATE VIEW rdf_type_statement AS SELECT * FROM statements WHERE predicate = 'rdf:type'",
+            "CREATE VIEW rdfs_label_statement AS SELECT * FROM statements WHERE predicate = 'rdfs:label'",
+            "CREATE VIEW rdfs_subclass_of_statement AS SELECT * FROM statements WHERE predicate = 'rdfs:subClassOf'",
+            "CREATE VIEW rdfs_subclass_of_named_statement AS SELECT * FROM rdfs_subclass_of_statement WHERE object NOT LIKE '_:%'",
+            "CREATE VIEW owl_equivalent_class_statement AS SELECT * FROM statements WHERE predicate = 'owl:equivalentClass'",
+            "CREATE VIEW owl_class AS SELECT DISTINCT subject AS id FROM rdf_type_statement WHERE object = 'owl:Class'",
+            "CREATE VIEW owl_some_values_from AS SELECT onProperty.stanza, onProperty.subject AS id, "
+                    + "onProperty.object AS on_property, f.object AS filler "
+                    + "FROM statements AS onProperty, statements AS f "
+                    + "WHERE onProperty.predicate = 'owl:onProperty' AND f.subject = onProperty.subject "
+                    + "AND f.predicate = 'owl:someValuesFrom'",
+            "CREATE VIEW owl_subclass_of_some_values_from AS SELECT subClassOf.stanza, subClassOf.subject, "
+                    + "svf.on_property AS predicate, svf.filler AS object "
+                    + "FROM statements AS subClassOf, owl_some_values_from AS svf "
+                    + "WHERE subClassOf.predicate = 'rdfs:subClassOf' AND svf.id = subClassOf.object",
+            "CREATE VIEW edge AS SELECT subject, predicate, object FROM owl_subclass_of_some_values_from "
+                    + "UNION SELECT subject, predicate, object FROM rdfs_subclass_of_named_statement "
+                    + "UNION SELECT subject, predicate, object FROM owl_equivalent_class_statement WHERE object NOT LIKE '_:%'",
+    };
+
+    private final Connection connection;
+    private final PreparedStatement statements;
+    private final PreparedStatement edges;
+    // namespace -> prefix
+    private final Map<String, String> namespaces = new LinkedHashMap<>();
+    private final AxiomTriples translator;
+    private String stanza = null;
+    private int pendingStatements = 0;
+    private int pendingEdges = 0;
+
+    // prefixes are given as prefix name -> namespace, as for StreamingOntologyWriter. concepts get the OMOP prefix
+    public SemsqlWriter(File file, IRI ontologyIRI, Map<String, String> prefixes) throws IOException {
+        namespaces.put(AxiomTriples.RDF, "rdf");
+        namespaces.put(AxiomTriples.RDFS, "rdfs");
+        namespaces.put(AxiomTriples.OWL, "owl");
+        namespaces.put(AxiomTriples.XSD, "xsd");
+        namespaces.put(ontologyIRI.toString(), "OMOP");
+        for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+            String prefix = entry.getKey().endsWith(":")
+                    ? entry.getKey().substring(0, entry.getKey().length() - 1)
+                    : entry.getKey();
+            if (!prefix.isEmpty() && !prefix.equals("xml")) {
+                namespaces.putIfAbsent(entry.getValue(), prefix);
+            }
+        }
+        this.translator = new AxiomTriples(this);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        try {
+            this.connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("PRAGMA journal_mode = OFF");
+                ddl.execute("PRAGMA synchronous = OFF");
+                ddl.execute("CREATE TABLE prefix (prefix TEXT PRIMARY KEY, base TEXT NOT NULL)");
+                ddl.execute("CREATE TABLE statements (stanza TEXT, subject TEXT, predicate TEXT, object TEXT, "
+                        + "value TEXT, datatype TEXT, language TEXT, graph TEXT)");
+                ddl.execute("CREATE TABLE entailed_edge (subject TEXT, predicate TEXT, object TEXT)");
+                for (String view : VIEWS) {
+                    ddl.execute(view);
+                }
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement prefix = connection.prepareStatement("INSERT INTO prefix VALUES (?, ?)")) {
+                for (Map.Entry<String, String> ns : namespaces.entrySet()) {
+                    prefix.setString(1, ns.getValue());
+                    prefix.setString(2, ns.getKey());
+                    prefix.addBatch();
+                }
+                prefix.executeBatch();
+            }
+            this.statements = connection.prepareStatement("INSERT INTO statements VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            this.edges = connection.prepareStatement("INSERT INTO entailed_edge VALUES (?, ?, ?)");
+        } catch (SQLException e) {
+            throw new IOException("Could not create semsql database " + file, e);
+        }
+        triple(ontologyIRI.toString(), AxiomTriples.RDF_TYPE, AxiomTriples.OWL + "Ontology");
+    }
+
+    @Override
+    public synchronized void add(OWLAxiom axiom) {
+        translator.translate(axiom);
+        if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom) axiom;
+            if (ax.getSuperClass() instanceof OWLObjectSomeValuesFrom) {
+                OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ax.getSuperClass();
+                if (!some.getFiller().isAnonymous()) {
+                    edge(curie(ax.getSubClass().asOWLClass().getIRI().toString()),
+                            curie(some.getProperty().asOWLObjectProperty().getIRI().toString()),
+                            curie(some.getFiller().asOWLClass().getIRI().toString()));
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addAll(Collection<? extends OWLAxiom> axioms) {
+        for (OWLAxiom axiom : axioms) {
+            add(axiom);
+        }
+    }
+
+    // one row of the subClassOf closure, see OMOPAncestry
+    public synchronized void entailedSubClassOf(OWLClass sub, OWLClass sup) {
+        edge(curie(sub.getIRI().toString()), SUBCLASS_OF, curie(sup.getIRI().toString()));
+    }
+
+    @Override
+    public void triple(String subject, String predicate, String object) {
+        statement(subject, predicate, curie(object), null, null, null);
+    }
+
+    @Override
+    public void literal(String subject, String predicate, String value, String language, String datatype) {
+        statement(subject, predicate, null, value, datatype == null ? null : curie(datatype), language);
+    }
+
+    private void statement(String subject, String predicate, String object, String value, String datatype, String language) {
+        // AxiomTriples writes a restriction's triples straight after the one referencing it
+        if (!subject.startsWith("_:")) {
+            stanza = curie(subject);
+        }
+        try {
+            statements.setString(1, stanza);
+            statements.setString(2, subject.startsWith("_:") ? subject : stanza);
+            statements.setString(3, curie(predicate));
+            statements.setString(4, object);
+            statements.setString(5, value);
+            statements.setString(6, datatype);
+            statements.setString(7, language);
+            // graph is left empty, as rdftab does
+            statements.setString(8, null);
+            statements.addBatch();
+            if (++pendingStatements == BATCH) {
+                statements.executeBatch();
+                pendingStatements = 0;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not write semsql statement for " + subject, e);
+        }
+    }
+
+    private void edge(String subject, String predicate, String object) {
+        try {
+            edges.setString(1, subject);
+            edges.setString(2, predicate);
+            edges.setString(3, object);
+            edges.addBatch();
+            if (++pendingEdges == BATCH) {
+                edges.executeBatch();
+                pendingEdges = 0;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not write semsql entailed edge for " + subject, e);
+        }
+    }
+
+    // prefix:local for IRIs in a known namespace, blank nodes, namespaces themselves and anything else as they are
+    private String curie(String iri) {
+        int split = Math.max(iri.lastIndexOf('#'), iri.lastIndexOf('/')) + 1;
+        if (iri.startsWith("_:") || split == iri.length()) {
+            return iri;
+        }
+        String prefix = namespaces.get(iri.substring(0, split));
+        return prefix == null ? iri : prefix + ":" + iri.substring(split);
+    }
+
+    // the indexes are only built once everything is in, it is much faster than maintaining them row by row
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            statements.executeBatch();
+            edges.executeBatch();
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("CREATE INDEX statements_spo ON statements (subject, predicate, object)");
+                ddl.execute("CREATE INDEX statements_p ON statements (predicate)");
+                ddl.execute("CREATE INDEX statements_o ON statements (object)");
+                ddl.execute("CREATE INDEX entailed_edge_spo ON entailed_edge (subject, predicate, object)");
+                ddl.execute("CREATE INDEX entailed_edge_o ON entailed_edge (object)");
+            }
+            connection.commit();
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Could not finish semsql database", e);
+        }
+    }
+}
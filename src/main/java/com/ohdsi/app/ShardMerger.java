@@ -0,0 +1,58 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+// the optional post-hoc step that combines the per-vocabulary shards back into a single ontology file
+public class ShardMerger {
+
+    private ShardMerger() {
+    }
+
+    // shards written by StreamingOntologyWriter are concatenated as text, so merging costs no more heap than writing
+    public static void mergeStreamed(List<File> shards, File merged, StreamingOntologyWriter.Format format,
+                                     IRI ontologyIRI, Map<String, String> prefixes) throws IOException {
+        try (StreamingOntologyWriter writer = new StreamingOntologyWriter(merged, format, ontologyIRI, prefixes)) {
+            for (File shard : shards) {
+                System.out.println("Merging " + shard + "...");
+                writer.append(shard);
+            }
+        }
+    }
+
+    // a compressed shard is read through Compression, as the OWLAPI only detects compression for some formats
+    static OWLOntology load(OWLOntologyManager manager, File file) throws IOException, OWLOntologyCreationException {
+        if (Compression.of(file) == Compression.NONE) {
+            return manager.loadOntologyFromOntologyDocument(file);
+        }
+        try (InputStream in = Compression.of(file).input(file)) {
+            return manager.loadOntologyFromOntologyDocument(in);
+        }
+    }
+
+    // shards saved by the OWLAPI are loaded back one after the other - this needs the heap the unsharded build would
+    public static void mergeOWL(List<File> shards, File merged, PrefixDocumentFormat format, IRI ontologyIRI)
+            throws IOException, OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        manager.getOntologyConfigurator().setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+        OWLOntology target = manager.createOntology(ontologyIRI);
+        for (File shard : shards) {
+            System.out.println("Merging " + shard + "...");
+            OWLOntology loaded = load(manager, shard);
+            manager.addAxioms(target, loaded.axioms());
+            manager.removeOntology(loaded);
+        }
+        try {
+            OntologySink.save(manager, target, format, IRI.create(merged));
+        } catch (OWLOntologyStorageException e) {
+            throw new IOException("Failed to save merged ontology to " + merged, e);
+        }
+    }
+}
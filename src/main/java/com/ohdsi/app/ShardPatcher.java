@@ -0,0 +1,99 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+    Applies an incremental build to the shards of an earlier sharded run: each shard drops the axioms of the concepts
+    the delta retracts and takes the re-emitted axioms routed to it. Only shards the delta touches are read and
+    rewritten, one at a time, so a patch needs at most the heap of the largest changed shard.
+
+    the shards have to be written the same way as before (-s format or the in-memory rdf/xml).
+ */
+public class ShardPatcher {
+
+    private final ConceptDelta delta;
+    private final StreamingOntologyWriter.Format streamFormat;
+    private final PrefixDocumentFormat prefixes;
+
+    public ShardPatcher(ConceptDelta delta, StreamingOntologyWriter.Format streamFormat, PrefixDocumentFormat prefixes) {
+        this.delta = delta;
+        this.streamFormat = streamFormat;
+        this.prefixes = prefixes;
+    }
+
+    // sink for the re-emitted axioms of one shard - vocab is its position in target_vocabs, -1 for metadata
+    public AxiomSink shard(File file, int vocab, String blankNodePrefix) {
+        List<OWLAxiom> additions = Collections.synchronizedList(new ArrayList<>());
+        return new AxiomSink() {
+            @Override
+            public void add(OWLAxiom axiom) {
+                additions.add(axiom);
+            }
+
+            @Override
+            public void addAll(Collection<? extends OWLAxiom> axioms) {
+                additions.addAll(axioms);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!additions.isEmpty() || delta.retractsFrom(vocab)) {
+                    patch(file, additions, blankNodePrefix);
+                }
+            }
+        };
+    }
+
+    private void patch(File file, List<OWLAxiom> additions, String blankNodePrefix) throws IOException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        manager.getOntologyConfigurator().setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+        OWLOntology shard;
+        try {
+            shard = ShardMerger.load(manager, file);
+        } catch (OWLOntologyCreationException e) {
+            throw new IOException("Could not read shard " + file, e);
+        }
+        List<OWLAxiom> retracted = shard.axioms()
+                .filter(axiom -> delta.retracts(AxiomRouting.subjectConceptId(axiom)))
+                .collect(Collectors.toList());
+        manager.removeAxioms(shard, retracted.stream());
+        manager.addAxioms(shard, additions.stream());
+        System.out.printf("Patching %s: %d axioms retracted, %d added%n", file, retracted.size(), additions.size());
+
+        // named after the shard, not the .tmp suffix, so it keeps the shard's compression
+        File tmp = new File(file.getParentFile(), ".tmp." + file.getName());
+        if (streamFormat == null) {
+            RDFXMLDocumentFormat format = new RDFXMLDocumentFormat();
+            format.copyPrefixesFrom(prefixes);
+            // the imported metadata shard isn't loaded here, so the saver would re-declare everything taken from it
+            format.setAddMissingTypes(false);
+            try {
+                OntologySink.save(manager, shard, format, IRI.create(tmp));
+            } catch (OWLOntologyStorageException e) {
+                throw new IOException("Failed to save shard to " + tmp, e);
+            }
+        } else {
+            IRI ontologyIRI = shard.getOntologyID().getOntologyIRI().orElseThrow(
+                    () -> new IOException("Shard " + file + " has no ontology IRI"));
+            List<IRI> imports = shard.importsDeclarations().map(OWLImportsDeclaration::getIRI).collect(Collectors.toList());
+            // keep each concept's axioms together, as they were when the shard was first written
+            List<OWLAxiom> axioms = shard.axioms().collect(Collectors.toList());
+            axioms.sort(Comparator.comparingInt(AxiomRouting::subjectConceptId));
+            try (StreamingOntologyWriter writer = new StreamingOntologyWriter(Compression.of(file).output(tmp), streamFormat,
+                    ontologyIRI, prefixes.getPrefixName2PrefixMap(), blankNodePrefix, imports)) {
+                writer.addAll(axioms);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.IOException;
+import java.util.*;
+
+/*
+    Splits the output into one ontology per target vocabulary plus a shared metadata ontology. An axiom goes to the shard
+    of the concept it is about (AxiomRouting.subjectConceptId), so cross-vocabulary ancestry and Maps to axioms end up
+    with their subject concept; anything that isn't about a loaded concept goes to the metadata shard.
+
+    shards are looked up through the ConceptIndex, so concepts have to be indexed before their axioms are committed.
+    The concept stage is still adding to the index (and rehashing or spilling it) while its batches arrive here, so
+    the lookups hold the index's lock, the one OMOPConcepts puts under - once per batch, not once per axiom.
+ */
+public class ShardedSink implements AxiomSink {
+
+    // stands in for the shards that are not being built by this run
+    public static final AxiomSink DISCARD = new AxiomSink() {
+        @Override
+        public void add(OWLAxiom axiom) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final ConceptIndex index;
+    private final AxiomSink metadata;
+    private final AxiomSink[] vocabShards;
+
+    public ShardedSink(ConceptIndex index, AxiomSink metadata, List<AxiomSink> vocabShards) {
+        this.index = index;
+        this.metadata = metadata;
+        this.vocabShards = vocabShards.toArray(new AxiomSink[0]);
+    }
+
+    @Override
+    public void add(OWLAxiom axiom) {
+        AxiomSink shard;
+        synchronized (index) {
+            shard = shardOf(axiom);
+        }
+        shard.add(axiom);
+    }
+
+    // keeps each batch together per shard rather than interleaving single axioms from different threads
+    @Override
+    public void addAll(Collection<? extends OWLAxiom> axioms) {
+        Map<AxiomSink, List<OWLAxiom>> split = new IdentityHashMap<>();
+        synchronized (index) {
+            for (OWLAxiom axiom : axioms) {
+                split.computeIfAbsent(shardOf(axiom), s -> new ArrayList<>()).add(axiom);
+            }
+        }
+        for (Map.Entry<AxiomSink, List<OWLAxiom>> entry : split.entrySet()) {
+            entry.getKey().addAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        List<AxiomSink> all = new ArrayList<>(Arrays.asList(vocabShards));
+        all.add(metadata);
+        for (AxiomSink shard : all) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // callers hold the index's lock
+    private AxiomSink shardOf(OWLAxiom axiom) {
+        int id = AxiomRouting.subjectConceptId(axiom);
+        if (id == AxiomRouting.NO_CONCEPT) {
+            return metadata;
+        }
+        int ordinal = index.ordinal(id);
+        return ordinal < 0 ? metadata : vocabShards[index.vocabAt(ordinal)];
+    }
+}
@@ -0,0 +1,276 @@
+package com.ohdsi.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/*
+    Lets several loads read one VocabularySource with a single pass over each table. Every load gets a participant
+    of its own, and opening a table through a participant joins the scan of that table the other participants open.
+    Once every participant still loading has called forEach (or closed the scan without one) the table is read once,
+    on one of their threads, and each row goes to the handler of every participant whose filter it passes:
+
+        SharedScanSource shared = new SharedScanSource(source);
+        List<SharedScanSource.Participant> participants = ...one shared.participant() per load, before any of them starts
+        // on each load's own thread, closing the participant once the load is done or failed
+        try (participant) { new OWLLoader(options, participant).createOHDSIOntology(); }
+
+    A participant's n-th scan of a table joins the n-th scan of it of the others, so the loads have to run at the same
+    time and read the same tables - they are the same loader with different options. A participant that is closed
+    stops holding up the scans it hasn't joined yet. A handler that throws only fails the load it belongs to, its
+    rows stop being handed to it and the others go on.
+
+    The filters are tested on the row per participant. When all of them compare the same column with known values
+    the scan is also given their union, so the rows no participant wants are still skipped (or left in the database)
+    before they are split.
+ */
+public class SharedScanSource {
+
+    private final VocabularySource source;
+    private final Set<Participant> active = new HashSet<>();
+    // the scans joined but not yet read, by table and occurrence
+    private final Map<String, Rendezvous> pending = new HashMap<>();
+
+    public SharedScanSource(VocabularySource source) {
+        this.source = source;
+    }
+
+    public synchronized Participant participant() {
+        Participant participant = new Participant();
+        active.add(participant);
+        return participant;
+    }
+
+    public class Participant implements VocabularySource, Closeable {
+        private final Map<String, Integer> opened = new HashMap<>();
+
+        @Override
+        public TableScan open(String table) throws IOException {
+            synchronized (SharedScanSource.this) {
+                String key = table + "#" + opened.merge(table, 1, Integer::sum);
+                Rendezvous rendezvous = pending.get(key);
+                if (rendezvous == null) {
+                    rendezvous = new Rendezvous(key, source.open(table));
+                    pending.put(key, rendezvous);
+                }
+                return new SharedScan(rendezvous, this);
+            }
+        }
+
+        // done loading - the scans still pending no longer wait for this participant
+        @Override
+        public void close() {
+            synchronized (SharedScanSource.this) {
+                active.remove(this);
+                for (Rendezvous rendezvous : new ArrayList<>(pending.values())) {
+                    rendezvous.arrivedIfComplete();
+                }
+                SharedScanSource.this.notifyAll();
+            }
+        }
+    }
+
+    // one handler taking part in a scan
+    private static class Registration {
+        final int col;
+        final FieldPredicate filter;
+        final RowHandler handler;
+        volatile RuntimeException failure;
+
+        Registration(int col, FieldPredicate filter, RowHandler handler) {
+            this.col = col;
+            this.filter = filter;
+            this.handler = handler;
+        }
+
+        void accept(CSVRow row) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                if (filter == null || filter.test(row.buffer(), row.start(col), row.end(col))) {
+                    handler.accept(row);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    // one read of one table, shared by every participant that opens it - guarded by the SharedScanSource
+    private class Rendezvous {
+        final String key;
+        final TableScan scan;
+        final Set<Participant> arrived = new HashSet<>();
+        final List<Registration> registrations = new ArrayList<>();
+        boolean started = false;
+        boolean done = false;
+        IOException failure;
+
+        Rendezvous(String key, TableScan scan) {
+            this.key = key;
+            this.scan = scan;
+        }
+
+        boolean complete() {
+            return arrived.containsAll(active);
+        }
+
+        // a complete scan nobody is waiting to run is finished right away
+        void arrivedIfComplete() {
+            if (!started && complete() && registrations.isEmpty()) {
+                started = true;
+                done = true;
+                pending.remove(key);
+                try {
+                    scan.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        void read() throws IOException {
+            try (TableScan table = scan) {
+                if (registrations.size() == 1) {
+                    Registration only = registrations.get(0);
+                    if (only.filter == null) {
+                        table.forEach(only::accept);
+                    } else {
+                        table.forEach(only.col, only.filter, only.handler::accept);
+                    }
+                    return;
+                }
+                int col = registrations.get(0).col;
+                List<FieldPredicate> filters = new ArrayList<>();
+                for (Registration registration : registrations) {
+                    filters.add(registration.col == col ? registration.filter : null);
+                }
+                FieldPredicate union = union(filters);
+                RowHandler dispatch = row -> {
+                    for (Registration registration : registrations) {
+                        registration.accept(row);
+                    }
+                };
+                if (union != null) {
+                    table.forEach(col, union, dispatch);
+                } else {
+                    table.forEach(dispatch);
+                }
+            }
+        }
+    }
+
+    private class SharedScan implements TableScan {
+        private final Rendezvous rendezvous;
+        private final Participant participant;
+        private boolean joined = false;
+
+        SharedScan(Rendezvous rendezvous, Participant participant) {
+            this.rendezvous = rendezvous;
+            this.participant = participant;
+        }
+
+        @Override
+        public CSVHeader getHeader() {
+            return rendezvous.scan.getHeader();
+        }
+
+        @Override
+        public long bytesRead() {
+            return rendezvous.scan.bytesRead();
+        }
+
+        @Override
+        public void forEach(RowHandler handler) throws IOException {
+            forEach(-1, null, handler);
+        }
+
+        // waits for the other participants, then either reads the table for all of them or for whoever does
+        @Override
+        public void forEach(int col, FieldPredicate filter, RowHandler handler) throws IOException {
+            Registration registration = new Registration(col, filter, handler);
+            boolean run = false;
+            synchronized (SharedScanSource.this) {
+                if (joined) {
+                    throw new IllegalStateException("A shared scan can only be read once");
+                }
+                joined = true;
+                rendezvous.registrations.add(registration);
+                rendezvous.arrived.add(participant);
+                SharedScanSource.this.notifyAll();
+                while (!rendezvous.done && !run) {
+                    if (!rendezvous.started && rendezvous.complete()) {
+                        rendezvous.started = true;
+                        pending.remove(rendezvous.key);
+                        run = true;
+                    } else {
+                        await();
+                    }
+                }
+            }
+            if (run) {
+                IOException failure = null;
+                try {
+                    rendezvous.read();
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                }
+                synchronized (SharedScanSource.this) {
+                    rendezvous.failure = failure;
+                    rendezvous.done = true;
+                    SharedScanSource.this.notifyAll();
+                }
+            }
+            if (rendezvous.failure != null) {
+                throw new IOException("Shared scan of " + rendezvous.key + " failed", rendezvous.failure);
+            }
+            if (registration.failure != null) {
+                throw registration.failure;
+            }
+        }
+
+        // a scan closed without being read still counts as this participant having arrived
+        @Override
+        public void close() {
+            synchronized (SharedScanSource.this) {
+                if (!joined) {
+                    joined = true;
+                    rendezvous.arrived.add(participant);
+                    rendezvous.arrivedIfComplete();
+                    SharedScanSource.this.notifyAll();
+                }
+            }
+        }
+
+        private void await() throws IOException {
+            try {
+                SharedScanSource.this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the shared scan of " + rendezvous.key, e);
+            }
+        }
+    }
+
+    // anything any of the filters passes, as long as they are all comparisons with known values - otherwise null
+    static FieldPredicate union(List<FieldPredicate> filters) {
+        Set<Object> values = new LinkedHashSet<>();
+        for (FieldPredicate filter : filters) {
+            if (filter == null || filter.values() == null) {
+                return null;
+            }
+            values.addAll(filter.values());
+        }
+        if (values.stream().allMatch(String.class::isInstance)) {
+            List<String> strings = new ArrayList<>();
+            values.forEach(value -> strings.add((String) value));
+            return FieldPredicate.anyOf(strings);
+        }
+        if (values.size() == 1 && values.iterator().next() instanceof Integer) {
+            return FieldPredicate.isInt((Integer) values.iterator().next());
+        }
+        return null;
+    }
+}
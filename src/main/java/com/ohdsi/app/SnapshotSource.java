@@ -0,0 +1,238 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+    Reads the vocabulary tables from the binary snapshot written by SnapshotWriter instead of re-parsing the csv files.
+    Everything is memory mapped: a row is just its codes looked up in the dictionary offsets, and the CSVRow fields
+    point straight into the mapped dictionary, so the loaders see the same rows as from a CSVSource without any text
+    being scanned.
+
+    The snapshot is kept next to the vocab folder (<vocab_folder>.snapshot) and is rebuilt whenever one of the csv
+    files has a different size or modification time than the one it was built from. Tables the snapshot doesn't
+    hold are read from the csv files.
+ */
+public class SnapshotSource implements VocabularySource {
+
+    // rows per parallel task
+    private static final int SPLIT_ROWS = 1 << 18;
+
+    private final CSVSource csv;
+    private final File dir;
+    private final ForkJoinPool pool;
+    private final Map<String, TableInfo> tables;
+    private final ByteBuffer dictionary;
+    private final IntBuffer offsets;
+
+    private static class TableInfo {
+        long length;
+        long modified;
+        int rows;
+        CSVHeader header;
+    }
+
+    private SnapshotSource(CSVSource csv, File dir, ForkJoinPool pool) throws IOException {
+        this.csv = csv;
+        this.dir = dir;
+        this.pool = pool;
+        this.tables = readManifest(dir);
+        this.dictionary = map(new File(dir, SnapshotWriter.BYTES));
+        this.offsets = map(new File(dir, SnapshotWriter.OFFSETS)).asIntBuffer();
+    }
+
+    // the snapshot of csv's folder, (re)built first if it is missing or out of date
+    public static SnapshotSource open(CSVSource csv, List<String> tables, ForkJoinPool pool) throws IOException {
+        File folder = csv.getFolder().getAbsoluteFile();
+        File dir = new File(folder.getParentFile(), folder.getName() + ".snapshot");
+        if (!isCurrent(csv, tables, dir)) {
+            System.out.println("Building vocabulary snapshot in " + dir);
+            // interning is single threaded, so the csv files are read front to back
+            SnapshotWriter.write(new CSVSource(folder.getPath()), tables, dir);
+        } else {
+            System.out.println("Reading vocabulary snapshot from " + dir);
+        }
+        return new SnapshotSource(csv, dir, pool);
+    }
+
+    private static boolean isCurrent(CSVSource csv, List<String> tables, File dir) {
+        if (!new File(dir, SnapshotWriter.MANIFEST).exists()) {
+            return false;
+        }
+        try {
+            Map<String, TableInfo> snapshot = readManifest(dir);
+            for (String table : tables) {
+                TableInfo info = snapshot.get(table);
+                File file = csv.getFile(table);
+                if (info == null || info.length != file.length() || info.modified != file.lastModified()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable snapshot in " + dir + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public TableScan open(String table) throws IOException {
+        TableInfo info = tables.get(table);
+        if (info == null) {
+            return csv.open(table);
+        }
+        IntBuffer[] columns = new IntBuffer[info.header.size()];
+        if (info.rows > 0) {
+            try (FileChannel channel = FileChannel.open(new File(dir, table + SnapshotWriter.COLUMNS).toPath(), StandardOpenOption.READ)) {
+                long columnBytes = info.rows * 4L;
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = channel.map(FileChannel.MapMode.READ_ONLY, c * columnBytes, columnBytes).asIntBuffer();
+                }
+            }
+        }
+        return new TableScan() {
+            private long bytesRead = 0;
+
+            @Override
+            public CSVHeader getHeader() {
+                return info.header;
+            }
+
+            // the column codes - the strings are in the dictionary shared by all tables
+            @Override
+            public long bytesRead() {
+                return bytesRead;
+            }
+
+            @Override
+            public void forEach(RowHandler handler) {
+                forEach(-1, null, handler);
+            }
+
+            @Override
+            public void forEach(int col, FieldPredicate filter, RowHandler handler) {
+                if (pool != null && pool.getParallelism() > 1 && info.rows > SPLIT_ROWS) {
+                    pool.invoke(new RowsTask(table, info.header, columns, 0, info.rows, col, filter, handler));
+                } else {
+                    scan(table, info.header, columns, 0, info.rows, col, filter, handler);
+                }
+                bytesRead += info.rows * 4L * columns.length;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private void scan(String table, CSVHeader header, IntBuffer[] columns, int from, int to, int col, FieldPredicate filter, RowHandler handler) {
+        ScanChunkEvent event = new ScanChunkEvent();
+        event.begin();
+        SnapshotRow row = new SnapshotRow(header, dictionary);
+        long rows = 0;
+        for (int r = from; r < to; r++) {
+            if (filter != null) {
+                int code = columns[col].get(r);
+                if (!filter.test(dictionary, offsets.get(code), offsets.get(code + 1))) {
+                    continue;
+                }
+            }
+            for (int c = 0; c < columns.length; c++) {
+                int code = columns[c].get(r);
+                row.field(c, offsets.get(code), offsets.get(code + 1));
+            }
+            handler.accept(row);
+            rows++;
+        }
+        if (event.shouldCommit()) {
+            event.source = table;
+            event.offset = from;
+            event.bytes = (to - from) * 4L * columns.length;
+            event.rows = rows;
+            event.commit();
+        }
+    }
+
+    // a fork/join task is Serializable, this one is only ever run
+    @SuppressWarnings("serial")
+    private class RowsTask extends RecursiveAction {
+        private final String table;
+        private final CSVHeader header;
+        private final IntBuffer[] columns;
+        private final int from;
+        private final int to;
+        private final int col;
+        private final FieldPredicate filter;
+        private final RowHandler handler;
+
+        RowsTask(String table, CSVHeader header, IntBuffer[] columns, int from, int to, int col, FieldPredicate filter, RowHandler handler) {
+            this.table = table;
+            this.header = header;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.col = col;
+            this.filter = filter;
+            this.handler = handler;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_ROWS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowsTask(table, header, columns, from, mid, col, filter, handler),
+                        new RowsTask(table, header, columns, mid, to, col, filter, handler));
+            } else {
+                scan(table, header, columns, from, to, col, filter, handler);
+            }
+        }
+    }
+
+    private static class SnapshotRow extends CSVRow {
+        SnapshotRow(CSVHeader header, ByteBuffer dictionary) {
+            super(header, dictionary);
+        }
+
+        void field(int col, int start, int end) {
+            setField(col, start, end);
+        }
+    }
+
+    private static Map<String, TableInfo> readManifest(File dir) throws IOException {
+        Map<String, TableInfo> tables = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, SnapshotWriter.MANIFEST))))) {
+            if (in.readInt() != SnapshotWriter.MAGIC || in.readInt() != SnapshotWriter.VERSION) {
+                throw new IOException("not a snapshot written by this version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String table = in.readUTF();
+                TableInfo info = new TableInfo();
+                info.length = in.readLong();
+                info.modified = in.readLong();
+                info.rows = in.readInt();
+                String[] names = new String[in.readInt()];
+                for (int c = 0; c < names.length; c++) {
+                    names[c] = in.readUTF();
+                }
+                info.header = new CSVHeader(String.join("\t", names));
+                tables.put(table, info);
+            }
+        }
+        return tables;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
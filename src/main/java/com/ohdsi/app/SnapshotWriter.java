@@ -0,0 +1,203 @@
+package com.ohdsi.app;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Builds the binary snapshot that SnapshotSource reads. Every field of every table is interned into one dictionary
+    shared by all tables - concept ids, vocabulary / domain / class ids and dates repeat across millions of rows and
+    across tables - and each table is stored column by column as int codes into that dictionary.
+
+    files in the snapshot folder:
+        dictionary.offsets  int[n + 1], string i is dictionary.bytes[offsets[i], offsets[i + 1])
+        dictionary.bytes    the distinct UTF-8 field values, back to back
+        <TABLE>.columns     int[rows] of codes per column, column after column
+        manifest            written last: per table the csv size and mtime it was built from, its row count and header
+ */
+public class SnapshotWriter {
+
+    static final int MAGIC = 0x4F4D534E; // "OMSN"
+    static final int VERSION = 1;
+    static final String MANIFEST = "manifest";
+    static final String OFFSETS = "dictionary.offsets";
+    static final String BYTES = "dictionary.bytes";
+    static final String COLUMNS = ".columns";
+
+    // the dictionary is read back as one mapped buffer, see CSVRow
+    private static final long MAX_DICTIONARY = Integer.MAX_VALUE - 8;
+
+    private byte[] heap = new byte[1 << 20];
+    private int heapSize = 0;
+    private int[] offsets = new int[1 << 16];
+    private int count = 0;
+    private int[] table = new int[1 << 16];
+    private int mask = table.length - 1;
+
+    private SnapshotWriter() {
+        Arrays.fill(table, -1);
+    }
+
+    public static void write(CSVSource source, List<String> tables, File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create snapshot folder " + dir);
+        }
+        // an interrupted build must not look like a valid snapshot
+        new File(dir, MANIFEST).delete();
+        SnapshotWriter writer = new SnapshotWriter();
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(manifest)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tables.size());
+            for (String table : tables) {
+                File csv = source.getFile(table);
+                System.out.println("Snapshotting " + csv + "...");
+                long length = csv.length();
+                long modified = csv.lastModified();
+                try (TableScan scan = source.open(table)) {
+                    CSVHeader header = scan.getHeader();
+                    long rows = writer.writeTable(scan, new File(dir, table + COLUMNS));
+                    out.writeUTF(table);
+                    out.writeLong(length);
+                    out.writeLong(modified);
+                    out.writeInt((int) rows);
+                    out.writeInt(header.size());
+                    for (int c = 0; c < header.size(); c++) {
+                        out.writeUTF(header.name(c));
+                    }
+                }
+            }
+        }
+        writer.writeDictionary(dir);
+        try (OutputStream out = new FileOutputStream(new File(dir, MANIFEST))) {
+            manifest.writeTo(out);
+        }
+    }
+
+    // the columns go to temporary files first since the row count is only known at the end
+    private long writeTable(TableScan scan, File file) throws IOException {
+        int columns = scan.getHeader().size();
+        List<File> parts = new ArrayList<>();
+        DataOutputStream[] outs = new DataOutputStream[columns];
+        long[] rows = {0};
+        try {
+            for (int c = 0; c < columns; c++) {
+                File part = new File(file.getPath() + "." + c);
+                parts.add(part);
+                outs[c] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part), 1 << 16));
+            }
+            scan.forEach(row -> {
+                for (int c = 0; c < columns; c++) {
+                    int code = intern(row.buffer(), row.start(c), row.end(c));
+                    try {
+                        outs[c].writeInt(code);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                rows[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (DataOutputStream out : outs) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+        if (rows[0] > Integer.MAX_VALUE / 4) {
+            throw new IOException("Too many rows to snapshot " + file);
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            for (File part : parts) {
+                try (InputStream in = new FileInputStream(part)) {
+                    in.transferTo(out);
+                }
+                part.delete();
+            }
+        }
+        return rows[0];
+    }
+
+    private int intern(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        int h = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+        int pos = (h ^ (h >>> 16)) & mask;
+        int code;
+        while ((code = table[pos]) != -1) {
+            if (equals(code, buffer, start, length)) {
+                return code;
+            }
+            pos = (pos + 1) & mask;
+        }
+        if (heapSize + (long) length > MAX_DICTIONARY) {
+            // unwrapped in writeTable, so that the loader falls back to the csv files as for any other IOException
+            throw new UncheckedIOException(new IOException("Vocabulary strings exceed the snapshot dictionary limit of 2GB"));
+        }
+        if (heapSize + length > heap.length) {
+            heap = Arrays.copyOf(heap, (int) Math.min(MAX_DICTIONARY, Math.max(heapSize + length, heap.length * 2L)));
+        }
+        buffer.get(start, heap, heapSize, length);
+        if (count + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count] = heapSize;
+        heapSize += length;
+        offsets[count + 1] = heapSize;
+        table[pos] = count;
+        count++;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return count - 1;
+    }
+
+    private boolean equals(int code, ByteBuffer buffer, int start, int length) {
+        int offset = offsets[code];
+        if (offsets[code + 1] - offset != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (heap[offset + i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, -1);
+        mask = table.length - 1;
+        for (int code = 0; code < count; code++) {
+            int h = 0x811c9dc5;
+            for (int i = offsets[code]; i < offsets[code + 1]; i++) {
+                h = (h ^ (heap[i] & 0xFF)) * 0x01000193;
+            }
+            int pos = (h ^ (h >>> 16)) & mask;
+            while (table[pos] != -1) {
+                pos = (pos + 1) & mask;
+            }
+            table[pos] = code;
+        }
+    }
+
+    private void writeDictionary(File dir) throws IOException {
+        System.out.printf("Snapshot dictionary: %d strings, %d bytes%n", count, heapSize);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, OFFSETS)), 1 << 16))) {
+            for (int i = 0; i <= count; i++) {
+                out.writeInt(offsets[i]);
+            }
+        }
+        try (OutputStream out = new FileOutputStream(new File(dir, BYTES))) {
+            out.write(heap, 0, heapSize);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.ohdsi.app;
+
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+    Writes axioms to disk as soon as they are produced instead of collecting them in an OWLOntology first, so heap usage
+    is bounded by the lookup tables (concept index, metadata classes) rather than by the number of axioms.
+
+    consecutive triples about the same subject are grouped (rdf:Description / turtle ';') - the loaders emit all the
+    axioms for one concept row back to back, so this gets most of the compaction a full serializer would.
+ */
+public class StreamingOntologyWriter implements AxiomSink, TripleHandler {
+
+    public enum Format {
+        RDFXML("owl"),
+        TURTLE("ttl"),
+        NTRIPLES("nt");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public static Format fromName(String name) {
+            switch (name.toLowerCase().replace("-", "").replace("/", "")) {
+                case "rdfxml":
+                case "owl":
+                case "xml":
+                    return RDFXML;
+                case "turtle":
+                case "ttl":
+                    return TURTLE;
+                case "ntriples":
+                case "nt":
+                    return NTRIPLES;
+                default:
+                    throw new IllegalArgumentException("Unknown streaming format: " + name + " (expected rdfxml, turtle or ntriples)");
+            }
+        }
+    }
+
+    // byte level versions of escapeXml / escapeLiteral, for StringArena strings
+    private static final String[] XML_ESCAPES = xmlEscapes();
+    private static final String[] LITERAL_ESCAPES = Utf8Writer.escapes(
+            new char[]{'\\', '"', '\n', '\r', '\t'}, new String[]{"\\\\", "\\\"", "\\n", "\\r", "\\t"});
+
+    private final Utf8Writer out;
+    private final Format format;
+    // namespace -> prefix, in the order they were declared
+    private final Map<String, String> namespaces = new LinkedHashMap<>();
+    private final AxiomTriples translator;
+    private String currentSubject = null;
+    private long triples = 0;
+
+    // compressed when the file name ends in .gz or .zst, see Compression
+    public StreamingOntologyWriter(File file, Format format, IRI ontologyIRI, Map<String, String> prefixes) throws IOException {
+        this(Compression.of(file).output(file), format, ontologyIRI, prefixes);
+    }
+
+    // prefixes are given as prefix name -> namespace, in the same shape as PrefixDocumentFormat.getPrefixName2PrefixMap()
+    public StreamingOntologyWriter(OutputStream stream, Format format, IRI ontologyIRI, Map<String, String> prefixes) throws IOException {
+        this(stream, format, ontologyIRI, prefixes, "b", Collections.emptyList());
+    }
+
+    public StreamingOntologyWriter(OutputStream stream, Format format, IRI ontologyIRI, Map<String, String> prefixes,
+                                   String blankNodePrefix, List<IRI> imports) throws IOException {
+        this.out = new Utf8Writer(stream, 1 << 16);
+        this.format = format;
+        this.translator = new AxiomTriples(this, blankNodePrefix);
+
+        namespaces.put(AxiomTriples.RDF, "rdf");
+        namespaces.put(AxiomTriples.RDFS, "rdfs");
+        namespaces.put(AxiomTriples.OWL, "owl");
+        namespaces.put(AxiomTriples.XSD, "xsd");
+        for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+            String prefix = entry.getKey().endsWith(":")
+                    ? entry.getKey().substring(0, entry.getKey().length() - 1)
+                    : entry.getKey();
+            if (!prefix.equals("xml")) {
+                namespaces.putIfAbsent(entry.getValue(), prefix);
+            }
+        }
+        writeHeader(ontologyIRI.toString());
+        for (IRI imported : imports) {
+            triple(ontologyIRI.toString(), AxiomTriples.OWL + "imports", imported.toString());
+        }
+    }
+
+    public long getTripleCount() {
+        return triples;
+    }
+
+    @Override
+    public synchronized void add(OWLAxiom axiom) {
+        translator.translate(axiom);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<? extends OWLAxiom> axioms) {
+        for (OWLAxiom axiom : axioms) {
+            translator.translate(axiom);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        endSubject();
+        if (format == Format.RDFXML) {
+            out.write("</rdf:RDF>\n");
+        }
+        out.close();
+    }
+
+    /*
+        copies the triples of a file written by another StreamingOntologyWriter in the same format into this one,
+        leaving out its prefixes, its ontology header (the first subject block) and, for rdf/xml, the closing tag.
+        Used to merge shards without parsing them - the shards must have been written with distinct blank node
+        prefixes.
+     */
+    public synchronized void append(File file) throws IOException {
+        endSubject();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Compression.of(file).input(file), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            String ontologySubject = null;
+            boolean inHeader = true;
+            while ((line = in.readLine()) != null) {
+                if (inHeader) {
+                    switch (format) {
+                        case RDFXML:
+                            // everything up to the end of the ontology's own rdf:Description
+                            inHeader = !line.equals("</rdf:Description>");
+                            continue;
+                        case TURTLE:
+                            // prefixes, then the ontology block which is closed by the first statement ending in " ."
+                            inHeader = line.startsWith("@prefix") || !line.endsWith(" .");
+                            continue;
+                        case NTRIPLES:
+                            if (ontologySubject == null) {
+                                ontologySubject = line.substring(0, line.indexOf(' ') + 1);
+                            }
+                            if (line.startsWith(ontologySubject)) {
+                                continue;
+                            }
+                            inHeader = false;
+                            break;
+                    }
+                }
+                if (format == Format.RDFXML && line.equals("</rdf:RDF>")) {
+                    continue;
+                }
+                out.write(line);
+                out.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public void triple(String subject, String predicate, String object) {
+        try {
+            startStatement(subject, predicate);
+            switch (format) {
+                case RDFXML:
+                    out.write(object.startsWith("_:") ? " rdf:nodeID=\"" : " rdf:resource=\"");
+                    out.write(escapeXml(object.startsWith("_:") ? object.substring(2) : object));
+                    out.write("\"/>\n");
+                    break;
+                case TURTLE:
+                    out.write(turtleTerm(object));
+                    break;
+                case NTRIPLES:
+                    out.write(ntriplesTerm(object));
+                    out.write(" .\n");
+                    break;
+            }
+            triples++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void literal(String subject, String predicate, String value, String language, String datatype) {
+        literal(subject, predicate, value, null, 0, language, datatype);
+    }
+
+    // the arena bytes are escaped straight into the output, the name is never a String
+    @Override
+    public void literal(String subject, String predicate, StringArena arena, int handle, String language, String datatype) {
+        literal(subject, predicate, null, arena, handle, language, datatype);
+    }
+
+    private void literal(String subject, String predicate, String value, StringArena arena, int handle, String language, String datatype) {
+        try {
+            startStatement(subject, predicate);
+            switch (format) {
+                case RDFXML:
+                    if (language != null) {
+                        out.write(" xml:lang=\"" + escapeXml(language) + "\"");
+                    } else if (datatype != null) {
+                        out.write(" rdf:datatype=\"" + escapeXml(datatype) + "\"");
+                    }
+                    out.write(">");
+                    if (arena != null) {
+                        out.writeEscaped(arena.buffer(handle), arena.start(handle), arena.length(handle), XML_ESCAPES);
+                    } else {
+                        out.write(escapeXml(value));
+                    }
+                    out.write("</" + qname(predicate) + ">\n");
+                    break;
+                case TURTLE:
+                case NTRIPLES:
+                    out.write('"');
+                    if (arena != null) {
+                        out.writeEscaped(arena.buffer(handle), arena.start(handle), arena.length(handle), LITERAL_ESCAPES);
+                    } else {
+                        out.write(escapeLiteral(value));
+                    }
+                    out.write('"');
+                    if (language != null) {
+                        out.write("@" + language);
+                    } else if (datatype != null) {
+                        out.write("^^" + (format == Format.TURTLE ? turtleTerm(datatype) : ntriplesTerm(datatype)));
+                    }
+                    if (format == Format.NTRIPLES) {
+                        out.write(" .\n");
+                    }
+                    break;
+            }
+            triples++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader(String ontologyIRI) throws IOException {
+        switch (format) {
+            case RDFXML:
+                out.write("<?xml version=\"1.0\"?>\n<rdf:RDF xml:base=\"" + escapeXml(ontologyIRI) + "\"");
+                for (Map.Entry<String, String> ns : namespaces.entrySet()) {
+                    String attribute = ns.getValue().isEmpty() ? "xmlns" : "xmlns:" + ns.getValue();
+                    out.write("\n     " + attribute + "=\"" + escapeXml(ns.getKey()) + "\"");
+                }
+                out.write(">\n");
+                break;
+            case TURTLE:
+                for (Map.Entry<String, String> ns : namespaces.entrySet()) {
+                    out.write("@prefix " + ns.getValue() + ": <" + ns.getKey() + "> .\n");
+                }
+                out.write("\n");
+                break;
+            case NTRIPLES:
+                break;
+        }
+        triple(ontologyIRI, AxiomTriples.RDF_TYPE, AxiomTriples.OWL + "Ontology");
+    }
+
+    // opens (or continues) the block for this subject and writes everything up to the object
+    private void startStatement(String subject, String predicate) throws IOException {
+        switch (format) {
+            case RDFXML:
+                if (!subject.equals(currentSubject)) {
+                    endSubject();
+                    if (subject.startsWith("_:")) {
+                        out.write("<rdf:Description rdf:nodeID=\"" + escapeXml(subject.substring(2)) + "\">\n");
+                    } else {
+                        out.write("<rdf:Description rdf:about=\"" + escapeXml(subject) + "\">\n");
+                    }
+                    currentSubject = subject;
+                }
+                out.write("    <" + qname(predicate));
+                if (!namespaces.containsKey(namespace(predicate))) {
+                    out.write(" xmlns:ns=\"" + escapeXml(namespace(predicate)) + "\"");
+                }
+                break;
+            case TURTLE:
+                if (!subject.equals(currentSubject)) {
+                    endSubject();
+                    out.write(turtleTerm(subject));
+                    currentSubject = subject;
+                } else {
+                    out.write(" ;");
+                }
+                out.write("\n    " + turtleTerm(predicate) + " ");
+                break;
+            case NTRIPLES:
+                out.write(ntriplesTerm(subject));
+                out.write(' ');
+                out.write(ntriplesTerm(predicate));
+                out.write(' ');
+                break;
+        }
+    }
+
+    private void endSubject() throws IOException {
+        if (currentSubject == null) {
+            return;
+        }
+        if (format == Format.RDFXML) {
+            out.write("</rdf:Description>\n");
+        } else if (format == Format.TURTLE) {
+            out.write(" .\n");
+        }
+        currentSubject = null;
+    }
+
+    private static String namespace(String iri) {
+        int split = Math.max(iri.lastIndexOf('#'), iri.lastIndexOf('/')) + 1;
+        return iri.substring(0, split);
+    }
+
+    // rdf/xml property elements have to be qualified names; unknown namespaces get a local "ns" declaration
+    private String qname(String predicate) {
+        String ns = namespace(predicate);
+        String local = predicate.substring(ns.length());
+        if (!isNCName(local)) {
+            throw new IllegalArgumentException("Cannot write predicate as an RDF/XML element name: " + predicate);
+        }
+        String prefix = namespaces.get(ns);
+        if (prefix == null) {
+            return "ns:" + local;
+        }
+        return prefix.isEmpty() ? local : prefix + ":" + local;
+    }
+
+    private String turtleTerm(String iri) {
+        if (iri.startsWith("_:")) {
+            return iri;
+        }
+        String ns = namespace(iri);
+        String prefix = namespaces.get(ns);
+        String local = iri.substring(ns.length());
+        if (prefix != null && isSafeLocalName(local)) {
+            return prefix + ":" + local;
+        }
+        return "<" + iri + ">";
+    }
+
+    private static String ntriplesTerm(String iri) {
+        return iri.startsWith("_:") ? iri : "<" + iri + ">";
+    }
+
+    private static boolean isNCName(String local) {
+        if (local.isEmpty()) {
+            return false;
+        }
+        char first = local.charAt(0);
+        if (!(Character.isLetter(first) || first == '_')) {
+            return false;
+        }
+        return isSafeLocalName(local);
+    }
+
+    // a turtle local name we can write without escapes - '-' is allowed inside one but can't start it
+    private static boolean isSafeLocalName(String local) {
+        if (local.isEmpty() || local.charAt(0) == '-') {
+            return false;
+        }
+        for (int i = 0; i < local.length(); i++) {
+            char c = local.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // XML 1.0 has no way to write the C0 controls other than tab, newline and carriage return, not even as a character
+    // reference - they are dropped
+    private static boolean isXmlControl(char c) {
+        return c < 0x20 && c != '\t' && c != '\n' && c != '\r';
+    }
+
+    private static String[] xmlEscapes() {
+        String[] table = Utf8Writer.escapes(new char[]{'&', '<', '>', '"'}, new String[]{"&amp;", "&lt;", "&gt;", "&quot;"});
+        for (char c = 0; c < 0x20; c++) {
+            if (isXmlControl(c)) {
+                table[c] = "";
+            }
+        }
+        return table;
+    }
+
+    static String escapeXml(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String rep;
+            switch (c) {
+                case '&': rep = "&amp;"; break;
+                case '<': rep = "&lt;"; break;
+                case '>': rep = "&gt;"; break;
+                case '"': rep = "&quot;"; break;
+                default: rep = isXmlControl(c) ? "" : null;
+            }
+            if (rep != null && sb == null) {
+                sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+            }
+            if (sb != null) {
+                if (rep != null) {
+                    sb.append(rep);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    static String escapeLiteral(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String rep;
+            switch (c) {
+                case '\\': rep = "\\\\"; break;
+                case '"': rep = "\\\""; break;
+                case '\n': rep = "\\n"; break;
+                case '\r': rep = "\\r"; break;
+                case '\t': rep = "\\t"; break;
+                default: rep = null;
+            }
+            if (rep != null && sb == null) {
+                sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+            }
+            if (sb != null) {
+                if (rep != null) {
+                    sb.append(rep);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package com.ohdsi.app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+    Deduplicated UTF-8 strings kept outside the heap, for the concept names and synonyms that would otherwise be most
+    of it. The bytes are appended to memory mapped chunks of a temporary file, so the OS pages them out as needed, and
+    each distinct string is known by an int handle. On the heap there is only where each string starts, its length
+    and its hash - 16 bytes a string, against the ~60 + length of a String.
+
+    Strings are interned straight from the row bytes (CSVRow), so a name never becomes a String unless something asks
+    for it - see ArenaLiteral, and StreamingOntologyWriter which copies the bytes to its output as they are.
+
+    All methods are synchronized: interning happens on the threads of a parallel scan while the writer reads.
+ */
+public class StringArena implements Closeable {
+
+    private static final int CHUNK_SIZE = 1 << 26;
+    private static final int EMPTY = -1;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    // position in chunks of the next string
+    private int chunk = -1;
+    private int position = CHUNK_SIZE;
+    private long mapped = 0;
+
+    // by handle
+    private long[] starts = new long[1 << 16];
+    private int[] lengths = new int[1 << 16];
+    private int[] hashes = new int[1 << 16];
+    private int size = 0;
+
+    // open addressing table of handles
+    private int[] table = new int[1 << 17];
+
+    public StringArena() throws IOException {
+        this.file = File.createTempFile("omop-strings", ".arena");
+        file.deleteOnExit();
+        this.raf = new RandomAccessFile(file, "rw");
+        Arrays.fill(table, EMPTY);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // handle of the string in bytes[start, end), added if it isn't there yet
+    public synchronized int intern(ByteBuffer bytes, int start, int end) {
+        int length = end - start;
+        int hash = hash(bytes, start, end);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (int handle = table[slot]; handle != EMPTY; handle = table[slot]) {
+            if (hashes[handle] == hash && lengths[handle] == length && matches(handle, bytes, start)) {
+                return handle;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (position + length > CHUNK_SIZE || chunk < 0) {
+            nextChunk(length);
+        }
+        ByteBuffer target = chunks[chunk];
+        for (int i = 0; i < length; i++) {
+            target.put(position + i, bytes.get(start + i));
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int handle = size++;
+        starts[handle] = ((long) chunk << 32) | position;
+        lengths[handle] = length;
+        hashes[handle] = hash;
+        position += length;
+        table[slot] = handle;
+        if (size * 3L > table.length * 2L) {
+            rehash();
+        }
+        return handle;
+    }
+
+    public int intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    public synchronized String decode(int handle) {
+        byte[] bytes = new byte[lengths[handle]];
+        chunks[(int) (starts[handle] >>> 32)].get((int) starts[handle], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // the string is buffer(handle)[start(handle), start(handle) + length(handle)) - read with absolute gets only
+    public synchronized ByteBuffer buffer(int handle) {
+        return chunks[(int) (starts[handle] >>> 32)];
+    }
+
+    public synchronized int start(int handle) {
+        return (int) starts[handle];
+    }
+
+    public synchronized int length(int handle) {
+        return lengths[handle];
+    }
+
+    // only the temporary file goes - the mappings stay valid until they are collected
+    @Override
+    public synchronized void close() throws IOException {
+        raf.close();
+        file.delete();
+    }
+
+    private boolean matches(int handle, ByteBuffer bytes, int start) {
+        ByteBuffer stored = chunks[(int) (starts[handle] >>> 32)];
+        int at = (int) starts[handle];
+        for (int i = 0; i < lengths[handle]; i++) {
+            if (stored.get(at + i) != bytes.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a string longer than a chunk gets a chunk of its own
+    private void nextChunk(int length) {
+        int chunkSize = Math.max(CHUNK_SIZE, length);
+        try {
+            MappedByteBuffer next = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, mapped, chunkSize);
+            mapped += chunkSize;
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = next;
+            chunk = chunks.length - 1;
+            position = 0;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow the string arena in " + file, e);
+        }
+    }
+
+    private void rehash() {
+        int[] grown = new int[table.length * 2];
+        Arrays.fill(grown, EMPTY);
+        int mask = grown.length - 1;
+        for (int handle = 0; handle < size; handle++) {
+            int slot = hashes[handle] & mask;
+            while (grown[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = handle;
+        }
+        table = grown;
+    }
+
+    // FNV-1a, finished with a murmur mix so that the low bits used for the slot are well spread
+    private static int hash(ByteBuffer bytes, int start, int end) {
+        int h = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (bytes.get(i) & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ohdsi.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// one pass over one vocabulary table - resolve the column indexes from the header first, then hand each row to forEach
+public interface TableScan extends Closeable {
+
+    CSVHeader getHeader();
+
+    default int column(String name) {
+        return getHeader().column(name);
+    }
+
+    void forEach(RowHandler handler) throws IOException;
+
+    // bytes of input the scan has been through, -1 where that isn't known (e.g. rows coming from a database)
+    default long bytesRead() {
+        return -1;
+    }
+
+    // only the rows whose column col passes filter - scans override this to test the raw field before splitting the row
+    default void forEach(int col, FieldPredicate filter, RowHandler handler) throws IOException {
+        forEach(row -> {
+            if (filter.test(row.buffer(), row.start(col), row.end(col))) {
+                handler.accept(row);
+            }
+        });
+    }
+}
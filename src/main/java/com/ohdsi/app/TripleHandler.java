@@ -0,0 +1,15 @@
+package com.ohdsi.app;
+
+// receives the RDF triples produced by AxiomTriples - subjects / objects starting with "_:" are blank nodes
+public interface TripleHandler {
+
+    void triple(String subject, String predicate, String object);
+
+    // language and datatype are both null for a plain string literal
+    void literal(String subject, String predicate, String value, String language, String datatype);
+
+    // a literal whose text is a StringArena string - handlers writing bytes can copy it without decoding it first
+    default void literal(String subject, String predicate, StringArena arena, int handle, String language, String datatype) {
+        literal(subject, predicate, arena.decode(handle), language, datatype);
+    }
+}
@@ -0,0 +1,118 @@
+package com.ohdsi.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/*
+    Buffered UTF-8 Writer that can also take bytes that are already UTF-8 (StringArena strings) and copy them into
+    its buffer, escaping on the way, so that they never have to be decoded to chars and encoded again.
+    An escape table maps each ascii byte to its replacement or null. Bytes >= 0x80 are copied as they are, since
+    UTF-8 multi-byte sequences never contain ascii.
+ */
+class Utf8Writer extends Writer {
+
+    private final OutputStream stream;
+    private final byte[] buffer;
+    private int count = 0;
+
+    Utf8Writer(OutputStream stream, int size) {
+        this.stream = stream;
+        this.buffer = new byte[size];
+    }
+
+    static String[] escapes(char[] chars, String[] replacements) {
+        String[] table = new String[128];
+        for (int i = 0; i < chars.length; i++) {
+            table[chars[i]] = replacements[i];
+        }
+        return table;
+    }
+
+    void writeEscaped(ByteBuffer bytes, int start, int length, String[] escapes) throws IOException {
+        for (int i = start; i < start + length; i++) {
+            byte b = bytes.get(i);
+            String replacement = b >= 0 ? escapes[b] : null;
+            if (replacement != null) {
+                write(replacement);
+            } else {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[count++] = b;
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (c < 0x80) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) c;
+        } else {
+            write(new char[]{(char) c}, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(String s, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || count == buffer.length) {
+                // the rare non-ascii strings go through the general path
+                write(s.substring(i, off + len).toCharArray(), 0, off + len - i);
+                return;
+            }
+            buffer[count++] = (byte) c;
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            if (count + 4 > buffer.length) {
+                flushBuffer();
+            }
+            int c = chars[i];
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < off + len && Character.isLowSurrogate(chars[i + 1])) {
+                int cp = Character.toCodePoint((char) c, chars[++i]);
+                buffer[count++] = (byte) (0xF0 | (cp >> 18));
+                buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate((char) c)) {
+                // unpaired surrogate, as the JDK's encoder replaces it
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        stream.write(buffer, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        stream.close();
+    }
+}
@@ -0,0 +1,9 @@
+package com.ohdsi.app;
+
+import java.io.IOException;
+
+// where the OMOP* loaders get their rows from - tables are named as in the CDM, e.g. "CONCEPT" or "CONCEPT_ANCESTOR"
+public interface VocabularySource {
+
+    TableScan open(String table) throws IOException;
+}
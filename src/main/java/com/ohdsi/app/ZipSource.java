@@ -0,0 +1,60 @@
+package com.ohdsi.app;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+    The Athena download as it comes, a zip of the csv files, read without extracting it. Each table is inflated
+    straight out of its entry on a thread of its own (ReadAheadInputStream) while a CSVRowCursor parses the blocks
+    already inflated, so no extracted copy is needed and no time goes into writing one before the load starts.
+
+    Entries are found by file name wherever they are in the zip, since some bundles put the files in a folder.
+    A ZipFile can read several entries at once, so the stages still scan their tables side by side.
+ */
+public class ZipSource implements VocabularySource, Closeable {
+
+    private final File file;
+    private final ZipFile zip;
+    private final Map<String, ZipEntry> entries = new HashMap<>();
+
+    public ZipSource(File file) throws IOException {
+        this.file = file;
+        this.zip = new ZipFile(file);
+        Enumeration<? extends ZipEntry> all = zip.entries();
+        while (all.hasMoreElements()) {
+            ZipEntry entry = all.nextElement();
+            if (!entry.isDirectory()) {
+                String name = entry.getName();
+                entries.putIfAbsent(name.substring(name.lastIndexOf('/') + 1), entry);
+            }
+        }
+    }
+
+    public static boolean isZip(File file) {
+        return file.isFile() && file.getName().toLowerCase().endsWith(".zip");
+    }
+
+    public boolean has(String fileName) {
+        return entries.containsKey(fileName);
+    }
+
+    @Override
+    public TableScan open(String table) throws IOException {
+        ZipEntry entry = entries.get(table + ".csv");
+        if (entry == null) {
+            throw new IOException(table + ".csv is not in " + file);
+        }
+        return CSVSource.readAhead(zip.getInputStream(entry), entry.getName());
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
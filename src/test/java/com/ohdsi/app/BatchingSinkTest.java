@@ -0,0 +1,70 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class BatchingSinkTest {
+
+    private static final OWLDataFactory FACTORY = OWLManager.getOWLDataFactory();
+
+    private static OWLAxiom declaration(int id) {
+        return FACTORY.getOWLDeclarationAxiom(FACTORY.getOWLClass(OWLLoader.omop_iri + Integer.toString(id)));
+    }
+
+    @Test
+    public void handsOnFullBatchesOnly() {
+        ShardedSinkTest.CollectingSink target = new ShardedSinkTest.CollectingSink();
+        BatchingSink batches = new BatchingSink(target, 10);
+        for (int id = 0; id < 25; id++) {
+            batches.add(declaration(id));
+        }
+        assertEquals(20, target.axioms.size());
+        assertEquals(20, batches.getCommitted());
+        assertEquals(5, batches.getBuffered());
+        batches.addAll(List.of(declaration(25), declaration(26), declaration(27), declaration(28), declaration(29)));
+        assertEquals(30, target.axioms.size());
+        assertEquals(0, batches.getBuffered());
+    }
+
+    // every thread leaves a partial batch behind, flush has to find all of them
+    @Test
+    public void flushEmptiesTheBufferOfEveryThread() throws Exception {
+        ShardedSinkTest.CollectingSink target = new ShardedSinkTest.CollectingSink();
+        BatchingSink batches = new BatchingSink(target, 64);
+        int threads = 4;
+        int perThread = 1_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t * perThread;
+                done.add(executor.submit(() -> {
+                    for (int id = first; id < first + perThread; id++) {
+                        batches.add(declaration(id));
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * (perThread % 64), batches.getBuffered());
+
+        batches.flush();
+        assertEquals(0, batches.getBuffered());
+        assertEquals(threads * perThread, batches.getCommitted());
+        assertEquals(threads * perThread, new HashSet<>(target.axioms).size());
+
+        batches.close();
+        assertEquals(threads * perThread, target.axioms.size(), "nothing is handed on twice");
+    }
+}
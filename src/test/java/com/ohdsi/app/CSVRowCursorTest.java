@@ -0,0 +1,86 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CSVRowCursorTest {
+
+    private static CSVRowCursor cursor(String content) throws IOException {
+        return new CSVRowCursor(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void readsTabDelimitedRows() throws IOException {
+        try (CSVRowCursor row = cursor("concept_id\tconcept_name\tvocabulary_id\r\n"
+                + "4118017\tFracture, \"left\"\tSNOMED\r\n"
+                + "\n"
+                + "-12\tPréparation\tLOINC")) {
+            int id = row.column("concept_id");
+            int name = row.column("concept_name");
+            int vocab = row.column("vocabulary_id");
+            ByteStringMap<String> vocabs = new ByteStringMap<>();
+            vocabs.put("SNOMED", "snomed");
+
+            assertTrue(row.next());
+            assertEquals(4118017, row.getInt(id));
+            assertEquals("Fracture, \"left\"", row.getString(name));
+            assertEquals("snomed", row.lookup(vocab, vocabs));
+            assertTrue(row.fieldEquals(vocab, "SNOMED".getBytes(StandardCharsets.UTF_8)));
+
+            assertTrue(row.next());
+            assertEquals(-12, row.getInt(id));
+            assertEquals("Préparation", row.getCharSequence(name).toString());
+            assertNull(row.lookup(vocab, vocabs));
+            assertFalse(row.next());
+        }
+    }
+
+    @Test
+    public void filtersOnTheRawField() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (CSVRowCursor rows = cursor("id\tlevel\tname\n1\t1\ta\n2\t2\tb\n3\t01\tc\n4\n5\tx\te\n")) {
+            int name = rows.column("name");
+            rows.forEach(rows.column("level"), FieldPredicate.isInt(1), row -> names.add(row.getString(name)));
+        }
+        assertEquals(List.of("a", "c"), names);
+        try (CSVRowCursor rows = cursor("id,vocabulary_id\n1,SNOMED\n2,MeSH\n3,LOINC\n")) {
+            int vocab = rows.column("vocabulary_id");
+            assertTrue(rows.next(vocab, FieldPredicate.anyOf(List.of("LOINC", "RxNorm"))));
+            assertEquals(3, rows.getInt(rows.column("id")));
+            assertFalse(rows.next(vocab, FieldPredicate.equalTo("SNOMED")));
+        }
+    }
+
+    @Test
+    public void commaDelimitedWithMissingFields() throws IOException {
+        try (CSVRowCursor row = cursor("a,b,c\n1,  ,\n2\n")) {
+            assertTrue(row.next());
+            assertTrue(row.isBlank(row.column("b")));
+            assertTrue(row.isEmpty(row.column("c")));
+            assertTrue(row.next());
+            assertEquals(2, row.getInt(row.column("a")));
+            assertTrue(row.isEmpty(row.column("c")));
+            assertThrows(NumberFormatException.class, () -> row.getInt(row.column("b")));
+            assertFalse(row.next());
+        }
+    }
+
+    @Test
+    public void linesLongerThanTheBuffer() throws IOException {
+        String longName = "x".repeat(3 << 20);
+        try (CSVRowCursor row = cursor("id\tname\n1\t" + longName + "\n2\tshort\n")) {
+            assertTrue(row.next());
+            assertEquals(longName.length(), row.getString(1).length());
+            assertTrue(row.next());
+            assertEquals("short", row.getString(1));
+            assertFalse(row.next());
+        }
+    }
+}
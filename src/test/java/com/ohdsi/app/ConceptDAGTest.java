@@ -0,0 +1,62 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConceptDAGTest {
+
+    //      1
+    //     / \
+    //    2   3
+    //     \ / \
+    //      4   5
+    //      |
+    //      6
+    private static ConceptDAG diamond() {
+        ConceptDAG.Builder builder = new ConceptDAG.Builder();
+        builder.add(2, 1);
+        builder.add(3, 1);
+        builder.add(4, 2);
+        builder.add(4, 3);
+        builder.add(5, 3);
+        builder.add(6, 4);
+        return builder.build();
+    }
+
+    private static List<String> ancestors(ConceptDAG dag, int id, int maxDepth) {
+        List<String> visited = new ArrayList<>();
+        dag.ancestors(id, maxDepth, (ancestor, depth) -> visited.add(ancestor + "@" + depth));
+        return visited;
+    }
+
+    @Test
+    public void walksLevelByLevel() {
+        ConceptDAG dag = diamond();
+        assertEquals(6, dag.size());
+        assertEquals(6, dag.edgeCount());
+        // 1 is reached through both 2 and 3 but only visited once, at its min_levels_of_separation
+        assertEquals(List.of("4@1", "2@2", "3@2", "1@3"), ancestors(dag, 6, OMOPAncestry.FULL_CLOSURE));
+        assertEquals(List.of("4@1", "2@2", "3@2"), ancestors(dag, 6, 2));
+        assertEquals(List.of(), ancestors(dag, 1, OMOPAncestry.FULL_CLOSURE));
+        assertEquals(List.of(), ancestors(dag, 99, OMOPAncestry.FULL_CLOSURE));
+
+        List<Integer> descendants = new ArrayList<>();
+        dag.descendants(3, OMOPAncestry.FULL_CLOSURE, (id, depth) -> descendants.add(id));
+        assertEquals(List.of(4, 5, 6), descendants);
+    }
+
+    @Test
+    public void answersDescendantQueries() {
+        ConceptDAG dag = diamond();
+        assertTrue(dag.isDescendantOf(6, 1));
+        assertTrue(dag.isDescendantOf(5, 3));
+        assertFalse(dag.isDescendantOf(5, 2));
+        assertFalse(dag.isDescendantOf(1, 6));
+        assertFalse(dag.isDescendantOf(4, 4));
+        assertFalse(dag.isDescendantOf(4, 99));
+    }
+}
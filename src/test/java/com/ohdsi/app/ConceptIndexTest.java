@@ -0,0 +1,67 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import java.util.Random;
+
+public class ConceptIndexTest {
+
+    private final OWLDataFactory dataFactory = OWLManager.getOWLDataFactory();
+
+    @Test
+    public void growsAndKeepsOrdinals() {
+        ConceptIndex index = new ConceptIndex(4);
+        for (int id = 0; id < 100_000; id += 3) {
+            OWLClass c = dataFactory.getOWLClass(OWLLoader.omop_iri + Integer.toString(id));
+            assertEquals(id / 3, index.put(id, c));
+        }
+        assertEquals(33_334, index.size());
+        assertEquals(OWLLoader.omop_iri + "99999", index.getByID(99_999).getIRI().toString());
+        assertEquals(99_999, index.idAt(index.ordinal(99_999)));
+        assertNull(index.getByID(1));
+        assertFalse(index.contains(-3));
+    }
+
+    @Test
+    public void reAddingKeepsFirstOrdinal() {
+        ConceptIndex index = new ConceptIndex();
+        OWLClass a = dataFactory.getOWLClass(OWLLoader.omop_iri + "a");
+        OWLClass b = dataFactory.getOWLClass(OWLLoader.omop_iri + "b");
+        assertEquals(0, index.put(0, a));
+        assertEquals(1, index.put(Integer.MIN_VALUE, b));
+        assertEquals(0, index.put(0, b));
+        assertSame(a, index.getByID(0));
+        assertSame(b, index.getByID(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void spilledConceptsKeepTheirOrdinals() {
+        ConceptIndex index = new ConceptIndex(16);
+        index.spillAfter(1000, id -> dataFactory.getOWLClass(OWLLoader.omop_iri + Integer.toString(id)));
+        Random random = new Random(7);
+        int[] ids = new int[10_500];
+        for (int i = 0; i < ids.length; i++) {
+            do {
+                ids[i] = random.nextInt();
+            } while (index.contains(ids[i]));
+            assertEquals(i, index.put(ids[i], null, i % 3));
+        }
+        assertEquals(10, index.getSpills());
+        assertEquals(ids.length, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, index.ordinal(ids[i]));
+            assertEquals(ids[i], index.idAt(i));
+            assertEquals(i % 3, index.vocabAt(i));
+            assertEquals(i, index.put(ids[i], null, 0));
+        }
+        assertEquals(OWLLoader.omop_iri + Integer.toString(ids[42]), index.getByID(ids[42]).getIRI().toString());
+        assertEquals(ids.length, index.size());
+        assertFalse(index.contains(Integer.MIN_VALUE));
+        assertFalse(index.contains(Integer.MAX_VALUE));
+    }
+}
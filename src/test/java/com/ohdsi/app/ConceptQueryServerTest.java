@@ -0,0 +1,82 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+public class ConceptQueryServerTest {
+
+    private ConceptQueries queries;
+    private ConceptQueryServer server;
+
+    // 1 <- 2 <- 3, 4 not loaded in between 1 and 5, 9 maps to 3
+    @BeforeEach
+    public void start() throws IOException {
+        OWLDataFactory dataFactory = OWLManager.getOWLDataFactory();
+        ConceptIndex index = new ConceptIndex();
+        ConceptCodes codes = new ConceptCodes(List.of("SNOMED", "ICD10CM"));
+        for (int id : new int[]{1, 2, 3, 5, 9}) {
+            int vocab = id == 9 ? 1 : 0;
+            codes.put(index.put(id, dataFactory.getOWLClass(OWLLoader.omop_iri + Integer.toString(id)), vocab), vocab, id, "C" + id);
+        }
+        ConceptDAG.Builder hierarchy = new ConceptDAG.Builder();
+        hierarchy.add(2, 1);
+        hierarchy.add(3, 2);
+        hierarchy.add(4, 1);
+        hierarchy.add(5, 4);
+        ConceptDAG.Builder mappings = new ConceptDAG.Builder();
+        mappings.add(9, 3);
+        queries = new ConceptQueries(index, hierarchy.build(), mappings.build(), codes, 2);
+        server = new ConceptQueryServer(queries, 0, 2);
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).build();
+        return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void answersQueries() throws IOException, InterruptedException {
+        assertEquals("{\"id\":3,\"ancestors\":[2,1]}", get("/ancestors?id=3").body());
+        assertEquals("{\"id\":3,\"ancestors\":[2]}", get("/ancestors?id=3&depth=1").body());
+        // 4 is not loaded, but 5 is still found through it
+        assertEquals("{\"id\":1,\"descendants\":[2,3,5]}", get("/descendants?id=1").body());
+        assertEquals("{\"id\":5,\"ancestor\":1,\"descendant\":true}", get("/is-descendant?id=5&ancestor=1").body());
+        assertEquals("{\"id\":5,\"ancestor\":2,\"descendant\":false}", get("/is-descendant?id=5&ancestor=2").body());
+        assertEquals("{\"vocab\":\"icd10cm\",\"code\":\"C9\",\"id\":9}", get("/resolve?vocab=icd10cm&code=C9").body());
+        assertEquals("{\"vocab\":\"SNOMED\",\"code\":\"C9\",\"id\":-1}", get("/resolve?vocab=SNOMED&code=C9").body());
+        assertEquals("{\"id\":9,\"mapsTo\":[3]}", get("/maps-to?id=9").body());
+
+        HttpResponse<String> bad = get("/ancestors?id=x");
+        assertEquals(400, bad.statusCode());
+        assertEquals(400, get("/resolve?vocab=SNOMED").statusCode());
+    }
+
+    @Test
+    public void cachedSubtreesGiveTheSameAnswers() {
+        for (int round = 0; round < 2; round++) {
+            assertTrue(queries.isDescendantOf(3, 1));
+            assertTrue(queries.isDescendantOf(3, 2));
+            assertFalse(queries.isDescendantOf(1, 3));
+            assertFalse(queries.isDescendantOf(5, 2));
+        }
+        assertEquals("C9", queries.code(9));
+    }
+}
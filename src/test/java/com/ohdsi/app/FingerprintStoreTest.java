@@ -0,0 +1,58 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+public class FingerprintStoreTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void savesAndLoads() throws IOException {
+        FingerprintStore store = new FingerprintStore(4);
+        for (int id = 0; id < 10_000; id++) {
+            store.mix(id, id * 31L);
+            store.setVocab(id, id % 5);
+        }
+        store.mix(AxiomRouting.NO_CONCEPT, 7);
+        File file = new File(dir, "store.fp");
+        store.save(file);
+
+        FingerprintStore loaded = FingerprintStore.load(file);
+        assertEquals(10_001, loaded.size());
+        assertEquals(9_999 * 31L, loaded.fingerprint(9_999));
+        assertEquals(4, loaded.vocab(9_999));
+        assertEquals(7, loaded.fingerprint(AxiomRouting.NO_CONCEPT));
+        assertEquals(-1, loaded.vocab(AxiomRouting.NO_CONCEPT));
+        assertFalse(loaded.contains(10_000));
+    }
+
+    @Test
+    public void diffsByConcept() {
+        FingerprintStore previous = new FingerprintStore(4);
+        FingerprintStore current = new FingerprintStore(4);
+        previous.mix(1, 10);
+        previous.mix(2, 20);
+        previous.setVocab(2, 3);
+        previous.mix(3, 30);
+        current.mix(1, 10);
+        current.mix(2, 21);
+        current.mix(4, 40);
+
+        ConceptDelta delta = new ConceptDelta(previous, current);
+        assertFalse(delta.emits(1));
+        assertFalse(delta.retracts(1));
+        assertTrue(delta.emits(2) && delta.retracts(2));
+        assertTrue(delta.retracts(3) && !delta.emits(3));
+        assertTrue(delta.emits(4) && !delta.retracts(4));
+        assertArrayEquals(new int[]{2, 3}, delta.retracted());
+        assertTrue(delta.retractsFrom(3));
+        assertFalse(delta.retractsFrom(0));
+    }
+}
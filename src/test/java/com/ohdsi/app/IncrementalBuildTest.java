@@ -0,0 +1,72 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+public class IncrementalBuildTest {
+
+    private static final String LABEL = "<http://www.w3.org/2000/01/rdf-schema#label>";
+
+    @TempDir
+    File tmp;
+
+    // two SNOMED concepts and a LOINC one, the name of concept 2 as given
+    private File vocabulary(String name) throws Exception {
+        return TestVocabulary.write(new File(tmp, "vocab"),
+                List.of("1\tFracture\tCondition\tSNOMED\tClinical Finding\t1",
+                        "2\t" + name + "\tCondition\tSNOMED\tClinical Finding\t2",
+                        "3\tGlucose\tCondition\tLOINC\tClinical Finding\t3"),
+                List.of("1\t2\t1"), List.of(), List.of());
+    }
+
+    private LoaderOptions options(File vocab, boolean sharded) {
+        LoaderOptions options = new LoaderOptions(tmp.getPath(), "omop.nt", vocab.getPath());
+        options.vocabs = List.of("SNOMED", "LOINC");
+        options.streamFormat = StreamingOntologyWriter.Format.NTRIPLES;
+        options.threads = 1;
+        options.sharded = sharded;
+        options.incremental = new File(tmp, "omop.fingerprints");
+        return options;
+    }
+
+    private String read(String name) throws Exception {
+        return Files.readString(new File(tmp, name).toPath());
+    }
+
+    @Test
+    public void patchGoesNextToTheFirstRunsOutput() throws Exception {
+        new OWLLoader(options(vocabulary("Fracture of femur"), false)).createOHDSIOntology();
+        String full = read("omop.nt");
+        assertTrue(full.contains(LABEL + " \"Fracture of femur\""));
+        assertFalse(new File(tmp, "omop.nt.patch").exists());
+
+        new OWLLoader(options(vocabulary("Fracture of the femur"), false)).createOHDSIOntology();
+        assertEquals(full, read("omop.nt"), "the full ontology of the first run stays as it is");
+        String patch = read("omop.nt.patch");
+        assertTrue(patch.contains(LABEL + " \"Fracture of the femur\""));
+        assertFalse(patch.contains("\"Fracture of femur\""));
+        assertFalse(patch.contains("\"Glucose\""), "unchanged concepts are not written again");
+        assertEquals("2\n", read("omop.nt.retract").replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void shardedPatchRewritesOnlyTheChangedShard() throws Exception {
+        new OWLLoader(options(vocabulary("Fracture of femur"), true)).createOHDSIOntology();
+        String loinc = read("omop_loinc.nt");
+        assertTrue(read("omop_snomed.nt").contains("\"Fracture of femur\""));
+
+        new OWLLoader(options(vocabulary("Fracture of the femur"), true)).createOHDSIOntology();
+        String snomed = read("omop_snomed.nt");
+        assertTrue(snomed.contains(LABEL + " \"Fracture of the femur\""));
+        assertFalse(snomed.contains("\"Fracture of femur\""));
+        assertTrue(snomed.contains(LABEL + " \"Fracture\""), "the unchanged concept of the shard is kept");
+        assertEquals(loinc, read("omop_loinc.nt"));
+        assertFalse(new File(tmp, "omop.nt.patch").exists());
+    }
+}
@@ -0,0 +1,84 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// runs against an in-memory H2 database
+public class JdbcSourceTest {
+
+    private static final String URL = "jdbc:h2:mem:vocab;DB_CLOSE_DELAY=-1";
+
+    private Connection connection;
+
+    @BeforeEach
+    public void createTables() throws SQLException {
+        connection = DriverManager.getConnection(URL);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA vocab");
+            statement.execute("CREATE TABLE vocab.concept (concept_id INTEGER, concept_name VARCHAR(255), vocabulary_id VARCHAR(20))");
+            statement.execute("INSERT INTO vocab.concept VALUES (1, 'Disease', 'SNOMED'), (2, NULL, 'LOINC'), (3, 'Préparation', 'RxNorm'), (4, 'Other', 'SNOMED')");
+            statement.execute("CREATE TABLE vocab.concept_ancestor (ancestor_concept_id INTEGER, descendant_concept_id INTEGER, min_levels_of_separation INTEGER)");
+            statement.execute("INSERT INTO vocab.concept_ancestor VALUES (1, 4, 1), (1, 3, 2), (2, 3, 1)");
+        }
+    }
+
+    @AfterEach
+    public void dropTables() throws SQLException {
+        if (connection != null) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP SCHEMA vocab CASCADE");
+            }
+            connection.close();
+        }
+    }
+
+    private List<String> concepts(TableScan scan, FieldPredicate filter) throws IOException {
+        int id = scan.column("concept_id");
+        int name = scan.column("concept_name");
+        int vocab = scan.column("vocabulary_id");
+        List<String> rows = new ArrayList<>();
+        RowHandler handler = row -> rows.add(row.getInt(id) + "|" + row.getString(name) + "|" + row.getString(vocab));
+        if (filter == null) {
+            scan.forEach(handler);
+        } else {
+            scan.forEach(vocab, filter, handler);
+        }
+        return rows;
+    }
+
+    @Test
+    public void readsRowsLikeTheCsvFiles() throws IOException {
+        VocabularySource source = new JdbcSource(URL, null, null, "vocab", 2);
+        try (TableScan scan = source.open("CONCEPT")) {
+            assertEquals(List.of("1|Disease|SNOMED", "2||LOINC", "3|Préparation|RxNorm", "4|Other|SNOMED"), concepts(scan, null));
+        }
+    }
+
+    @Test
+    public void filtersInTheQuery() throws IOException {
+        VocabularySource source = new JdbcSource(URL, null, null, "vocab", 2);
+        try (TableScan scan = source.open("CONCEPT")) {
+            assertEquals(List.of("1|Disease|SNOMED", "4|Other|SNOMED"), concepts(scan, FieldPredicate.equalTo("SNOMED")));
+            assertEquals(List.of("2||LOINC", "3|Préparation|RxNorm"), concepts(scan, FieldPredicate.anyOf(List.of("LOINC", "RxNorm"))));
+            // arbitrary predicates are tested on the rows instead
+            assertEquals(List.of("2||LOINC"), concepts(scan, (buffer, start, end) -> end - start == 5));
+        }
+        try (TableScan scan = source.open("CONCEPT_ANCESTOR")) {
+            int descendant = scan.column("descendant_concept_id");
+            List<Integer> rows = new ArrayList<>();
+            scan.forEach(scan.column("min_levels_of_separation"), FieldPredicate.isInt(1), row -> rows.add(row.getInt(descendant)));
+            assertEquals(List.of(4, 3), rows);
+        }
+    }
+}
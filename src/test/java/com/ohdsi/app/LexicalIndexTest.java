@@ -0,0 +1,58 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class LexicalIndexTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void normalizesCaseAccentsAndPunctuation() {
+        assertEquals("sjogren s syndrome", LexicalIndex.normalize("  Sjögren's   SYNDROME "));
+        assertEquals("t2 n0 m0", LexicalIndex.normalize("T2,N0-M0"));
+        assertEquals("", LexicalIndex.normalize("--"));
+    }
+
+    @Test
+    public void exactPrefixAndWordLookups() throws IOException {
+        File file = new File(tmp, "test.lexicon");
+        try (LexicalIndexWriter writer = new LexicalIndexWriter()) {
+            writer.add(4112853, "Malignant tumor of breast");
+            writer.add(4112853, "Malignant neoplasm of breast");
+            writer.add(4112853, "Malignant neoplasm of breast"); // the same pair twice is stored once
+            writer.add(443392, "Malignant neoplastic disease");
+            writer.add(4180790, "Malignant neoplasm of colon");
+            writer.add(80809, "Rheumatoid arthritis");
+            // enough terms for several front coded blocks
+            for (int i = 0; i < 100; i++) {
+                writer.add(1000 + i, "Stage " + i + " disease");
+            }
+            writer.write(file);
+        }
+
+        LexicalIndex lexicon = LexicalIndex.open(file);
+        assertEquals(105, lexicon.termCount());
+        assertArrayEquals(new int[]{4112853}, lexicon.lookup("malignant NEOPLASM of breast."));
+        assertArrayEquals(new int[0], lexicon.lookup("malignant neoplasm"));
+        assertArrayEquals(new int[]{1042}, lexicon.lookup("Stage 42 disease"));
+
+        int[] prefixed = lexicon.prefix("Malignant neo", 10);
+        Arrays.sort(prefixed);
+        assertArrayEquals(new int[]{443392, 4112853, 4180790}, prefixed);
+        assertEquals(2, lexicon.prefix("malignant", 2).length);
+        assertEquals(11, lexicon.prefix("stage 9", 100).length); // 9 and 90 - 99
+        assertArrayEquals(new int[0], lexicon.prefix("zzz", 10));
+
+        assertArrayEquals(new int[]{4112853, 4180790}, lexicon.tokens("neoplasm malignant"));
+        assertArrayEquals(new int[]{4112853}, lexicon.tokens("breast tumor"));
+        assertArrayEquals(new int[0], lexicon.tokens("breast arthritis"));
+    }
+}
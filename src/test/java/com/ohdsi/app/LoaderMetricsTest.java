@@ -0,0 +1,52 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoaderMetricsTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void countsRowsAndBytesPerTableAndStage() throws IOException {
+        StringBuilder sb = new StringBuilder("concept_id\tvocabulary_id\n");
+        for (int i = 1; i <= 1000; i++) {
+            sb.append(i).append('\t').append(i % 4 == 0 ? "SNOMED" : "LOINC").append('\n');
+        }
+        File file = new File(tmp, "CONCEPT.csv");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        LoaderMetrics metrics = new LoaderMetrics();
+        VocabularySource source = metrics.source(new CSVSource(tmp.getPath()));
+        AtomicInteger axioms = new AtomicInteger();
+        LoaderMetrics.Stage stage = metrics.startStage("concepts", axioms::get);
+        try (TableScan scan = source.open("CONCEPT")) {
+            scan.forEach(scan.column("vocabulary_id"), FieldPredicate.equalTo("SNOMED"), row -> axioms.incrementAndGet());
+        }
+        metrics.endStage(stage);
+
+        List<LoaderMetrics.Table> tables = metrics.getTables();
+        assertEquals(1, tables.size());
+        assertEquals(1000, tables.get(0).getRowsRead());
+        assertEquals(250, tables.get(0).getRowsPassed());
+        assertEquals(file.length(), tables.get(0).getBytes());
+        assertEquals(250, stage.getAxioms());
+
+        File report = new File(tmp, "run.metrics.json");
+        metrics.writeReport(report);
+        String json = Files.readString(report.toPath());
+        assertTrue(json.contains("{\"name\":\"concepts\","));
+        assertTrue(json.contains("\"axioms\":250,"));
+        assertTrue(json.contains("{\"table\":\"CONCEPT\",\"stage\":\"concepts\",\"rowsRead\":1000,\"rowsFiltered\":750,\"rowsPassed\":250,\"bytes\":" + file.length() + ","));
+    }
+}
@@ -0,0 +1,111 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+public class LoaderPipelineTest {
+
+    @Test
+    public void stagesStartOnceTheirDependenciesAreDone() throws Exception {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        // the three dependent stages only get past it when they run side by side
+        CyclicBarrier together = new CyclicBarrier(3);
+        new LoaderPipeline()
+                .stage("metadata", () -> events.add("metadata"))
+                .stage("concepts", () -> {
+                    sleep(50);
+                    events.add("concepts");
+                })
+                .stage("ancestry", () -> {
+                    await(together);
+                    events.add("ancestry");
+                }, "concepts")
+                .stage("relationships", () -> {
+                    await(together);
+                    events.add("relationships");
+                }, "concepts", "metadata")
+                .stage("synonyms", () -> {
+                    await(together);
+                    events.add("synonyms");
+                }, "concepts")
+                .run();
+
+        assertEquals(5, events.size());
+        int concepts = events.indexOf("concepts");
+        int metadata = events.indexOf("metadata");
+        for (String dependent : List.of("ancestry", "relationships", "synonyms")) {
+            assertTrue(events.indexOf(dependent) > concepts, events.toString());
+        }
+        assertTrue(events.indexOf("relationships") > metadata, events.toString());
+    }
+
+    @Test
+    public void aFailedStageSkipsItsDependents() {
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        IOException failure = new IOException("CONCEPT.csv is truncated");
+        IOException thrown = assertThrows(IOException.class, () -> new LoaderPipeline()
+                .stage("metadata", () -> ran.add("metadata"))
+                .stage("concepts", () -> {
+                    throw failure;
+                })
+                .stage("ancestry", () -> ran.add("ancestry"), "concepts")
+                .run());
+        assertSame(failure, thrown);
+        assertEquals(List.of("metadata"), ran);
+    }
+
+    @Test
+    public void theFirstFailureIsRethrownWithTheLaterOnesSuppressed() {
+        CountDownLatch firstFailed = new CountDownLatch(1);
+        IllegalStateException first = new IllegalStateException("synonyms failed");
+        IOException later = new IOException("ancestry failed");
+        // ancestry is added first but fails second - synonyms counts down just before it throws, so ancestry gives
+        // the pipeline a moment to take in that failure
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> new LoaderPipeline()
+                .stage("ancestry", () -> {
+                    try {
+                        firstFailed.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    sleep(200);
+                    throw later;
+                })
+                .stage("synonyms", () -> {
+                    firstFailed.countDown();
+                    throw first;
+                })
+                .run());
+        assertSame(first, thrown);
+        assertArrayEquals(new Throwable[]{later}, thrown.getSuppressed());
+    }
+
+    @Test
+    public void unknownDependenciesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LoaderPipeline().stage("ancestry", () -> {
+        }, "concepts"));
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) throws IOException {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IOException("The stages did not run at the same time", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MappedCSVScannerTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void everyRowSeenOnceAcrossSplits() throws IOException {
+        StringBuilder sb = new StringBuilder("ancestor_concept_id\tdescendant_concept_id\tmin_levels_of_separation\r\n");
+        long expectedSum = 0;
+        for (int i = 1; i <= 20_000; i++) {
+            sb.append(i).append('\t').append(i * 2).append('\t').append(i % 3).append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i % 1000 == 0) {
+                sb.append('\n'); // stray empty lines are skipped
+            }
+            expectedSum += i;
+        }
+        File file = new File(tmp, "CONCEPT_ANCESTOR.csv");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (MappedCSVScanner scan = new MappedCSVScanner(file, pool, 4096)) {
+            assertTrue(scan.split().size() > 10);
+            int ancestor = scan.column("ancestor_concept_id");
+            int descendant = scan.column("descendant_concept_id");
+            int level = scan.column("min_levels_of_separation");
+            AtomicInteger rows = new AtomicInteger();
+            AtomicLong sum = new AtomicLong();
+            scan.forEach(row -> {
+                assertEquals(row.getInt(ancestor) * 2, row.getInt(descendant));
+                assertEquals(row.getInt(ancestor) % 3, row.getInt(level));
+                rows.incrementAndGet();
+                sum.addAndGet(row.getInt(ancestor));
+            });
+            assertEquals(20_000, rows.get());
+            assertEquals(expectedSum, sum.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.Random;
+
+public class OMOPConceptsTest {
+
+    private static String regexSafeCode(String code) {
+        return code.replaceAll("[^A-Za-z0-9_.-]", "_").replaceAll("_+", "_").replaceAll("^_|_$", "");
+    }
+
+    @Test
+    public void safeCodeMatchesTheRegexes() {
+        String[] codes = {"", "_", "__", "125605004", "M84.642", "718-7", "  weird code //x ", "_a_", "a__b", "a _b",
+                "é", "x😀y", "__a__", "a_", "_a", "a/b/c", "C12345"};
+        for (String code : codes) {
+            assertEquals(regexSafeCode(code), OMOPConcepts.safeCode(code), code);
+        }
+        String alphabet = "aZ09_.- /éÅ😀#";
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(8); j > 0; j--) {
+                int k = random.nextInt(alphabet.length() - 1);
+                sb.append(alphabet.charAt(k));
+                if (Character.isHighSurrogate(alphabet.charAt(k))) {
+                    sb.append(alphabet.charAt(k + 1));
+                }
+            }
+            String code = sb.toString();
+            assertEquals(regexSafeCode(code), OMOPConcepts.safeCode(code), code);
+        }
+    }
+
+    @Test
+    public void safeCodesAreNotCopied() {
+        String code = "M84.642";
+        assertSame(code, OMOPConcepts.safeCode(code));
+    }
+
+    @Test
+    public void namespaceAndCodeMakeTheSameIRI() {
+        for (String code : new String[]{"718-7", "M84.642", "125605004", "C12345", ""}) {
+            assertEquals(IRI.create("https://loinc.org/" + code), IRI.create("https://loinc.org/", code));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+public class OMOPRelationshipsTest {
+
+    private static final String TERMS = "https://athena.ohdsi.org/search-terms/terms/";
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void propertyNamesFollowTheRelationshipIds() {
+        assertEquals("has_finding_site", OMOPRelationships.propertyName("Has finding site"));
+        assertEquals("snomed_rxnorm_eq", OMOPRelationships.propertyName("SNOMED - RxNorm eq"));
+        assertEquals("maps_to_value", OMOPRelationships.propertyName("Maps to value"));
+    }
+
+    @Test
+    public void writesEachConfiguredRelationshipFromOneScan() throws Exception {
+        File vocab = TestVocabulary.write(new File(tmp, "vocab"),
+                List.of("1\tFracture of femur\tCondition\tSNOMED\tClinical Finding\t1",
+                        "2\tFemur\tCondition\tSNOMED\tClinical Finding\t2",
+                        "3\tFracture\tCondition\tSNOMED\tClinical Finding\t3",
+                        "4\tOld fracture of femur\tCondition\tSNOMED\tClinical Finding\t4"),
+                List.of(),
+                List.of("1\t2\tHas finding site",
+                        "1\t3\tHas asso morph",
+                        "4\t1\tMaps to",
+                        "2\t1\tFinding site of",
+                        "1\t99\tHas finding site"),
+                List.of());
+        TestVocabulary.defineRelationships(vocab, "Has finding site", "Has asso morph");
+
+        LoaderOptions options = new LoaderOptions(tmp.getPath(), "omop.nt", vocab.getPath());
+        options.vocabs = List.of("SNOMED");
+        options.relationships = List.of("Maps to", "Has finding site", "Has asso morph");
+        options.streamFormat = StreamingOntologyWriter.Format.NTRIPLES;
+        options.threads = 1;
+        new OWLLoader(options).createOHDSIOntology();
+
+        String nt = Files.readString(new File(tmp, "omop.nt").toPath());
+        assertTrue(nt.contains("<" + TERMS + "has_finding_site> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://www.w3.org/2002/07/owl#ObjectProperty> ."));
+        assertTrue(nt.contains("<" + TERMS + "has_asso_morph> <http://www.w3.org/2000/01/rdf-schema#label> \"Has asso morph\"@en ."));
+        assertEquals(1, count(nt, "owl#onProperty> <" + TERMS + "has_finding_site>"), "the row to concept 99 is not loaded");
+        assertEquals(1, count(nt, "owl#onProperty> <" + TERMS + "has_asso_morph>"));
+        assertEquals(0, count(nt, "finding_site_of"));
+        assertTrue(nt.contains("<" + TERMS + "4> <http://www.w3.org/2004/02/skos/core#exactMatch> <" + TERMS + "1> ."));
+    }
+
+    private static int count(String text, String part) {
+        int n = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            n++;
+        }
+        return n;
+    }
+}
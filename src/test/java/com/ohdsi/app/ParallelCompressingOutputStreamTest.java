@@ -0,0 +1,100 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+public class ParallelCompressingOutputStreamTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void gzipBlocksReadBackAsOneStream() throws IOException {
+        roundTrip(new File(tmp, "omop.nt.gz"));
+    }
+
+    @Test
+    public void zstdFramesReadBackAsOneStream() throws IOException {
+        roundTrip(new File(tmp, "omop.nt.zst"));
+    }
+
+    @Test
+    public void compressionFollowsTheSuffix() {
+        assertEquals(Compression.GZIP, Compression.of("omop.owl.gz"));
+        assertEquals(Compression.ZSTD, Compression.of("omop.ttl.zst"));
+        assertEquals(Compression.NONE, Compression.of("omop.owl"));
+    }
+
+    // more files than the pool has places for blocks, fed in turns from one thread as the shards of a run are - none
+    // may wait for another, and each still reads back as written
+    @Test
+    public void streamsSharingAPoolReadBackAsWritten() throws IOException {
+        int files = 5;
+        byte[][] expected = new byte[files][];
+        File[] written = new File[files];
+        OutputStream[] outs = new OutputStream[files];
+        try (CompressionPool pool = new CompressionPool(1)) {
+            for (int f = 0; f < files; f++) {
+                written[f] = new File(tmp, "omop_" + f + (f % 2 == 0 ? ".nt.gz" : ".nt.zst"));
+                outs[f] = Compression.of(written[f]).output(written[f], pool);
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; sb.length() < 2.5 * ParallelCompressingOutputStream.BLOCK_SIZE; i++) {
+                    sb.append("<https://athena.ohdsi.org/search-terms/terms/").append(i).append("> <omop_").append(f).append("> .\n");
+                }
+                expected[f] = sb.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            int piece = 100_003;
+            for (int off = 0; ; off += piece) {
+                boolean any = false;
+                for (int f = 0; f < files; f++) {
+                    if (off < expected[f].length) {
+                        outs[f].write(expected[f], off, Math.min(piece, expected[f].length - off));
+                        any = true;
+                    }
+                }
+                if (!any) {
+                    break;
+                }
+            }
+            for (OutputStream out : outs) {
+                out.close();
+            }
+            assertTrue(pool.tryAcquire() && pool.tryAcquire(), "every stream gave its places back");
+        }
+        for (int f = 0; f < files; f++) {
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            try (InputStream in = Compression.of(written[f]).input(written[f])) {
+                in.transferTo(actual);
+            }
+            assertArrayEquals(expected[f], actual.toByteArray());
+        }
+    }
+
+    // a few blocks and a bit, written in uneven pieces, so that every block boundary falls inside a write
+    private void roundTrip(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 3.5 * ParallelCompressingOutputStream.BLOCK_SIZE; i++) {
+            sb.append("<https://athena.ohdsi.org/search-terms/terms/").append(i)
+                    .append("> <http://www.w3.org/2000/01/rdf-schema#label> \"Concept ").append(i * 7919 % 100003).append("\"@en .\n");
+        }
+        byte[] expected = sb.toString().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = Compression.of(file).output(file, 3)) {
+            for (int off = 0; off < expected.length; ) {
+                int n = Math.min(expected.length - off, 1 + off % 70_001);
+                out.write(expected, off, n);
+                off += n;
+            }
+        }
+        assertTrue(file.length() < expected.length / 2);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream in = Compression.of(file).input(file)) {
+            in.transferTo(actual);
+        }
+        assertArrayEquals(expected, actual.toByteArray());
+    }
+}
@@ -0,0 +1,89 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+public class PropertyConfigTest {
+
+    private static final String TERMS = "https://athena.ohdsi.org/search-terms/terms/";
+    private static final String IN_DOMAIN = "<" + TERMS + "in_domain>";
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void unknownDomainsGetNoRestrictionAndAreReported() throws Exception {
+        // Observation is not in DOMAIN
+        File vocab = TestVocabulary.write(new File(tmp, "vocab"),
+                List.of("1\tFracture\tCondition\tSNOMED\tClinical Finding\t1",
+                        "2\tSmoker\tObservation\tSNOMED\tClinical Finding\t2",
+                        "3\tNon-smoker\tObservation\tSNOMED\tClinical Finding\t3"),
+                List.of(), List.of(), List.of());
+
+        LoaderOptions options = new LoaderOptions(tmp.getPath(), "omop.nt", vocab.getPath());
+        options.vocabs = List.of("SNOMED");
+        options.streamFormat = StreamingOntologyWriter.Format.NTRIPLES;
+        options.threads = 1;
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+        try {
+            new OWLLoader(options).createOHDSIOntology();
+        } finally {
+            System.setOut(out);
+        }
+
+        String nt = Files.readString(new File(tmp, "omop.nt").toPath());
+        assertEquals(1, count(nt, "owl#onProperty> " + IN_DOMAIN), "only concept 1 has a domain restriction");
+        // in_class and in_vocabulary, plus in_domain for the one concept in a known domain
+        assertEquals(3, count(nt, "<" + TERMS + "1> <http://www.w3.org/2000/01/rdf-schema#subClassOf> "));
+        assertEquals(2, count(nt, "<" + TERMS + "2> <http://www.w3.org/2000/01/rdf-schema#subClassOf> "));
+        assertEquals(2, count(nt, "<" + TERMS + "3> <http://www.w3.org/2000/01/rdf-schema#subClassOf> "));
+        // concepts 2 and 3 still get their other axioms
+        assertTrue(nt.contains("<" + TERMS + "2> <http://www.w3.org/2000/01/rdf-schema#label> \"Smoker\"@en ."));
+        assertTrue(console.toString(StandardCharsets.UTF_8).contains(
+                "2 concepts have domain_id 'Observation', which is not in the metadata - no in_domain restriction written for them"));
+    }
+
+    @Test
+    public void eachReportCountsOnlyTheRowsSinceTheLastOne() {
+        PropertyConfig domain = new PropertyConfig("in_domain", "domain_id", OWLManager.getOWLDataFactory(),
+                OWLLoader.omop_iri, new ShardedSinkTest.CollectingSink(), Map.of());
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(console, true, StandardCharsets.UTF_8));
+        try {
+            domain.missing("Observation");
+            domain.missing("Observation");
+            domain.reportMissing();
+            domain.missing("Observation");
+            domain.reportMissing();
+            domain.reportMissing();
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(List.of(
+                "2 concepts have domain_id 'Observation', which is not in the metadata - no in_domain restriction written for them",
+                "1 concepts have domain_id 'Observation', which is not in the metadata - no in_domain restriction written for them"),
+                console.toString(StandardCharsets.UTF_8).lines().toList());
+    }
+
+    private static int count(String text, String part) {
+        int n = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,69 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class SemsqlWriterTest {
+
+    private static final String OMOP = "https://athena.ohdsi.org/search-terms/terms/";
+
+    @TempDir
+    File dir;
+
+    private static List<String> query(Connection connection, String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int c = 1; c <= columns; c++) {
+                    row.append(c > 1 ? "|" : "").append(rs.getString(c));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void writesStatementsAndEdges() throws IOException, SQLException {
+        OWLDataFactory df = OWLManager.getOWLDataFactory();
+        OWLClass child = df.getOWLClass(IRI.create(OMOP + "2"));
+        OWLClass parent = df.getOWLClass(IRI.create(OMOP + "1"));
+        OWLObjectProperty inDomain = df.getOWLObjectProperty(IRI.create(OMOP + "in_domain"));
+        File db = new File(dir, "omop.db");
+        try (SemsqlWriter writer = new SemsqlWriter(db, IRI.create(OMOP), Map.of("skos:", "http://www.w3.org/2004/02/skos/core#"))) {
+            writer.add(df.getOWLSubClassOfAxiom(child, parent));
+            writer.add(df.getOWLSubClassOfAxiom(child, df.getOWLObjectSomeValuesFrom(inDomain, df.getOWLClass(IRI.create(OMOP + "19")))));
+            writer.add(df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), child.getIRI(), df.getOWLLiteral("Disease", "en")));
+            writer.entailedSubClassOf(child, parent);
+        }
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db.getPath())) {
+            assertEquals(List.of("OMOP:2|OMOP:2|rdfs:subClassOf|OMOP:1|null|null",
+                            "OMOP:2|OMOP:2|rdfs:subClassOf|_:b0|null|null",
+                            "OMOP:2|_:b0|rdf:type|owl:Restriction|null|null",
+                            "OMOP:2|_:b0|owl:onProperty|OMOP:in_domain|null|null",
+                            "OMOP:2|_:b0|owl:someValuesFrom|OMOP:19|null|null",
+                            "OMOP:2|OMOP:2|rdfs:label|null|Disease|en"),
+                    query(connection, "SELECT stanza, subject, predicate, object, value, language FROM statements WHERE stanza = 'OMOP:2' ORDER BY rowid"));
+            assertEquals(List.of("OMOP:2|OMOP:in_domain|OMOP:19", "OMOP:2|rdfs:subClassOf|OMOP:1"),
+                    query(connection, "SELECT * FROM entailed_edge ORDER BY predicate"));
+            assertEquals(List.of("http://www.w3.org/2004/02/skos/core#"), query(connection, "SELECT base FROM prefix WHERE prefix = 'skos'"));
+            assertEquals(List.of("OMOP:2|Disease"), query(connection, "SELECT subject, value FROM rdfs_label_statement"));
+            assertEquals(List.of("OMOP:2|OMOP:in_domain|OMOP:19", "OMOP:2|rdfs:subClassOf|OMOP:1"),
+                    query(connection, "SELECT * FROM edge ORDER BY predicate"));
+        }
+    }
+}
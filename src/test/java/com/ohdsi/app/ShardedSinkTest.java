@@ -0,0 +1,164 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ShardedSinkTest {
+
+    private static final OWLDataFactory FACTORY = OWLManager.getOWLDataFactory();
+
+    @TempDir
+    File tmp;
+
+    // keeps what it is given, from any thread
+    static class CollectingSink implements AxiomSink {
+        final List<OWLAxiom> axioms = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void add(OWLAxiom axiom) {
+            axioms.add(axiom);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static OWLClass concept(int id) {
+        return FACTORY.getOWLClass(OWLLoader.omop_iri + Integer.toString(id));
+    }
+
+    private static Set<Integer> subjects(CollectingSink sink) {
+        Set<Integer> ids = new TreeSet<>();
+        for (OWLAxiom axiom : sink.axioms) {
+            ids.add(AxiomRouting.subjectConceptId(axiom));
+        }
+        return ids;
+    }
+
+    @Test
+    public void routesEachAxiomToTheShardOfItsSubject() throws Exception {
+        ConceptIndex index = new ConceptIndex(16);
+        index.put(1, concept(1), 0);
+        index.put(2, concept(2), 1);
+        CollectingSink metadata = new CollectingSink();
+        CollectingSink snomed = new CollectingSink();
+        CollectingSink loinc = new CollectingSink();
+        OWLAxiom declareFracture = FACTORY.getOWLDeclarationAxiom(concept(1));
+        OWLAxiom label = FACTORY.getOWLAnnotationAssertionAxiom(FACTORY.getRDFSLabel(), concept(1).getIRI(), FACTORY.getOWLLiteral("Fracture", "en"));
+        // cross-vocabulary: goes with its subject, the LOINC concept
+        OWLAxiom crossVocabulary = FACTORY.getOWLSubClassOfAxiom(concept(2), concept(1));
+        OWLAxiom domain = FACTORY.getOWLDeclarationAxiom(FACTORY.getOWLClass(OWLLoader.omop_iri + "Condition"));
+        // a concept that was filtered out of this run
+        OWLAxiom notLoaded = FACTORY.getOWLDeclarationAxiom(concept(99));
+
+        try (ShardedSink sink = new ShardedSink(index, metadata, List.of(snomed, loinc))) {
+            sink.add(declareFracture);
+            sink.addAll(List.of(label, crossVocabulary, domain, notLoaded));
+        }
+        assertEquals(List.of(declareFracture, label), snomed.axioms);
+        assertEquals(List.of(crossVocabulary), loinc.axioms);
+        assertEquals(List.of(domain, notLoaded), metadata.axioms);
+    }
+
+    @Test
+    public void mergedStreamedShardsAreTheUnshardedBuild() throws Exception {
+        assertMergeIsTheUnshardedBuild("omop.nt", StreamingOntologyWriter.Format.NTRIPLES);
+    }
+
+    @Test
+    public void mergedOWLShardsAreTheUnshardedBuild() throws Exception {
+        assertMergeIsTheUnshardedBuild("omop.owl", null);
+    }
+
+    // the same vocabulary loaded once into one file and once with --sharded --merge - the axioms have to be the same
+    private void assertMergeIsTheUnshardedBuild(String outfile, StreamingOntologyWriter.Format format) throws Exception {
+        File vocab = TestVocabulary.write(new File(tmp, "vocab"),
+                List.of("1\tDisorder of glucose metabolism\tCondition\tSNOMED\tClinical Finding\t1",
+                        "2\tHyperglycemia\tCondition\tSNOMED\tClinical Finding\t2",
+                        "3\tGlucose [Mass/volume] in Blood\tMeasurement\tLOINC\tLab Test\t3",
+                        "4\tGlucose measurement\tMeasurement\tSNOMED\tClinical Finding\t4"),
+                List.of("1\t2\t1", "4\t3\t1"),
+                List.of("3\t4\tMaps to"),
+                List.of("2\tHigh blood sugar\t4180186"));
+
+        Set<OWLAxiom> expected = new HashSet<>();
+        Set<OWLAxiom> merged = new HashSet<>();
+        for (boolean sharded : new boolean[]{false, true}) {
+            File outdir = new File(tmp, sharded ? "sharded" : "unsharded");
+            LoaderOptions options = new LoaderOptions(outdir.getPath(), outfile, vocab.getPath());
+            options.vocabs = List.of("SNOMED", "LOINC");
+            options.streamFormat = format;
+            options.threads = 1;
+            options.sharded = sharded;
+            options.merge = sharded;
+            new OWLLoader(options).createOHDSIOntology();
+
+            OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+            manager.getOntologyConfigurator().setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+            (sharded ? merged : expected).addAll(ShardMerger.load(manager, new File(outdir, outfile)).getAxioms());
+        }
+        assertTrue(expected.size() > 20, "the unsharded build has " + expected.size() + " axioms");
+        assertEquals(new TreeSet<>(expected), new TreeSet<>(merged));
+    }
+
+    @Test
+    public void routesWhileTheIndexGrowsOnOtherThreads() throws Exception {
+        routeConcurrently(new ConceptIndex(16));
+    }
+
+    @Test
+    public void routesWhileTheIndexSpillsOnOtherThreads() throws Exception {
+        ConceptIndex index = new ConceptIndex(16);
+        index.spillAfter(500, ShardedSinkTest::concept);
+        routeConcurrently(index);
+        assertTrue(index.getSpills() > 0);
+    }
+
+    // the concept stage's pattern: put under the index's lock, then commit the concept's axioms through a batching
+    // sink, on several threads, while the index rehashes (or spills) under the routing of the batches
+    private void routeConcurrently(ConceptIndex index) throws Exception {
+        CollectingSink metadata = new CollectingSink();
+        CollectingSink even = new CollectingSink();
+        CollectingSink odd = new CollectingSink();
+        BatchingSink batches = new BatchingSink(new ShardedSink(index, metadata, List.of(even, odd)), 64);
+        int threads = 4;
+        int concepts = 40_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                done.add(executor.submit(() -> {
+                    for (int id = first; id < concepts; id += threads) {
+                        OWLClass concept = concept(id);
+                        synchronized (index) {
+                            index.put(id, concept, id % 2);
+                        }
+                        batches.add(FACTORY.getOWLDeclarationAxiom(concept));
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        batches.flush();
+
+        assertEquals(0, metadata.axioms.size());
+        assertEquals(concepts / 2, even.axioms.size());
+        assertEquals(concepts / 2, odd.axioms.size());
+        assertTrue(subjects(even).stream().allMatch(id -> id % 2 == 0));
+        assertTrue(subjects(odd).stream().allMatch(id -> id % 2 == 1));
+    }
+}
@@ -0,0 +1,79 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedScanSourceTest {
+
+    private static final String CONCEPT = "concept_id\tvocabulary_id\n1\tSNOMED\n2\tLOINC\n3\tNCIt\n4\tSNOMED\n5\tRxNorm\n";
+
+    // the vocabulary ids one participant's handler sees of CONCEPT
+    private static List<Integer> load(VocabularySource source, List<String> vocabs) throws IOException {
+        List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        try (TableScan scan = source.open("CONCEPT")) {
+            int id = scan.column("concept_id");
+            scan.forEach(scan.column("vocabulary_id"), FieldPredicate.anyOf(vocabs), row -> ids.add(row.getInt(id)));
+        }
+        return ids;
+    }
+
+    @Test
+    public void readsEachTableOnceForEveryParticipant() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        VocabularySource source = table -> {
+            opened.incrementAndGet();
+            return new CSVRowCursor(new ByteArrayInputStream(CONCEPT.getBytes(StandardCharsets.UTF_8)));
+        };
+        SharedScanSource shared = new SharedScanSource(source);
+        SharedScanSource.Participant oncology = shared.participant();
+        SharedScanSource.Participant snomedLoinc = shared.participant();
+        SharedScanSource.Participant idle = shared.participant();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<List<Integer>> first = executor.submit(() -> {
+                try (oncology) {
+                    return load(oncology, List.of("NCIt"));
+                }
+            });
+            Future<List<Integer>> second = executor.submit(() -> {
+                try (snomedLoinc) {
+                    return load(snomedLoinc, List.of("SNOMED", "LOINC"));
+                }
+            });
+            // opens the table but never reads it, then is done - neither may hold up the others
+            executor.submit(() -> {
+                try (idle) {
+                    idle.open("CONCEPT").close();
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            assertEquals(List.of(3), first.get(10, TimeUnit.SECONDS));
+            assertEquals(List.of(1, 2, 4), second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void unionOfComparisonsOnOneColumn() {
+        FieldPredicate union = SharedScanSource.union(List.of(
+                FieldPredicate.anyOf(List.of("SNOMED")), FieldPredicate.equalTo("LOINC")));
+        ByteBuffer loinc = ByteBuffer.wrap("LOINC".getBytes(StandardCharsets.UTF_8));
+        assertTrue(union.test(loinc, 0, 5));
+        assertNull(SharedScanSource.union(List.of(FieldPredicate.equalTo("LOINC"), (buffer, start, end) -> true)));
+    }
+}
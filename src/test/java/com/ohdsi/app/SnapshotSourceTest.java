@@ -0,0 +1,48 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SnapshotSourceTest {
+
+    @TempDir
+    File dir;
+
+    private List<String> rows(VocabularySource source, String table) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (TableScan scan = source.open(table)) {
+            int id = scan.column("concept_id");
+            int name = scan.column("concept_name");
+            scan.forEach(row -> rows.add(row.getInt(id) + "|" + row.getString(name) + "|" + row.isEmpty(name)));
+        }
+        return rows;
+    }
+
+    @Test
+    public void readsTheSameRowsAsTheCsvFiles() throws IOException {
+        File vocab = new File(dir, "vocab");
+        vocab.mkdirs();
+        File concept = new File(vocab, "CONCEPT.csv");
+        Files.write(concept.toPath(), "concept_id\tconcept_name\n1\tDisease\n2\t\n3\tPréparation\n4\tDisease\n".getBytes(StandardCharsets.UTF_8));
+        CSVSource csv = new CSVSource(vocab.getPath());
+        List<String> expected = rows(csv, "CONCEPT");
+
+        assertEquals(expected, rows(SnapshotSource.open(csv, List.of("CONCEPT"), null), "CONCEPT"));
+        assertTrue(new File(dir, "vocab.snapshot/manifest").exists());
+        // second open reads the existing snapshot
+        assertEquals(expected, rows(SnapshotSource.open(csv, List.of("CONCEPT"), null), "CONCEPT"));
+
+        // a changed csv file makes the snapshot stale
+        Files.write(concept.toPath(), "concept_id\tconcept_name\n5\tOther\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of("5|Other|false"), rows(SnapshotSource.open(csv, List.of("CONCEPT"), null), "CONCEPT"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.RDFXMLDocumentFormat;
+import org.semanticweb.owlapi.io.FileDocumentSource;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.DefaultPrefixManager;
+
+import java.io.File;
+import java.util.*;
+
+public class StreamingOntologyWriterTest {
+
+    private static final IRI ONTOLOGY = IRI.create("https://athena.ohdsi.org/search-terms/terms/omop");
+
+    @TempDir
+    File tmp;
+
+    @Test
+    public void rdfxmlReadsBackAsTheSameAxioms() throws Exception {
+        roundTrip(StreamingOntologyWriter.Format.RDFXML);
+    }
+
+    @Test
+    public void turtleReadsBackAsTheSameAxioms() throws Exception {
+        roundTrip(StreamingOntologyWriter.Format.TURTLE);
+    }
+
+    @Test
+    public void ntriplesReadsBackAsTheSameAxioms() throws Exception {
+        roundTrip(StreamingOntologyWriter.Format.NTRIPLES);
+    }
+
+    @Test
+    public void rdfxmlDropsControlCharacters() throws Exception {
+        OWLDataFactory df = OWLManager.getOWLDataFactory();
+        IRI fracture = IRI.create(OWLLoader.omop_iri + "4");
+        IRI femur = IRI.create(OWLLoader.omop_iri + "36");
+        File file = new File(tmp, "omop.owl");
+        try (StringArena names = new StringArena();
+             StreamingOntologyWriter writer = new StreamingOntologyWriter(file, StreamingOntologyWriter.Format.RDFXML, ONTOLOGY, Map.of())) {
+            writer.add(df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), fracture,
+                    new ArenaLiteral(names, names.intern("Fracture\u0001 of\tfemur\u001f"), "en")));
+            writer.add(df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), femur, df.getOWLLiteral("Fe\u0000mur\u000b", "en")));
+        }
+
+        OWLOntology parsed = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new FileDocumentSource(file));
+        assertEquals(Set.of(
+                df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), fracture, df.getOWLLiteral("Fracture of\tfemur", "en")),
+                df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), femur, df.getOWLLiteral("Femur", "en"))), parsed.getAxioms());
+    }
+
+    // the shapes the loaders produce, with the names a vocabulary can throw at the escaping
+    private static List<OWLAxiom> axioms(OWLDataFactory df, DefaultPrefixManager pm, StringArena names) {
+        OWLClass fracture = df.getOWLClass("omop:4", pm);
+        OWLClass femur = df.getOWLClass("omop:36", pm);
+        OWLClass condition = df.getOWLClass("omop:Condition", pm);
+        // not a valid turtle local name
+        OWLClass unknown = df.getOWLClass("omop:-1", pm);
+        OWLObjectProperty findingSite = df.getOWLObjectProperty("omop:has_finding_site", pm);
+        OWLAnnotationProperty exactMatch = df.getOWLAnnotationProperty("skos:exactMatch", pm);
+        OWLAnnotationProperty altLabel = df.getOWLAnnotationProperty("skos:altLabel", pm);
+        OWLAnnotationProperty code = df.getOWLAnnotationProperty("omop:concept_code", pm);
+        return List.of(
+                df.getOWLDeclarationAxiom(fracture),
+                df.getOWLDeclarationAxiom(femur),
+                df.getOWLDeclarationAxiom(condition),
+                df.getOWLDeclarationAxiom(unknown),
+                df.getOWLDeclarationAxiom(findingSite),
+                df.getOWLDeclarationAxiom(exactMatch),
+                df.getOWLDeclarationAxiom(altLabel),
+                df.getOWLDeclarationAxiom(code),
+                df.getOWLSubClassOfAxiom(fracture, condition),
+                df.getOWLSubClassOfAxiom(unknown, condition),
+                df.getOWLSubClassOfAxiom(fracture, df.getOWLObjectSomeValuesFrom(findingSite, femur)),
+                df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), fracture.getIRI(),
+                        new ArenaLiteral(names, names.intern("Fracture of femur & \"neck\" <left>"), "en")),
+                df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), femur.getIRI(), df.getOWLLiteral("Femur\\bone\n\ttab", "en")),
+                df.getOWLAnnotationAssertionAxiom(altLabel, fracture.getIRI(), df.getOWLLiteral("Broken thigh bone")),
+                df.getOWLAnnotationAssertionAxiom(code, fracture.getIRI(), df.getOWLLiteral(71620000)),
+                df.getOWLAnnotationAssertionAxiom(exactMatch, fracture.getIRI(), femur.getIRI()));
+    }
+
+    // the same axioms through the writer and through an OntologySink, the written file parsed back by the OWLAPI
+    private void roundTrip(StreamingOntologyWriter.Format format) throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory df = manager.getOWLDataFactory();
+        DefaultPrefixManager pm = new DefaultPrefixManager();
+        pm.setPrefix("omop:", OWLLoader.omop_iri.toString());
+        pm.setPrefix("skos:", "http://www.w3.org/2004/02/skos/core#");
+        File file = new File(tmp, "omop." + format.extension);
+        RDFXMLDocumentFormat prefixes = new RDFXMLDocumentFormat();
+        prefixes.copyPrefixesFrom(pm);
+
+        OntologySink expected = new OntologySink(manager, manager.createOntology(ONTOLOGY), prefixes, IRI.create(new File(tmp, "expected.owl")));
+        // the arena stays open until the comparison, the ArenaLiterals of the expected axioms read their text from it
+        try (StringArena names = new StringArena()) {
+            List<OWLAxiom> axioms = axioms(df, pm, names);
+            try (StreamingOntologyWriter writer = new StreamingOntologyWriter(file, format, ONTOLOGY, prefixes.getPrefixName2PrefixMap())) {
+                expected.addAll(axioms);
+                writer.addAll(axioms);
+            }
+
+            OWLOntologyManager reader = OWLManager.createOWLOntologyManager();
+            OWLOntology parsed = reader.loadOntologyFromOntologyDocument(new FileDocumentSource(file));
+            assertEquals(ONTOLOGY, parsed.getOntologyID().getOntologyIRI().orElse(null));
+            assertEquals(new TreeSet<>(expected.getOntology().getAxioms()), new TreeSet<>(parsed.getAxioms()));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class StringArenaTest {
+
+    private static final String NAME = "Fracture \"left\" & <right> \\ hand\tPréparation";
+
+    @Test
+    public void internsOnce() throws IOException {
+        try (StringArena arena = new StringArena()) {
+            byte[] row = ("x\t" + NAME + "\ty").getBytes(StandardCharsets.UTF_8);
+            int nameLength = NAME.getBytes(StandardCharsets.UTF_8).length;
+            int handle = arena.intern(ByteBuffer.wrap(row), 2, 2 + nameLength);
+            assertEquals(handle, arena.intern(NAME));
+            assertNotEquals(handle, arena.intern("other"));
+            assertEquals(handle, arena.intern(ByteBuffer.wrap(row), 2, 2 + nameLength));
+            assertEquals(NAME, arena.decode(handle));
+            assertEquals(2, arena.size());
+            for (int i = 0; i < 100_000; i++) {
+                assertEquals(i + 2, arena.intern("name " + i));
+            }
+            assertEquals("name 99999", arena.decode(100_001));
+            assertEquals(handle, arena.intern(NAME));
+        }
+    }
+
+    // the bytes copied from the arena come out exactly as the String literal would
+    @Test
+    public void writesLikeStringLiterals() throws IOException {
+        OWLDataFactory df = OWLManager.getOWLDataFactory();
+        IRI subject = IRI.create(OWLLoader.omop_iri + "1");
+        try (StringArena arena = new StringArena()) {
+            ArenaLiteral literal = new ArenaLiteral(arena, arena.intern(NAME), "en");
+            OWLLiteral plain = df.getOWLLiteral(NAME, "en");
+            assertEquals(plain, literal);
+            assertEquals(plain.hashCode(), literal.hashCode());
+            for (StreamingOntologyWriter.Format format : StreamingOntologyWriter.Format.values()) {
+                assertEquals(write(format, df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), subject, plain)),
+                        write(format, df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), subject, literal)));
+            }
+        }
+    }
+
+    private static String write(StreamingOntologyWriter.Format format, OWLAxiom axiom) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingOntologyWriter writer = new StreamingOntologyWriter(out, format, OWLLoader.omop_iri, Collections.emptyMap());
+        writer.add(axiom);
+        writer.close();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,61 @@
+package com.ohdsi.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    A small Athena download for the tests that run the whole loader: the metadata tables with two vocabularies
+    (SNOMED, LOINC), the Condition and Measurement domains, two concept classes and "Maps to", and the concept
+    tables from the rows a test gives. Rows are tab separated, without the header line.
+ */
+final class TestVocabulary {
+
+    static final String CONCEPT = "concept_id\tconcept_name\tdomain_id\tvocabulary_id\tconcept_class_id\tconcept_code";
+    static final String CONCEPT_ANCESTOR = "ancestor_concept_id\tdescendant_concept_id\tmin_levels_of_separation";
+    static final String CONCEPT_RELATIONSHIP = "concept_id_1\tconcept_id_2\trelationship_id";
+    static final String CONCEPT_SYNONYM = "concept_id\tconcept_synonym_name\tlanguage_concept_id";
+    static final String RELATIONSHIP = "relationship_id\trelationship_name\trelationship_concept_id";
+
+    private TestVocabulary() {
+    }
+
+    // writes the eight tables to dir, creating it, and returns it
+    static File write(File dir, List<String> concepts, List<String> ancestors, List<String> relationships,
+                      List<String> synonyms) throws IOException {
+        dir.mkdirs();
+        table(dir, "VOCABULARY", "vocabulary_id\tvocabulary_name\tvocabulary_concept_id",
+                List.of("SNOMED\tSNOMED\t44819097", "LOINC\tLOINC\t44819102"));
+        table(dir, "DOMAIN", "domain_id\tdomain_name\tdomain_concept_id",
+                List.of("Condition\tCondition\t19", "Measurement\tMeasurement\t21"));
+        table(dir, "CONCEPT_CLASS", "concept_class_id\tconcept_class_name\tconcept_class_concept_id",
+                List.of("Clinical Finding\tClinical Finding\t44819063", "Lab Test\tLab Test\t44819136"));
+        defineRelationships(dir);
+        table(dir, "CONCEPT", CONCEPT, concepts);
+        table(dir, "CONCEPT_ANCESTOR", CONCEPT_ANCESTOR, ancestors);
+        table(dir, "CONCEPT_RELATIONSHIP", CONCEPT_RELATIONSHIP, relationships);
+        table(dir, "CONCEPT_SYNONYM", CONCEPT_SYNONYM, synonyms);
+        return dir;
+    }
+
+    // RELATIONSHIP with the given relationship_ids next to "Maps to", each named after itself
+    static void defineRelationships(File dir, String... ids) throws IOException {
+        List<String> rows = new ArrayList<>();
+        rows.add("Maps to\tMaps to\t44818977");
+        int conceptId = 44818700;
+        for (String id : ids) {
+            rows.add(id + "\t" + id + "\t" + conceptId++);
+        }
+        table(dir, "RELATIONSHIP", RELATIONSHIP, rows);
+    }
+
+    static void table(File dir, String name, String header, List<String> rows) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(header);
+        lines.addAll(rows);
+        Files.write(new File(dir, name + ".csv").toPath(), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
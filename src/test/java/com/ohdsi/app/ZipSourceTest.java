@@ -0,0 +1,65 @@
+package com.ohdsi.app;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipSourceTest {
+
+    @TempDir
+    File tmp;
+
+    // more than a few read ahead blocks, so the reader has to wait for the inflating thread
+    private static byte[] concepts(int rows) {
+        StringBuilder sb = new StringBuilder("concept_id\tconcept_name\tvocabulary_id\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append("\tConcept number ").append(i).append(" of the bundle\tSNOMED\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long sumOfIds(VocabularySource source) throws IOException {
+        long[] sum = {0};
+        try (TableScan scan = source.open("CONCEPT")) {
+            int id = scan.column("concept_id");
+            scan.forEach(row -> sum[0] += row.getInt(id));
+        }
+        return sum[0];
+    }
+
+    @Test
+    public void readsTablesFromTheBundleWithoutExtracting() throws IOException {
+        int rows = 150_000;
+        File bundle = new File(tmp, "vocabulary_download_v5.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(bundle))) {
+            zip.putNextEntry(new ZipEntry("vocabulary_download_v5/CONCEPT.csv"));
+            zip.write(concepts(rows));
+            zip.closeEntry();
+        }
+        assertTrue(ZipSource.isZip(bundle));
+        try (ZipSource source = new ZipSource(bundle)) {
+            assertTrue(source.has("CONCEPT.csv"));
+            assertFalse(source.has("CONCEPT_ANCESTOR.csv"));
+            assertEquals((long) rows * (rows - 1) / 2, sumOfIds(source));
+            assertThrows(IOException.class, () -> source.open("CONCEPT_ANCESTOR"));
+        }
+    }
+
+    @Test
+    public void readsGzippedTablesFromTheFolder() throws IOException {
+        int rows = 150_000;
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(tmp, "CONCEPT.csv.gz")))) {
+            out.write(concepts(rows));
+        }
+        CSVSource source = new CSVSource(tmp.getPath());
+        assertEquals("CONCEPT.csv.gz", source.getFile("CONCEPT").getName());
+        assertEquals((long) rows * (rows - 1) / 2, sumOfIds(source));
+    }
+}